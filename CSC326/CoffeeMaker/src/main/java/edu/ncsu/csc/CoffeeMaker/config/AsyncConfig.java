@@ -0,0 +1,51 @@
+package edu.ncsu.csc.CoffeeMaker.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Executors used to run blocking work off of the web server's request threads.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+@Configuration
+public class AsyncConfig {
+
+    /** Name of the executor that makes coffee for asynchronous requests */
+    public static final String MAKE_COFFEE_EXECUTOR = "makeCoffeeExecutor";
+
+    /**
+     * Bounded pool that asynchronous make-coffee requests do their recipe
+     * lookup and Inventory work on. Once every thread is busy and the queue is
+     * full, new work is rejected rather than queued without limit.
+     *
+     * @param poolSize
+     *            number of threads
+     * @param queueCapacity
+     *            most requests waiting for a thread
+     * @param virtual
+     *            whether the pool's threads should be virtual threads. The
+     *            pool stays bounded either way, so it still limits how many
+     *            requests are using the database at once.
+     * @return the executor
+     */
+    @Bean ( name = MAKE_COFFEE_EXECUTOR )
+    public ThreadPoolTaskExecutor makeCoffeeExecutor ( @Value ( "${coffeemaker.async.pool-size:16}" ) final int poolSize,
+            @Value ( "${coffeemaker.async.queue-capacity:256}" ) final int queueCapacity,
+            @Value ( "${coffeemaker.virtual-threads.enabled:false}" ) final boolean virtual ) {
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        if ( virtual ) {
+            executor.setThreadFactory( VirtualThreads.newThreadFactory( "make-coffee-" ) );
+        }
+        executor.setCorePoolSize( poolSize );
+        executor.setMaxPoolSize( poolSize );
+        executor.setQueueCapacity( queueCapacity );
+        executor.setThreadNamePrefix( "make-coffee-" );
+        executor.setWaitForTasksToCompleteOnShutdown( true );
+        return executor;
+    }
+
+}
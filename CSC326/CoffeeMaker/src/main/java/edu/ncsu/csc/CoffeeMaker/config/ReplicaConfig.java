@@ -0,0 +1,102 @@
+package edu.ncsu.csc.CoffeeMaker.config;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Gives read-only transactions their own connection pool on a replica
+ * database, so that menu reads don't compete with purchases for connections
+ * to the primary. Only used when `coffeemaker.replica.url` is set; otherwise
+ * Spring Boot's single `spring.datasource` pool is used as before.
+ *
+ * The replica's pool is configured like the primary's, with
+ * `coffeemaker.replica.username`, `coffeemaker.replica.password` (the
+ * primary's if not set) and `coffeemaker.replica.hikari.*`. It is checked every
+ * `coffeemaker.replica.check-ms` milliseconds, and if
+ * `coffeemaker.replica.lag-query` is set, is only used while it is no more
+ * than `coffeemaker.replica.max-lag-seconds` behind.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+@Configuration
+@ConditionalOnProperty ( "coffeemaker.replica.url" )
+public class ReplicaConfig {
+
+    /**
+     * Routes each connection to the primary or the replica
+     *
+     * @param properties
+     *            the primary's `spring.datasource` properties
+     * @param environment
+     *            used to bind the pools' Hikari settings
+     * @param url
+     *            JDBC URL of the replica
+     * @param username
+     *            user to connect to the replica as
+     * @param password
+     *            their password
+     * @param lagQuery
+     *            query giving the replica's lag in seconds, blank for none
+     * @param maxLagSeconds
+     *            most seconds the replica may be behind and still be used
+     * @param checkMs
+     *            time between checks of the replica
+     * @return the routing DataSource
+     */
+    @Bean ( destroyMethod = "close" )
+    public ReplicaRoutingDataSource routingDataSource ( final DataSourceProperties properties,
+            final Environment environment, @Value ( "${coffeemaker.replica.url}" ) final String url,
+            @Value ( "${coffeemaker.replica.username:${spring.datasource.username:}}" ) final String username,
+            @Value ( "${coffeemaker.replica.password:${spring.datasource.password:}}" ) final String password,
+            @Value ( "${coffeemaker.replica.lag-query:}" ) final String lagQuery,
+            @Value ( "${coffeemaker.replica.max-lag-seconds:5}" ) final long maxLagSeconds,
+            @Value ( "${coffeemaker.replica.check-ms:1000}" ) final long checkMs ) {
+        final Binder binder = Binder.get( environment );
+
+        final HikariDataSource primary = properties.initializeDataSourceBuilder().type( HikariDataSource.class )
+                .build();
+        binder.bind( "spring.datasource.hikari", Bindable.ofInstance( primary ) );
+        primary.setPoolName( "primary" );
+
+        final HikariDataSource replica = DataSourceBuilder.create().url( url ).username( username )
+                .password( password ).type( HikariDataSource.class ).build();
+        binder.bind( "coffeemaker.replica.hikari", Bindable.ofInstance( replica ) );
+        replica.setPoolName( "replica" );
+        replica.setReadOnly( true );
+
+        final ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource( primary, replica, lagQuery,
+                maxLagSeconds );
+        routing.start( checkMs );
+        return routing;
+    }
+
+    /**
+     * The DataSource used by JPA, Flyway and everything else. Connections are
+     * only taken from the routing DataSource at the first statement, once the
+     * transaction's read-only flag is known.
+     *
+     * @param routing
+     *            the routing DataSource
+     * @return the DataSource
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource ( final ReplicaRoutingDataSource routing ) {
+        return new LazyConnectionDataSourceProxy( routing );
+    }
+
+}
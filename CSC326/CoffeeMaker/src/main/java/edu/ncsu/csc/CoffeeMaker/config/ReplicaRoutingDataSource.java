@@ -0,0 +1,254 @@
+package edu.ncsu.csc.CoffeeMaker.config;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Sends the connections of read-only transactions to a replica database, and
+ * everything else to the primary. The replica is checked on a schedule and
+ * is only used while it answers and, if a lag query is given, is no further
+ * behind the primary than allowed. Otherwise, or if a connection to it can't
+ * be had, read-only transactions go to the primary too.
+ *
+ * The read-only flag of a transaction is only known once it has begun, so
+ * this must be wrapped in a LazyConnectionDataSourceProxy, which doesn't ask
+ * for the connection until the first statement.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    /** Logger */
+    private static final Logger      LOG     = LoggerFactory.getLogger( ReplicaRoutingDataSource.class );
+
+    /** Key of the primary */
+    private static final String      PRIMARY = "primary";
+
+    /** Key of the replica */
+    private static final String      REPLICA = "replica";
+
+    /** Seconds allowed for the replica to answer a check */
+    private static final int         TIMEOUT = 2;
+
+    /** Where writes go */
+    private final DataSource         primary;
+
+    /** Where reads go when it is usable */
+    private final DataSource         replica;
+
+    /**
+     * Query run on the replica that returns how many seconds it is behind,
+     * null to not check the lag
+     */
+    private final String             lagQuery;
+
+    /** Most seconds the replica may be behind and still be used */
+    private final long               maxLagSeconds;
+
+    /** Whether the replica passed its last check */
+    private volatile boolean         usable;
+
+    /** Runs the checks, once started */
+    private ScheduledExecutorService checker;
+
+    /**
+     * Creates the DataSource. The replica is not used until it has passed a
+     * check.
+     *
+     * @param primary
+     *            where writes go
+     * @param replica
+     *            where reads go when it is usable
+     * @param lagQuery
+     *            query run on the replica that returns how many seconds it is
+     *            behind, either as its first column or as a
+     *            `Seconds_Behind_Master` column (as MySQL's `SHOW SLAVE STATUS`
+     *            does); null or blank to not check the lag
+     * @param maxLagSeconds
+     *            most seconds the replica may be behind and still be used
+     */
+    public ReplicaRoutingDataSource ( final DataSource primary, final DataSource replica, final String lagQuery,
+            final long maxLagSeconds ) {
+        this.primary = primary;
+        this.replica = replica;
+        this.lagQuery = null == lagQuery || lagQuery.isBlank() ? null : lagQuery;
+        this.maxLagSeconds = maxLagSeconds;
+        setTargetDataSources( Map.of( PRIMARY, primary, REPLICA, replica ) );
+        setDefaultTargetDataSource( primary );
+        afterPropertiesSet();
+    }
+
+    /**
+     * Checks the replica now, then again every `intervalMs` milliseconds
+     *
+     * @param intervalMs
+     *            time between checks
+     */
+    public void start ( final long intervalMs ) {
+        checkReplica();
+        checker = Executors.newSingleThreadScheduledExecutor( r -> {
+            final Thread thread = new Thread( r, "replica-check" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        checker.scheduleWithFixedDelay( this::checkReplica, intervalMs, intervalMs, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Checks whether the replica answers and is caught up enough to be used
+     */
+    public void checkReplica () {
+        final boolean wasUsable = usable;
+        String problem = null;
+        try ( Connection connection = replica.getConnection() ) {
+            if ( !connection.isValid( TIMEOUT ) ) {
+                problem = "it is not answering";
+            }
+            else if ( null != lagQuery ) {
+                final Long lag = lag( connection );
+                if ( null == lag ) {
+                    problem = "it is not replicating";
+                }
+                else if ( lag > maxLagSeconds ) {
+                    problem = "it is " + lag + " s behind";
+                }
+            }
+        }
+        catch ( final SQLException e ) {
+            problem = e.getMessage();
+        }
+        usable = null == problem;
+        if ( wasUsable && !usable ) {
+            LOG.warn( "Sending reads to the primary; the replica can't be used: {}", problem );
+        }
+        else if ( !wasUsable && usable ) {
+            LOG.info( "Sending read-only transactions to the replica" );
+        }
+    }
+
+    /**
+     * Runs the lag query
+     *
+     * @param connection
+     *            connection to the replica
+     * @return seconds behind, null if it isn't replicating
+     * @throws SQLException
+     *             if the query fails
+     */
+    private Long lag ( final Connection connection ) throws SQLException {
+        try ( Statement statement = connection.createStatement() ) {
+            statement.setQueryTimeout( TIMEOUT );
+            try ( ResultSet result = statement.executeQuery( lagQuery ) ) {
+                if ( !result.next() ) {
+                    return null;
+                }
+                int column = 1;
+                for ( int i = 1; i <= result.getMetaData().getColumnCount(); i++ ) {
+                    if ( "Seconds_Behind_Master".equalsIgnoreCase( result.getMetaData().getColumnLabel( i ) ) ) {
+                        column = i;
+                    }
+                }
+                final long lag = result.getLong( column );
+                return result.wasNull() ? null : lag;
+            }
+        }
+    }
+
+    /**
+     * Checks whether the replica is being used for read-only transactions
+     *
+     * @return true if it passed its last check
+     */
+    public boolean isReplicaUsable () {
+        return usable;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey () {
+        return usable && TransactionSynchronizationManager.isCurrentTransactionReadOnly() ? REPLICA : PRIMARY;
+    }
+
+    /**
+     * Gets a connection from the primary or the replica, falling back to the
+     * primary if the replica can't give one
+     *
+     * @return the connection
+     * @throws SQLException
+     *             if the primary can't give one
+     */
+    @Override
+    public Connection getConnection () throws SQLException {
+        if ( REPLICA.equals( determineCurrentLookupKey() ) ) {
+            try {
+                return replica.getConnection();
+            }
+            catch ( final SQLException e ) {
+                usable = false;
+                LOG.warn( "Sending reads to the primary; the replica can't be used: {}", e.getMessage() );
+            }
+        }
+        return primary.getConnection();
+    }
+
+    /**
+     * Gets a connection as a user from the primary or the replica, falling
+     * back to the primary if the replica can't give one
+     *
+     * @param username
+     *            the user
+     * @param password
+     *            their password
+     * @return the connection
+     * @throws SQLException
+     *             if the primary can't give one
+     */
+    @Override
+    public Connection getConnection ( final String username, final String password ) throws SQLException {
+        if ( REPLICA.equals( determineCurrentLookupKey() ) ) {
+            try {
+                return replica.getConnection( username, password );
+            }
+            catch ( final SQLException e ) {
+                usable = false;
+                LOG.warn( "Sending reads to the primary; the replica can't be used: {}", e.getMessage() );
+            }
+        }
+        return primary.getConnection( username, password );
+    }
+
+    /**
+     * Stops the checks and closes both pools
+     *
+     * @throws IOException
+     *             if a pool can't be closed
+     */
+    @Override
+    public void close () throws IOException {
+        if ( null != checker ) {
+            checker.shutdownNow();
+        }
+        if ( replica instanceof Closeable ) {
+            ( (Closeable) replica ).close();
+        }
+        if ( primary instanceof Closeable ) {
+            ( (Closeable) primary ).close();
+        }
+    }
+
+}
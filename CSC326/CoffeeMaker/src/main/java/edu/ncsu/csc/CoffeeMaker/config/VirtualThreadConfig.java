@@ -0,0 +1,35 @@
+package edu.ncsu.csc.CoffeeMaker.config;
+
+import java.util.concurrent.ExecutorService;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Runs the embedded Tomcat's request handling on virtual threads instead of
+ * its fixed pool of platform threads, when
+ * `coffeemaker.virtual-threads.enabled` is set. Every request then gets its
+ * own virtual thread, and the blocking JPA calls it makes through the Service
+ * layer park that thread rather than tying up a platform one. Needs Java 21.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+@Configuration
+@ConditionalOnProperty ( name = "coffeemaker.virtual-threads.enabled", havingValue = "true" )
+public class VirtualThreadConfig {
+
+    /**
+     * Replaces Tomcat's request executor with a virtual thread per request
+     *
+     * @return customizer that swaps in the executor
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandler () {
+        final ExecutorService executor = VirtualThreads.newPerTaskExecutor();
+        return protocolHandler -> protocolHandler.setExecutor( executor );
+    }
+
+}
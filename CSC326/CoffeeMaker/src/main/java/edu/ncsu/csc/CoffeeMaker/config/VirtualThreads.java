@@ -0,0 +1,76 @@
+package edu.ncsu.csc.CoffeeMaker.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to Java 21 virtual threads from code that is still compiled for Java
+ * 11. Everything is looked up reflectively, so these methods only work when
+ * the application is run on Java 21 or later (see the `java21` Maven profile).
+ *
+ * @author Shailesh Paudel
+ *
+ */
+public final class VirtualThreads {
+
+    /**
+     * Not instantiable
+     */
+    private VirtualThreads () {
+    }
+
+    /**
+     * Checks whether the running JVM has virtual threads
+     *
+     * @return true if virtual threads can be created
+     */
+    public static boolean isSupported () {
+        try {
+            Thread.class.getMethod( "ofVirtual" );
+            return true;
+        }
+        catch ( final NoSuchMethodException e ) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task
+     *
+     * @return the executor
+     * @throws IllegalStateException
+     *             if the JVM does not have virtual threads
+     */
+    public static ExecutorService newPerTaskExecutor () {
+        try {
+            return (ExecutorService) Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" ).invoke( null );
+        }
+        catch ( final ReflectiveOperationException e ) {
+            throw new IllegalStateException( "Virtual threads need Java 21 or later", e );
+        }
+    }
+
+    /**
+     * Creates a factory for virtual threads, named with the prefix provided
+     * and a counter
+     *
+     * @param prefix
+     *            prefix of the thread names
+     * @return the thread factory
+     * @throws IllegalStateException
+     *             if the JVM does not have virtual threads
+     */
+    public static ThreadFactory newThreadFactory ( final String prefix ) {
+        try {
+            final Class<?> builderType = Class.forName( "java.lang.Thread$Builder" );
+            final Object builder = builderType.getMethod( "name", String.class, long.class )
+                    .invoke( Thread.class.getMethod( "ofVirtual" ).invoke( null ), prefix, 0L );
+            return (ThreadFactory) builderType.getMethod( "factory" ).invoke( builder );
+        }
+        catch ( final ReflectiveOperationException e ) {
+            throw new IllegalStateException( "Virtual threads need Java 21 or later", e );
+        }
+    }
+
+}
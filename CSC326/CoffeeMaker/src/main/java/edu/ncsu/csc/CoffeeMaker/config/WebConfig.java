@@ -0,0 +1,32 @@
+package edu.ncsu.csc.CoffeeMaker.config;
+
+import java.util.List;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import edu.ncsu.csc.CoffeeMaker.controllers.EncodedResponse;
+
+/**
+ * Spring MVC settings for the REST API.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    /**
+     * Writes pre-encoded responses from their bytes, ahead of the default
+     * converters
+     *
+     * @param converters
+     *            the converters Spring has set up
+     */
+    @Override
+    public void extendMessageConverters ( final List<HttpMessageConverter<?>> converters ) {
+        converters.add( 0, new EncodedResponse.Converter() );
+    }
+
+}
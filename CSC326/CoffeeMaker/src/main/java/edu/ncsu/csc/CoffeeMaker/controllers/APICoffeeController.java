@@ -1,16 +1,34 @@
 package edu.ncsu.csc.CoffeeMaker.controllers;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.PostConstruct;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 
-import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.config.AsyncConfig;
+import edu.ncsu.csc.CoffeeMaker.forms.OrderForm;
 import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.ConflictRetry;
 import edu.ncsu.csc.CoffeeMaker.services.InventoryService;
+import edu.ncsu.csc.CoffeeMaker.services.OrderPipeline;
 import edu.ncsu.csc.CoffeeMaker.services.RecipeService;
 
 /**
@@ -28,6 +46,21 @@ import edu.ncsu.csc.CoffeeMaker.services.RecipeService;
 @RestController
 public class APICoffeeController extends APIController {
 
+    /** Sent when the recipe doesn't exist */
+    private EncodedResponse  noRecipe;
+
+    /** Sent when the Inventory kept changing under a purchase */
+    private EncodedResponse  busy;
+
+    /** Sent when there is no room to queue an order */
+    private EncodedResponse  tooMany;
+
+    /** Sent when the amount paid is less than the price */
+    private EncodedResponse  notEnoughMoney;
+
+    /** Sent when the Inventory can't cover the recipe */
+    private EncodedResponse  notEnoughInventory;
+
     /**
      * InventoryService object, to be autowired in by Spring to allow for
      * manipulating the Inventory model
@@ -42,6 +75,37 @@ public class APICoffeeController extends APIController {
     @Autowired
     private RecipeService    recipeService;
 
+    /**
+     * Retries purchases that conflict with another update to the Inventory
+     */
+    @Autowired
+    private ConflictRetry    retry;
+
+    /**
+     * Single-writer pipeline that purchases go through when it is enabled
+     */
+    @Autowired
+    private OrderPipeline    pipeline;
+
+    /**
+     * Bounded executor that asynchronous make-coffee requests run on
+     */
+    @Autowired
+    @Qualifier ( AsyncConfig.MAKE_COFFEE_EXECUTOR )
+    private Executor         executor;
+
+    /**
+     * Encodes the fixed messages once the ObjectMapper has been injected
+     */
+    @PostConstruct
+    public void encodeMessages () {
+        noRecipe = encodedError( "No recipe selected" );
+        busy = encodedError( "Inventory is busy, please try again" );
+        tooMany = encodedError( "Too many orders, please try again" );
+        notEnoughMoney = encodedError( "Not enough money paid" );
+        notEnoughInventory = encodedError( "Not enough inventory" );
+    }
+
     /**
      * REST API method to make coffee by completing a POST request with the ID
      * of the recipe as the path variable and the amount that has been paid as
@@ -57,24 +121,127 @@ public class APICoffeeController extends APIController {
     public ResponseEntity makeCoffee ( @PathVariable ( "name" ) final String name, @RequestBody final int amtPaid ) {
         final Recipe recipe = recipeService.findByName( name );
         if ( recipe == null ) {
-            return new ResponseEntity( errorResponse( "No recipe selected" ), HttpStatus.NOT_FOUND );
+            return new ResponseEntity( noRecipe, HttpStatus.NOT_FOUND );
         }
 
-        final int change = makeCoffee( recipe, amtPaid );
+        final int change;
+        try {
+            change = makeCoffee( recipe, amtPaid );
+        }
+        catch ( final ConcurrencyFailureException e ) {
+            return new ResponseEntity( busy, HttpStatus.CONFLICT );
+        }
+        catch ( final RejectedExecutionException e ) {
+            return new ResponseEntity( tooMany, HttpStatus.SERVICE_UNAVAILABLE );
+        }
         if ( change == amtPaid ) {
             if ( amtPaid < recipe.getPrice() ) {
-                return new ResponseEntity( errorResponse( "Not enough money paid" ), HttpStatus.CONFLICT );
+                return new ResponseEntity( notEnoughMoney, HttpStatus.CONFLICT );
             }
             else {
-                return new ResponseEntity( errorResponse( "Not enough inventory" ), HttpStatus.CONFLICT );
+                return new ResponseEntity( notEnoughInventory, HttpStatus.CONFLICT );
             }
         }
-        return new ResponseEntity<String>( successResponse( String.valueOf( change ) ), HttpStatus.OK );
+        return new ResponseEntity( successResponse( String.valueOf( change ) ), HttpStatus.OK );
 
     }
 
     /**
-     * Helper method to make coffee
+     * REST API method to make coffee without holding a request thread. The
+     * request thread only hands the order to a bounded executor, which does the
+     * recipe lookup and Inventory work; the response is the same as for
+     * `makeCoffee`, or 503 if the executor is full.
+     *
+     * @param name
+     *            recipe name
+     * @param amtPaid
+     *            amount paid
+     * @return future completed with the change the customer is due if
+     *         successful
+     */
+    @PostMapping ( BASE_PATH + "/makecoffee/async/{name}" )
+    public CompletableFuture<ResponseEntity> makeCoffeeAsync ( @PathVariable ( "name" ) final String name,
+            @RequestBody final int amtPaid ) {
+        try {
+            return CompletableFuture.supplyAsync( () -> makeCoffee( name, amtPaid ), executor );
+        }
+        catch ( final RejectedExecutionException e ) {
+            return CompletableFuture.completedFuture( new ResponseEntity( tooMany, HttpStatus.SERVICE_UNAVAILABLE ) );
+        }
+    }
+
+    /**
+     * REST API method to make coffee for many orders at once. The recipes for
+     * all of the orders are looked up together, and the orders are made in
+     * the order given, in a single transaction.
+     *
+     * @param orders
+     *            the recipe name and amount paid for each order
+     * @return for each order (in the same order), a success response with the
+     *         change due or a failure response with the reason it couldn't be
+     *         made
+     */
+    @PostMapping ( BASE_PATH + "/makecoffee/batch" )
+    public ResponseEntity makeCoffeeBatch ( @RequestBody final List<OrderForm> orders ) {
+        final Set<String> names = new HashSet<String>();
+        for ( final OrderForm order : orders ) {
+            names.add( order.getName() );
+        }
+        final Map<String, Recipe> recipes = recipeService.findByNames( names );
+
+        // Only orders that have been paid for go to the Inventory
+        final List<Recipe> toMake = new ArrayList<Recipe>();
+        for ( final OrderForm order : orders ) {
+            final Recipe recipe = recipes.get( order.getName() );
+            toMake.add( null != recipe && recipe.getPrice() <= order.getAmtPaid() ? recipe : null );
+        }
+        final boolean[] made;
+        try {
+            made = retry.run( () -> inventoryService.purchaseAll( toMake ) );
+        }
+        catch ( final ConcurrencyFailureException e ) {
+            return new ResponseEntity( busy, HttpStatus.CONFLICT );
+        }
+
+        final List<Object> results = new ArrayList<Object>();
+        for ( int i = 0; i < orders.size(); i++ ) {
+            final OrderForm order = orders.get( i );
+            final Recipe recipe = recipes.get( order.getName() );
+            if ( null == recipe ) {
+                results.add( noRecipe );
+            }
+            else if ( recipe.getPrice() > order.getAmtPaid() ) {
+                results.add( notEnoughMoney );
+            }
+            else if ( !made[i] ) {
+                results.add( notEnoughInventory );
+            }
+            else {
+                results.add( successResponse( String.valueOf( order.getAmtPaid() - recipe.getPrice() ) ) );
+            }
+        }
+        return new ResponseEntity( results, HttpStatus.OK );
+    }
+
+    /**
+     * REST API method to report how often purchases have had to be retried
+     * because of conflicting updates to the Inventory, and how often they
+     * were given up on
+     *
+     * @return the retry and give-up counts
+     */
+    @GetMapping ( BASE_PATH + "/makecoffee/retries" )
+    public ResponseEntity getRetries () {
+        final Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        counts.put( "retries", retry.getRetries() );
+        counts.put( "giveUps", retry.getGiveUps() );
+        return new ResponseEntity( counts, HttpStatus.OK );
+    }
+
+    /**
+     * Helper method to make coffee. If the OrderPipeline is enabled the
+     * purchase is made by its writer thread; otherwise it is made here, and
+     * retried if it conflicts with another update to the Inventory.
      *
      * @param toPurchase
      *            recipe that we want to make
@@ -82,17 +249,21 @@ public class APICoffeeController extends APIController {
      *            money that the user has given the machine
      * @return change if there was enough money to make the coffee, throws
      *         exceptions if not
+     * @throws ConcurrencyFailureException
+     *             if the purchase kept conflicting and was given up on
+     * @throws RejectedExecutionException
+     *             if the OrderPipeline has no room for the purchase
      */
     public int makeCoffee ( final Recipe toPurchase, final int amtPaid ) {
         int change = amtPaid;
-        final Inventory inventory = inventoryService.getInventory();
 
         if ( toPurchase == null ) {
             throw new IllegalArgumentException( "Recipe not found" );
         }
         else if ( toPurchase.getPrice() <= amtPaid ) {
-            if ( inventory.useIngredients( toPurchase ) ) {
-                inventoryService.save( inventory );
+            final boolean made = pipeline.isEnabled() ? pipeline.purchase( toPurchase )
+                    : retry.run( () -> inventoryService.purchase( toPurchase ) );
+            if ( made ) {
                 change = amtPaid - toPurchase.getPrice();
                 return change;
             }
@@ -1,6 +1,14 @@
 package edu.ncsu.csc.CoffeeMaker.controllers;
 
-import com.google.gson.Gson;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.ncsu.csc.CoffeeMaker.services.KeysetPage;
+import edu.ncsu.csc.CoffeeMaker.services.Service;
 
 /**
  * Base class for all of the API controllers for manipulating DomainObjects. Add
@@ -28,51 +36,57 @@ import com.google.gson.Gson;
  */
 public abstract class APIController {
     /** Base path of API */
-    static final protected String BASE_PATH = "/api/v1/";
+    static final protected String BASE_PATH     = "/api/v1/";
 
-    /**
-     * Used to serialize data and messages to JSON for transmitting through the
-     * REST API
-     */
-    static final private Gson     GSON      = new Gson();
+    /** Header holding the cursor for the next page of a list */
+    static final protected String NEXT_CURSOR   = "X-Next-Cursor";
+
+    /** Records in a page when the client doesn't give a limit */
+    static final private int      DEFAULT_LIMIT = 100;
+
+    /** Most records in one page */
+    static final private int      MAX_LIMIT     = 1000;
 
     /**
-     * Turns the provided object into JSON
-     *
-     * @param obj
-     *            The object to serialize
-     * @return The resulting JSON String
+     * The ObjectMapper Spring sets up for its Jackson converter, used to
+     * encode the fixed messages once, up front, so that they come out the
+     * same as everything the converter writes
      */
-    static final protected String toJson ( final Object obj ) {
-        return GSON.toJson( obj );
-    }
+    @Autowired
+    private ObjectMapper          mapper;
 
     /**
-     * Turns the provided object into JSON, providing the class of the object to
-     * give a better serialization. Use this if the type is known.
+     * Creates a JSONResponse for sending an error or informational message back
+     * to the user. Spring's Jackson converter writes it straight to the
+     * response.
      *
-     * @param obj
-     *            The object to serialize to JSON
-     * @param cls
-     *            The class of the object
-     * @return The resulting JSON String
+     * @param status
+     *            The status of the request to send
+     * @param message
+     *            The detailed message to send
+     * @return The response body
      */
-    static final protected String toJson ( final Object obj, final Class<JSONResponse> cls ) {
-        return GSON.toJson( obj, cls );
+    static final protected JSONResponse responseMessage ( final String status, final String message ) {
+        return new JSONResponse( status, message );
     }
 
     /**
-     * Creates a JSONResponse for sending an error or informational message back
-     * to the user.
+     * Encodes an error message once, for messages that never change and are
+     * sent often. The result can be used as a response body, or as part of
+     * one. Uses the injected ObjectMapper, so can only be called once the
+     * controller has been autowired, such as from a `@PostConstruct` method.
      *
-     * @param status
-     *            The status of the request to send
      * @param message
      *            The detailed message to send
-     * @return The resulting JSON String
+     * @return The encoded response body
      */
-    static final protected String responseMessage ( final String status, final String message ) {
-        return toJson( new JSONResponse( status, message ), JSONResponse.class );
+    protected EncodedResponse encodedError ( final String message ) {
+        try {
+            return new EncodedResponse( mapper.writeValueAsString( errorResponse( message ) ) );
+        }
+        catch ( final JsonProcessingException e ) {
+            throw new IllegalStateException( e );
+        }
     }
 
     /**
@@ -81,9 +95,9 @@ public abstract class APIController {
      *
      * @param message
      *            The detailed message to send
-     * @return The resulting JSON String
+     * @return The response body
      */
-    static final protected String errorResponse ( final String message ) {
+    static final protected JSONResponse errorResponse ( final String message ) {
         return responseMessage( "failed", message );
     }
 
@@ -93,12 +107,54 @@ public abstract class APIController {
      *
      * @param message
      *            The detailed message to send
-     * @return The resulting JSON String
+     * @return The response body
      */
-    static final protected String successResponse ( final String message ) {
+    static final protected JSONResponse successResponse ( final String message ) {
         return responseMessage( "success", message );
     }
 
+    /**
+     * Responds with one page of a list endpoint, putting the cursor for the
+     * next page, if there is one, in the X-Next-Cursor header
+     *
+     * @param service
+     *            The Service to read the page from
+     * @param limit
+     *            Most records to return, null for the default
+     * @param after
+     *            X-Next-Cursor from the previous page, null for the first page
+     * @param sort
+     *            Property to order by, optionally followed by `,asc` or `,desc`;
+     *            null to order by ID
+     * @return The page, or 400 if the parameters are not valid
+     */
+    @SuppressWarnings ( { "rawtypes", "unchecked" } )
+    static final protected ResponseEntity page ( final Service<?, ?> service, final Integer limit,
+            final String after, final String sort ) {
+        final String[] order = ( null == sort ? "id" : sort ).split( "," );
+        final boolean descending = order.length > 1 && "desc".equalsIgnoreCase( order[1].trim() );
+        if ( order.length > 1 && !descending && !"asc".equalsIgnoreCase( order[1].trim() ) ) {
+            return new ResponseEntity( errorResponse( "Sort order must be asc or desc" ), HttpStatus.BAD_REQUEST );
+        }
+        final int size = null == limit ? DEFAULT_LIMIT : limit;
+        if ( size > MAX_LIMIT ) {
+            return new ResponseEntity( errorResponse( "Limit must be at most " + MAX_LIMIT ), HttpStatus.BAD_REQUEST );
+        }
+
+        final KeysetPage<?> page;
+        try {
+            page = service.findPage( order[0].trim(), descending, after, size );
+        }
+        catch ( final IllegalArgumentException e ) {
+            return new ResponseEntity( errorResponse( e.getMessage() ), HttpStatus.BAD_REQUEST );
+        }
+        final ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if ( null != page.getNextCursor() ) {
+            response.header( NEXT_CURSOR, page.getNextCursor() );
+        }
+        return response.body( page.getContent() );
+    }
+
     /**
      * Small class used for creating simple success/error messages to return via
      * the REST API. Contains a status of the action and an message.
@@ -130,5 +186,23 @@ public abstract class APIController {
             this.status = status;
             this.message = message;
         }
+
+        /**
+         * Gets the status
+         *
+         * @return success or failed
+         */
+        public String getStatus () {
+            return status;
+        }
+
+        /**
+         * Gets the message
+         *
+         * @return the message
+         */
+        public String getMessage () {
+            return message;
+        }
     }
 }
@@ -0,0 +1,58 @@
+package edu.ncsu.csc.CoffeeMaker.controllers;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import edu.ncsu.csc.CoffeeMaker.services.CatalogImport;
+import edu.ncsu.csc.CoffeeMaker.services.CatalogImport.Format;
+import edu.ncsu.csc.CoffeeMaker.services.ImportReport;
+
+/**
+ * This is the controller that holds the REST endpoint for importing many
+ * ingredients and recipes at once, such as a franchise's whole catalog.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+@RestController
+public class APIImportController extends APIController {
+
+    /** Media type of CSV */
+    private static final String TEXT_CSV = "text/csv";
+
+    /**
+     * Imports ingredients and recipes
+     */
+    @Autowired
+    private CatalogImport       importer;
+
+    /**
+     * REST API method to import ingredients and recipes from an NDJSON or CSV
+     * body, one definition per line. The body is read as it arrives rather
+     * than all at once. Lines that can't be imported are listed in the
+     * response, and don't stop the rest of the import.
+     *
+     * @param contentType
+     *            type of the body
+     * @param body
+     *            the definitions
+     * @return how many ingredients and recipes were created, and the lines
+     *         that were not imported
+     * @throws IOException
+     *             if the body can't be read
+     */
+    @PostMapping ( value = BASE_PATH + "/import", consumes = { "application/x-ndjson", TEXT_CSV } )
+    public ImportReport importCatalog ( @RequestHeader ( HttpHeaders.CONTENT_TYPE ) final String contentType,
+            final InputStream body ) throws IOException {
+        final boolean csv = MediaType.parseMediaType( contentType ).isCompatibleWith( MediaType.valueOf( TEXT_CSV ) );
+        return importer.run( body, csv ? Format.CSV : Format.NDJSON );
+    }
+
+}
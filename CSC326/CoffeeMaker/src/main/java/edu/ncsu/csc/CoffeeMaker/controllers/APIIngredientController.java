@@ -1,19 +1,29 @@
 package edu.ncsu.csc.CoffeeMaker.controllers;
 
-import java.util.List;
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
 import edu.ncsu.csc.CoffeeMaker.services.IngredientService;
+import edu.ncsu.csc.CoffeeMaker.services.JsonStreams;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions.Resource;
 
 /**
  * This is the controller that holds the REST endpoints that handle CRUD
@@ -31,6 +41,11 @@ import edu.ncsu.csc.CoffeeMaker.services.IngredientService;
 @RestController
 public class APIIngredientController extends APIController {
 
+    /**
+     * Number of ingredients read from the database at a time
+     */
+    private static final int  PAGE_SIZE = 500;
+
     /**
      * IngredientService object, to be autowired in by Spring to allow for
      * manipulating the Ingredient model
@@ -39,13 +54,57 @@ public class APIIngredientController extends APIController {
     private IngredientService service;
 
     /**
-     * REST API method to provide GET access to all ingredients in the system
+     * Versions of the resources, used as ETags
+     */
+    @Autowired
+    private ResourceVersions  versions;
+
+    /**
+     * Used to write the ingredients as JSON
+     */
+    @Autowired
+    private ObjectMapper      mapper;
+
+    /**
+     * REST API method to provide GET access to all ingredients in the system.
+     * If the client already has the current ingredients, as given by
+     * If-None-Match, responds 304 without reading them. Otherwise the
+     * ingredients are read a page at a time and written out as they are read,
+     * so that memory use doesn't grow with the number of ingredients.
+     *
+     * If any of `limit`, `after` or `sort` are given, only one page of
+     * ingredients is returned instead, and the cursor for the next page is
+     * sent back in the X-Next-Cursor header.
      *
-     * @return JSON representation of all ingredients
+     * @param request
+     *            the request, checked for If-None-Match
+     * @param response
+     *            the response, which the full list is written straight to
+     * @param limit
+     *            most ingredients to return in a page
+     * @param after
+     *            cursor from the previous page
+     * @param sort
+     *            `id` or `name`, optionally followed by `,desc`
+     * @return a page of ingredients, or null once all of them have been
+     *         written to the response
+     * @throws IOException
+     *             if the response can't be written to
      */
     @GetMapping ( BASE_PATH + "/ingredients" )
-    public List<Ingredient> getNames () {
-        return service.findAll();
+    public ResponseEntity getNames ( final WebRequest request, final HttpServletResponse response,
+            @RequestParam ( required = false ) final Integer limit,
+            @RequestParam ( required = false ) final String after,
+            @RequestParam ( required = false ) final String sort ) throws IOException {
+        if ( null != limit || null != after || null != sort ) {
+            return page( service, limit, after, sort );
+        }
+        if ( request.checkNotModified( versions.etag( Resource.INGREDIENTS ) ) ) {
+            return null;
+        }
+        response.setContentType( MediaType.APPLICATION_JSON_VALUE );
+        JsonStreams.writeArray( mapper, service.stream( PAGE_SIZE ), response.getOutputStream() );
+        return null;
     }
 
     /**
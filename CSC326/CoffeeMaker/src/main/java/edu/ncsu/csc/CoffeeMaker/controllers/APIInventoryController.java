@@ -4,15 +4,22 @@ import java.util.Iterator;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
 import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.services.ConflictRetry;
 import edu.ncsu.csc.CoffeeMaker.services.InventoryService;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions.Resource;
 
 /**
  * This is the controller that holds the REST endpoints that handle add and
@@ -36,18 +43,55 @@ public class APIInventoryController extends APIController {
     @Autowired
     private InventoryService service;
 
+    /**
+     * Versions of the resources, used as ETags
+     */
+    @Autowired
+    private ResourceVersions versions;
+
+    /**
+     * Retries updates that conflict with a purchase made since the Inventory
+     * was read
+     */
+    @Autowired
+    private ConflictRetry    retry;
+
     /**
      * REST API endpoint to provide GET access to the CoffeeMaker's singleton
-     * Inventory. This will convert the Inventory to JSON.
+     * Inventory. This will convert the Inventory to JSON. If the client already
+     * has the current Inventory, as given by If-None-Match, responds 304
+     * without reading it.
      *
+     * @param request
+     *            the request, checked for If-None-Match
      * @return response to the request
      */
     @GetMapping ( BASE_PATH + "/inventory" )
-    public ResponseEntity getInventory () {
+    public ResponseEntity getInventory ( final WebRequest request ) {
+        if ( request.checkNotModified( versions.etag( Resource.INVENTORY ) ) ) {
+            return null;
+        }
         final Inventory inventory = service.getInventory();
         return new ResponseEntity( inventory, HttpStatus.OK );
     }
 
+    /**
+     * REST API endpoint to provide GET access to the amount of one ingredient
+     * in the Inventory, without reading the rest of it.
+     *
+     * @param name
+     *            ingredient name
+     * @return response to the request
+     */
+    @GetMapping ( BASE_PATH + "/inventory/{name}" )
+    public ResponseEntity getInventoryIngredient ( @PathVariable ( "name" ) final String name ) {
+        final int amount = service.getAmount( name );
+        return amount < 0
+                ? new ResponseEntity( errorResponse( "No ingredient found in inventory with name " + name ),
+                        HttpStatus.NOT_FOUND )
+                : new ResponseEntity( new Ingredient( name, amount ), HttpStatus.OK );
+    }
+
     /**
      * REST API endpoint to provide update access to CoffeeMaker's singleton
      * Inventory. This will update the Inventory of the CoffeeMaker by adding
@@ -55,20 +99,31 @@ public class APIInventoryController extends APIController {
      *
      * @param inventory
      *            amounts to add to inventory
-     * @return response to the request
+     * @return response to the request; 409 if the Inventory kept changing
+     *         between being read and saved
      */
     @PutMapping ( BASE_PATH + "/inventory" )
     public ResponseEntity updateInventory ( @RequestBody final Inventory inventory ) {
-        final Inventory inventoryCurrent = service.getInventory();
+        final Inventory inventoryCurrent;
+        try {
+            inventoryCurrent = retry.run( () -> {
+                final Inventory current = service.getInventory();
 
-        // go thru all ingredients in inventory and add to inventoryCurrent
-        final Iterator<Map.Entry<String, Integer>> iterator = inventory.getIngredientMap().entrySet().iterator();
-        while ( iterator.hasNext() ) {
-            final Map.Entry<String, Integer> entry = iterator.next();
-            inventoryCurrent.putIngredient( entry.getKey(), entry.getValue() );
-        }
+                // go thru all ingredients in inventory and add to current
+                final Iterator<Map.Entry<String, Integer>> iterator = inventory.getIngredientMap().entrySet()
+                        .iterator();
+                while ( iterator.hasNext() ) {
+                    final Map.Entry<String, Integer> entry = iterator.next();
+                    current.putIngredient( entry.getKey(), entry.getValue() );
+                }
 
-        service.save( inventoryCurrent );
+                service.save( current );
+                return current;
+            } );
+        }
+        catch ( final ConcurrencyFailureException e ) {
+            return new ResponseEntity( errorResponse( "Inventory is busy, please try again" ), HttpStatus.CONFLICT );
+        }
         return new ResponseEntity( inventoryCurrent, HttpStatus.OK );
     }
 }
@@ -1,19 +1,28 @@
 package edu.ncsu.csc.CoffeeMaker.controllers;
 
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.RecipeAvailability;
+import edu.ncsu.csc.CoffeeMaker.services.RecipeMenu;
 import edu.ncsu.csc.CoffeeMaker.services.RecipeService;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions.Resource;
 
 /**
  * This is the controller that holds the REST endpoints that handle CRUD
@@ -35,16 +44,119 @@ public class APIRecipeController extends APIController {
      * manipulating the Recipe model
      */
     @Autowired
-    private RecipeService service;
+    private RecipeService      service;
 
     /**
-     * REST API method to provide GET access to all recipes in the system
+     * Versions of the resources, used as ETags
+     */
+    @Autowired
+    private ResourceVersions   versions;
+
+    /**
+     * All recipes, already encoded
+     */
+    @Autowired
+    private RecipeMenu         menu;
+
+    /**
+     * Recipes that can be made from the current stock, and how many times
+     */
+    @Autowired
+    private RecipeAvailability availability;
+
+    /**
+     * REST API method to provide GET access to all recipes in the system. If
+     * the client already has the current recipes, as given by If-None-Match,
+     * responds 304 without reading them. Otherwise the recipes are written
+     * from the pre-encoded menu, gzipped if the client accepts that.
+     *
+     * If any of `limit`, `after` or `sort` are given, only one page of recipes
+     * is returned instead, and the cursor for the next page is sent back in
+     * the X-Next-Cursor header.
      *
+     * @param request
+     *            the request, checked for If-None-Match and Accept-Encoding
+     * @param limit
+     *            most recipes to return in a page
+     * @param after
+     *            cursor from the previous page
+     * @param sort
+     *            `id` or `name`, optionally followed by `,desc`
      * @return JSON representation of all recipies
      */
     @GetMapping ( BASE_PATH + "/recipes" )
-    public List<Recipe> getRecipes () {
-        return service.findAll();
+    public ResponseEntity getRecipes ( final WebRequest request,
+            @RequestParam ( required = false ) final Integer limit,
+            @RequestParam ( required = false ) final String after,
+            @RequestParam ( required = false ) final String sort ) {
+        if ( null != limit || null != after || null != sort ) {
+            return page( service, limit, after, sort );
+        }
+        final boolean gzip = acceptsGzip( request.getHeader( HttpHeaders.ACCEPT_ENCODING ) );
+        final String etag = gzip ? versions.etag( Resource.RECIPES, "gzip" ) : versions.etag( Resource.RECIPES );
+        if ( request.checkNotModified( etag ) ) {
+            return null;
+        }
+        final RecipeMenu.Encoded encoded = menu.get();
+        final ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType( MediaType.APPLICATION_JSON )
+                .header( HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING );
+        return gzip ? response.header( HttpHeaders.CONTENT_ENCODING, "gzip" ).body( encoded.getGzip() )
+                : response.body( encoded.getJson() );
+    }
+
+    /**
+     * Checks whether an Accept-Encoding header allows gzip
+     *
+     * @param acceptEncoding
+     *            the header, null if there wasn't one
+     * @return true if gzip is listed and not refused with q=0
+     */
+    private static boolean acceptsGzip ( final String acceptEncoding ) {
+        if ( null == acceptEncoding ) {
+            return false;
+        }
+        for ( final String coding : acceptEncoding.split( "," ) ) {
+            final String[] parts = coding.trim().split( ";" );
+            if ( "gzip".equalsIgnoreCase( parts[0].trim() ) ) {
+                return parts.length < 2 || !parts[1].replace( " ", "" ).matches( "q=0(\\.0*)?" );
+            }
+        }
+        return false;
+    }
+
+    /**
+     * REST API method to list the recipes that can be made from the current
+     * stock. This is answered from memory, and is kept up to date as the
+     * stock changes rather than worked out for each request.
+     *
+     * @return names of the recipes that can be made
+     */
+    @GetMapping ( BASE_PATH + "/recipes/available" )
+    public List<String> getAvailableRecipes () {
+        return availability.getAvailable();
+    }
+
+    /**
+     * REST API method to report how many more servings of each recipe the
+     * current stock is enough for. Like the available recipes, this is kept
+     * up to date in memory and answered without a query.
+     *
+     * @return servings by recipe name; -1 for a recipe that needs none of any
+     *         ingredient
+     */
+    @GetMapping ( BASE_PATH + "/recipes/servings" )
+    public Map<String, Integer> getServings () {
+        return availability.getServings();
+    }
+
+    /**
+     * REST API method to report how well the recipe cache is doing
+     *
+     * @return the cache's hits, misses, evictions and size
+     */
+    @GetMapping ( BASE_PATH + "/recipecache" )
+    public Map<String, Long> getRecipeCacheStats () {
+        return service.getCacheStats();
     }
 
     /**
@@ -79,7 +191,7 @@ public class APIRecipeController extends APIController {
             return new ResponseEntity( errorResponse( "Recipe with the name " + recipe.getName() + " already exists" ),
                     HttpStatus.CONFLICT );
         }
-        if ( service.findAll().size() < 3 ) {
+        if ( service.count() < 3 ) {
             service.save( recipe );
             return new ResponseEntity( successResponse( recipe.getName() + " successfully created" ), HttpStatus.OK );
         }
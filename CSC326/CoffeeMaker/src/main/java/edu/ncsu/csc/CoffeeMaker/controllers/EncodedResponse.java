@@ -0,0 +1,169 @@
+package edu.ncsu.csc.CoffeeMaker.controllers;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+/**
+ * A response body that was encoded to JSON once, up front, for the messages
+ * the API sends over and over again. Its UTF-8 bytes are written out as they
+ * are, either as a whole response body by the `Converter` or as part of a
+ * larger body that Jackson is writing.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+public final class EncodedResponse implements JsonSerializable {
+
+    /** The JSON, which caches its own UTF-8 encoding */
+    private final SerializedString json;
+
+    /**
+     * Wraps already encoded JSON
+     *
+     * @param json
+     *            the JSON text
+     */
+    EncodedResponse ( final String json ) {
+        this.json = new SerializedString( json );
+    }
+
+    /**
+     * Writes the JSON into a value Jackson is generating
+     *
+     * @param gen
+     *            generator to write to
+     * @param serializers
+     *            unused
+     * @throws IOException
+     *             if the generator can't be written to
+     */
+    @Override
+    public void serialize ( final JsonGenerator gen, final SerializerProvider serializers ) throws IOException {
+        gen.writeRawValue( json );
+    }
+
+    /**
+     * Writes the JSON into a value Jackson is generating; it has no type
+     * information to add
+     *
+     * @param gen
+     *            generator to write to
+     * @param serializers
+     *            unused
+     * @param typeSer
+     *            unused
+     * @throws IOException
+     *             if the generator can't be written to
+     */
+    @Override
+    public void serializeWithType ( final JsonGenerator gen, final SerializerProvider serializers,
+            final TypeSerializer typeSer ) throws IOException {
+        serialize( gen, serializers );
+    }
+
+    /**
+     * Gets the JSON text
+     *
+     * @return the JSON
+     */
+    @Override
+    public String toString () {
+        return json.getValue();
+    }
+
+    /**
+     * Writes an EncodedResponse as a whole response body, straight from its
+     * cached bytes, as application/json. It is never used to read a request
+     * body.
+     */
+    public static final class Converter extends AbstractHttpMessageConverter<EncodedResponse> {
+
+        /**
+         * Creates the converter, which writes JSON
+         */
+        public Converter () {
+            super( MediaType.APPLICATION_JSON );
+        }
+
+        /**
+         * Only EncodedResponse itself is written by this converter
+         *
+         * @param clazz
+         *            class of the body
+         * @return true if it is EncodedResponse
+         */
+        @Override
+        protected boolean supports ( final Class<?> clazz ) {
+            return EncodedResponse.class == clazz;
+        }
+
+        /**
+         * Nothing is ever read as an EncodedResponse, so Spring never asks
+         * this converter to read a request body
+         *
+         * @param mediaType
+         *            content type of the request
+         * @return false
+         */
+        @Override
+        protected boolean canRead ( final MediaType mediaType ) {
+            return false;
+        }
+
+        /**
+         * Never called, since `canRead` is always false
+         *
+         * @param clazz
+         *            class to read
+         * @param inputMessage
+         *            the request
+         * @return null
+         */
+        @Override
+        protected EncodedResponse readInternal ( final Class<? extends EncodedResponse> clazz,
+                final HttpInputMessage inputMessage ) {
+            return null;
+        }
+
+        /**
+         * The length is known up front, from the cached bytes
+         *
+         * @param response
+         *            the body to write
+         * @param contentType
+         *            content type of the response
+         * @return number of bytes in the body
+         */
+        @Override
+        protected Long getContentLength ( final EncodedResponse response, final MediaType contentType ) {
+            return (long) response.json.asUnquotedUTF8().length;
+        }
+
+        /**
+         * Writes the cached UTF-8 bytes as the body
+         *
+         * @param response
+         *            the body to write
+         * @param outputMessage
+         *            the response
+         * @throws IOException
+         *             if the response can't be written to
+         */
+        @Override
+        protected void writeInternal ( final EncodedResponse response, final HttpOutputMessage outputMessage )
+                throws IOException {
+            outputMessage.getBody().write( response.json.asUnquotedUTF8() );
+        }
+    }
+
+}
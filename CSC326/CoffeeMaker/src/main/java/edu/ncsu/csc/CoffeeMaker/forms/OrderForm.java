@@ -0,0 +1,75 @@
+package edu.ncsu.csc.CoffeeMaker.forms;
+
+/**
+ * A single order sent to the batch make-coffee endpoint: the name of the
+ * Recipe to make and the amount the customer paid for it.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+public class OrderForm {
+
+    /** Name of the Recipe to make */
+    private String name;
+
+    /** Amount paid */
+    private int    amtPaid;
+
+    /**
+     * Empty constructor, used by Spring when converting the JSON request body
+     */
+    public OrderForm () {
+    }
+
+    /**
+     * Creates an OrderForm
+     *
+     * @param name
+     *            name of the Recipe to make
+     * @param amtPaid
+     *            amount paid
+     */
+    public OrderForm ( final String name, final int amtPaid ) {
+        this.name = name;
+        this.amtPaid = amtPaid;
+    }
+
+    /**
+     * Gets the name of the Recipe to make
+     *
+     * @return recipe name
+     */
+    public String getName () {
+        return name;
+    }
+
+    /**
+     * Sets the name of the Recipe to make
+     *
+     * @param name
+     *            recipe name
+     */
+    public void setName ( final String name ) {
+        this.name = name;
+    }
+
+    /**
+     * Gets the amount paid
+     *
+     * @return amount paid
+     */
+    public int getAmtPaid () {
+        return amtPaid;
+    }
+
+    /**
+     * Sets the amount paid
+     *
+     * @param amtPaid
+     *            amount paid
+     */
+    public void setAmtPaid ( final int amtPaid ) {
+        this.amtPaid = amtPaid;
+    }
+
+}
@@ -3,8 +3,14 @@ package edu.ncsu.csc.CoffeeMaker.models;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
 import javax.validation.constraints.Min;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
 /**
  * Class represents an Ingredient object, which contains a name and amount
  *
@@ -14,11 +20,14 @@ import javax.validation.constraints.Min;
  *
  */
 @Entity
+@Table ( indexes = @Index ( name = "ix_ingredient_name", columnList = "name" ) )
 public class Ingredient extends DomainObject {
 
     /** Primary key for database */
     @Id
-    @GeneratedValue
+    @GeneratedValue ( generator = "ingredient_seq" )
+    @GenericGenerator ( name = "ingredient_seq", strategy = PooledSequenceGenerator.NAME,
+            parameters = @Parameter ( name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "ingredient_seq" ) )
     private Long    id;
 
     /** Ingredient name */
@@ -110,6 +119,18 @@ public class Ingredient extends DomainObject {
         return this.id;
     }
 
+    /**
+     * Makes a copy of the Ingredient, with the same ID, that shares nothing
+     * with this one
+     *
+     * @return the copy
+     */
+    public Ingredient copy () {
+        final Ingredient copy = new Ingredient( name, amount );
+        copy.id = id;
+        return copy;
+    }
+
     /**
      * A String representation of the Ingredient object.
      */
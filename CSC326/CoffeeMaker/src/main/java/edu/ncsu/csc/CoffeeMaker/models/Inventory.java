@@ -1,13 +1,29 @@
 package edu.ncsu.csc.CoffeeMaker.models;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 
+import javax.persistence.CollectionTable;
+import javax.persistence.Column;
+import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.MapKeyColumn;
+import javax.persistence.PostLoad;
+import javax.persistence.Transient;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 /**
  * Inventory for the coffee maker. Inventory is tied to the database using
@@ -22,13 +38,62 @@ public class Inventory extends DomainObject {
 
     /** id for inventory entry */
     @Id
-    @GeneratedValue
-    private Long                     id;
+    @GeneratedValue ( generator = "inventory_seq" )
+    @GenericGenerator ( name = "inventory_seq", strategy = PooledSequenceGenerator.NAME,
+            parameters = @Parameter ( name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "inventory_seq" ) )
+    private Long                    id;
+
+    /**
+     * Map used to store ingredients and their amounts in the inventory. Each
+     * entry is its own row in the inventory_ingredient table, so a single
+     * ingredient can be updated in the database without touching the others.
+     */
+    @ElementCollection ( fetch = FetchType.EAGER )
+    @CollectionTable ( name = "inventory_ingredient", joinColumns = @JoinColumn ( name = "inventory_id" ) )
+    @MapKeyColumn ( name = "ingredient" )
+    @Column ( name = "amount" )
+    private Map<String, Integer>    ingredientMap;
+
+    /**
+     * Version used for optimistic locking, so that saving an Inventory that
+     * was changed by someone else since it was read fails rather than
+     * overwriting their changes. InventoryRepository.useIngredients bumps it
+     * as well.
+     */
+    @Version
+    private long                    version;
+
+    /**
+     * Sequence number of the last InventoryLog record reflected in the
+     * amounts stored here. When the log is in use, recovery replays only the
+     * records after this one.
+     */
+    @Column ( name = "wal_sequence" )
+    private long                    walSequence;
+
+    /**
+     * Amount of each ingredient by plan slot, so that plans are checked and
+     * used over a plain array. A slot is read from ingredientMap the first
+     * time a plan uses it, and the whole array is dropped whenever
+     * ingredientMap may have been changed some other way.
+     */
+    @Transient
+    private int[]                   stock;
+
+    /** Name of the ingredient held in each slot of `stock`, null if none */
+    @Transient
+    private String[]                stocked;
 
     /**
-     * Map used to store ingredients and their amounts in the inventory
+     * Plans of the Recipes used with this Inventory, each compiled the first
+     * time it is used
      */
-    private HashMap<String, Integer> ingredientMap;
+    @Transient
+    private Map<Recipe, RecipePlan> plans;
+
+    /** Slots given to the ingredients of the Recipes' plans */
+    @Transient
+    private Map<String, Integer>    slots;
 
     /**
      * Empty constructor for Hibernate
@@ -85,6 +150,28 @@ public class Inventory extends DomainObject {
         this.id = id;
     }
 
+    /**
+     * Gets the sequence number of the last InventoryLog record reflected in
+     * this Inventory
+     *
+     * @return log sequence number, 0 if none
+     */
+    @JsonIgnore
+    public long getWalSequence () {
+        return walSequence;
+    }
+
+    /**
+     * Sets the sequence number of the last InventoryLog record reflected in
+     * this Inventory
+     *
+     * @param walSequence
+     *            log sequence number
+     */
+    public void setWalSequence ( final long walSequence ) {
+        this.walSequence = walSequence;
+    }
+
     /**
      * Gets amount of an ingredient in the inventory
      *
@@ -105,7 +192,9 @@ public class Inventory extends DomainObject {
      *
      * @return map of inventory
      */
-    public HashMap<String, Integer> getIngredientMap () {
+    public Map<String, Integer> getIngredientMap () {
+        // The caller may change the amounts through the map
+        forget();
         return ingredientMap;
     }
 
@@ -127,6 +216,7 @@ public class Inventory extends DomainObject {
         if ( coffee < 0 || milk < 0 || sugar < 0 || chocolate < 0 ) {
             throw new IllegalArgumentException( "Amount cannot be negative" );
         }
+        forget();
 
         if ( ingredientMap.containsKey( "Chocolate" ) ) {
             final Integer origAmt = ingredientMap.get( "Chocolate" );
@@ -177,6 +267,7 @@ public class Inventory extends DomainObject {
         if ( amount < 0 ) {
             throw new IllegalArgumentException( "Amount must be a positive integer" );
         }
+        forget();
 
         if ( ingredientMap.containsKey( ingredient ) ) {
             ingredientMap.replace( ingredient, amount );
@@ -189,7 +280,10 @@ public class Inventory extends DomainObject {
     }
 
     /**
-     * Returns true if there are enough ingredients to make the beverage.
+     * Returns true if there are enough ingredients to make the beverage. The
+     * Recipe is compiled into a plan the first time it is used with this
+     * Inventory, so changes made to its ingredients after that are not seen
+     * here.
      *
      * @param r
      *            recipe to check recipe to check if there are enough
@@ -197,46 +291,109 @@ public class Inventory extends DomainObject {
      * @return true if enough ingredients to make the beverage
      */
     public boolean enoughIngredients ( final Recipe r ) {
-        boolean isEnough = true;
-        final List<Ingredient> ingredients = r.getNames();
+        return enoughIngredients( planOf( r ) );
+    }
 
-        for ( int i = 0; i < ingredients.size(); i++ ) {
-            final Integer inventoryAmt = ingredientMap.get( ingredients.get( i ).getName() );
-            if ( ingredients.get( i ).getAmount() > inventoryAmt ) {
-                isEnough = false;
+    /**
+     * Returns true if there are enough ingredients to make the beverage
+     * described by a compiled RecipePlan, such as one from RecipePlans.
+     *
+     * @param plan
+     *            plan of the recipe to check
+     * @return true if enough ingredients to make the beverage
+     */
+    public boolean enoughIngredients ( final RecipePlan plan ) {
+        for ( int i = 0; i < plan.size(); i++ ) {
+            if ( amountAt( plan.getSlot( i ), plan.getName( i ) ) < plan.getAmount( i ) ) {
+                return false;
             }
         }
-        return isEnough;
+        return true;
     }
 
     /**
      * Removes the ingredients used to make the specified recipe. Assumes that
-     * the user has checked that there are enough ingredients to make
+     * the user has checked that there are enough ingredients to make. The
+     * Recipe is compiled as for `enoughIngredients(Recipe)`.
      *
      * @param r
      *            recipe to make
      * @return true if recipe is made.
      */
     public boolean useIngredients ( final Recipe r ) {
-        if ( enoughIngredients( r ) ) {
-            // List of all ingredients in the recipe
-            final List<Ingredient> ingredients = r.getNames();
-
-            for ( int i = 0; i < ingredients.size(); i++ ) {
-                // The ingredient in the recipe to use
-                final Ingredient recipeIngredient = ingredients.get( i );
-                // The current amount of the ingredient in the inventory
-                final Integer inventoryAmt = ingredientMap.get( recipeIngredient.getName() );
-
-                // Update the amount in the inventory
-                ingredientMap.replace( recipeIngredient.getName(), inventoryAmt - recipeIngredient.getAmount() );
-            }
-            return true;
-        }
-        else { // Not enough ingredients
+        return useIngredients( planOf( r ) );
+    }
+
+    /**
+     * Removes the ingredients used to make the recipe described by a compiled
+     * RecipePlan, if there are enough of them. The amounts left are written
+     * back to ingredientMap, which is what gets saved.
+     *
+     * @param plan
+     *            plan of the recipe to make
+     * @return true if recipe is made.
+     */
+    public boolean useIngredients ( final RecipePlan plan ) {
+        if ( !enoughIngredients( plan ) ) {
             return false;
         }
+        for ( int i = 0; i < plan.size(); i++ ) {
+            final int slot = plan.getSlot( i );
+            stock[slot] -= plan.getAmount( i );
+            ingredientMap.put( plan.getName( i ), stock[slot] );
+        }
+        return true;
+    }
 
+    /**
+     * Gets the plan of a Recipe, compiling it the first time the Recipe is
+     * used with this Inventory. Slots are given out by this Inventory.
+     *
+     * @param r
+     *            the recipe
+     * @return its plan
+     */
+    private RecipePlan planOf ( final Recipe r ) {
+        if ( null == plans ) {
+            plans = new IdentityHashMap<Recipe, RecipePlan>();
+            slots = new HashMap<String, Integer>();
+        }
+        return plans.computeIfAbsent( r,
+                recipe -> RecipePlan.compile( recipe, name -> slots.computeIfAbsent( name, n -> slots.size() ) ) );
+    }
+
+    /**
+     * Gets the amount in a slot of `stock`, reading it from ingredientMap if
+     * the slot doesn't hold that ingredient yet
+     *
+     * @param slot
+     *            slot of the ingredient
+     * @param name
+     *            name of the ingredient
+     * @return amount in stock, -1 if the ingredient is not in the Inventory
+     */
+    private int amountAt ( final int slot, final String name ) {
+        if ( null == stock || slot >= stock.length ) {
+            final int length = Math.max( slot + 1, null == stock ? 8 : stock.length * 2 );
+            stock = null == stock ? new int[length] : Arrays.copyOf( stock, length );
+            stocked = null == stocked ? new String[length] : Arrays.copyOf( stocked, length );
+        }
+        if ( name != stocked[slot] && !name.equals( stocked[slot] ) ) {
+            final Integer amount = ingredientMap.get( name );
+            stock[slot] = null == amount ? -1 : amount;
+            stocked[slot] = name;
+        }
+        return stock[slot];
+    }
+
+    /**
+     * Drops the amounts read into `stock`, when ingredientMap may have been
+     * changed other than by a plan or has just been loaded
+     */
+    @PostLoad
+    private void forget () {
+        stock = null;
+        stocked = null;
     }
 
     /**
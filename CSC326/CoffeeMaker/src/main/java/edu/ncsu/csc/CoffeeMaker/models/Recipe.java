@@ -8,9 +8,16 @@ import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.OneToMany;
+import javax.persistence.Table;
 import javax.validation.constraints.Min;
 
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
 /**
  * Recipe for the coffee maker. Recipe is tied to the database using Hibernate
  * libraries. See RecipeRepository and RecipeService for the other two pieces
@@ -19,11 +26,14 @@ import javax.validation.constraints.Min;
  * @author Kai Presler-Marshall
  */
 @Entity
+@Table ( indexes = @Index ( name = "ux_recipe_name", columnList = "name", unique = true ) )
 public class Recipe extends DomainObject {
 
     /** Recipe id */
     @Id
-    @GeneratedValue
+    @GeneratedValue ( generator = "recipe_seq" )
+    @GenericGenerator ( name = "recipe_seq", strategy = PooledSequenceGenerator.NAME,
+            parameters = @Parameter ( name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "recipe_seq" ) )
     private Long                   id;
 
     /** Recipe name */
@@ -33,8 +43,12 @@ public class Recipe extends DomainObject {
     @Min ( 0 )
     private Integer                price;
 
-    /** Ingredients the recipe may have */
+    /**
+     * Ingredients the recipe may have. Queries that don't fetch them along
+     * with the recipes load them for up to 32 recipes at a time.
+     */
     @OneToMany ( cascade = CascadeType.ALL, fetch = FetchType.EAGER )
+    @BatchSize ( size = 32 )
     private final List<Ingredient> ingredients;
 
     /**
@@ -124,6 +138,23 @@ public class Recipe extends DomainObject {
         this.price = price;
     }
 
+    /**
+     * Makes a copy of the Recipe and its ingredients, with the same IDs, that
+     * shares nothing with this one
+     *
+     * @return the copy
+     */
+    public Recipe copy () {
+        final Recipe copy = new Recipe();
+        copy.id = id;
+        copy.name = name;
+        copy.price = price;
+        for ( final Ingredient ingredient : ingredients ) {
+            copy.ingredients.add( ingredient.copy() );
+        }
+        return copy;
+    }
+
     /**
      * toString representation of Recipe that prints out all the ingredients.
      *
@@ -0,0 +1,153 @@
+package edu.ncsu.csc.CoffeeMaker.models;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * A Recipe compiled down to what it takes from the Inventory: the name, slot
+ * and amount of each ingredient it uses, in parallel arrays. Slots normally
+ * come from the IngredientCatalog. Ingredients with an amount of zero are left
+ * out and repeated ingredients are combined, so checking and using a plan is a
+ * single loop over primitive arrays. Plans are immutable; compile a new one
+ * when the Recipe changes.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+public final class RecipePlan {
+
+    /** Name of each ingredient used */
+    private final String[] names;
+
+    /** Slot of each ingredient used */
+    private final int[]    slots;
+
+    /** Amount of each ingredient used */
+    private final int[]    amounts;
+
+    /**
+     * Creates a RecipePlan
+     *
+     * @param names
+     *            name of each ingredient used
+     * @param slots
+     *            slot of each ingredient used
+     * @param amounts
+     *            amount of each ingredient used
+     */
+    private RecipePlan ( final String[] names, final int[] slots, final int[] amounts ) {
+        this.names = names;
+        this.slots = slots;
+        this.amounts = amounts;
+    }
+
+    /**
+     * Compiles a Recipe into a RecipePlan
+     *
+     * @param recipe
+     *            the Recipe to compile
+     * @param slotOf
+     *            gives the slot of each ingredient name, such as
+     *            `IngredientCatalog::slotOf`
+     * @return the plan for the Recipe
+     */
+    public static RecipePlan compile ( final Recipe recipe, final ToIntFunction<String> slotOf ) {
+        final List<Ingredient> ingredients = recipe.getNames();
+        final Map<String, Integer> used = new LinkedHashMap<String, Integer>();
+        for ( int i = 0; i < ingredients.size(); i++ ) {
+            final Ingredient ingredient = ingredients.get( i );
+            if ( null != ingredient.getAmount() && ingredient.getAmount() > 0 ) {
+                used.merge( ingredient.getName(), ingredient.getAmount(), Integer::sum );
+            }
+        }
+
+        final String[] names = new String[used.size()];
+        final int[] slots = new int[used.size()];
+        final int[] amounts = new int[used.size()];
+        int i = 0;
+        for ( final Map.Entry<String, Integer> entry : used.entrySet() ) {
+            names[i] = entry.getKey();
+            slots[i] = slotOf.applyAsInt( entry.getKey() );
+            amounts[i] = entry.getValue();
+            i++;
+        }
+        return new RecipePlan( names, slots, amounts );
+    }
+
+    /**
+     * Combines several plans into one that uses everything they do, so that a
+     * batch of recipes can be taken out of the Inventory at once
+     *
+     * @param plans
+     *            the plans to combine
+     * @return a plan using the total of each ingredient, in the order the
+     *         ingredients first appear
+     */
+    public static RecipePlan sum ( final List<RecipePlan> plans ) {
+        // Name to { slot, amount }
+        final Map<String, int[]> used = new LinkedHashMap<String, int[]>();
+        for ( final RecipePlan plan : plans ) {
+            for ( int i = 0; i < plan.size(); i++ ) {
+                final int slot = plan.slots[i];
+                used.computeIfAbsent( plan.names[i], name -> new int[] { slot, 0 } )[1] += plan.amounts[i];
+            }
+        }
+
+        final String[] names = new String[used.size()];
+        final int[] slots = new int[used.size()];
+        final int[] amounts = new int[used.size()];
+        int i = 0;
+        for ( final Map.Entry<String, int[]> entry : used.entrySet() ) {
+            names[i] = entry.getKey();
+            slots[i] = entry.getValue()[0];
+            amounts[i] = entry.getValue()[1];
+            i++;
+        }
+        return new RecipePlan( names, slots, amounts );
+    }
+
+    /**
+     * Gets the number of ingredients the plan uses
+     *
+     * @return number of ingredients
+     */
+    public int size () {
+        return slots.length;
+    }
+
+    /**
+     * Gets the name of one of the ingredients used
+     *
+     * @param i
+     *            index of the ingredient in the plan
+     * @return ingredient name
+     */
+    public String getName ( final int i ) {
+        return names[i];
+    }
+
+    /**
+     * Gets the slot of one of the ingredients used
+     *
+     * @param i
+     *            index of the ingredient in the plan
+     * @return ingredient slot
+     */
+    public int getSlot ( final int i ) {
+        return slots[i];
+    }
+
+    /**
+     * Gets the amount of one of the ingredients used
+     *
+     * @param i
+     *            index of the ingredient in the plan
+     * @return ingredient amount
+     */
+    public int getAmount ( final int i ) {
+        return amounts[i];
+    }
+
+}
@@ -1,6 +1,11 @@
 package edu.ncsu.csc.CoffeeMaker.repositories;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
 
@@ -24,4 +29,15 @@ public interface IngredientRepository extends JpaRepository<Ingredient, Long> {
      */
     Ingredient findByName ( String name );
 
+    /**
+     * Finds which of the provided names are already used by an Ingredient,
+     * without loading the ingredients.
+     *
+     * @param names
+     *            Names to look for
+     * @return The names that are taken, empty if none.
+     */
+    @Query ( "select distinct i.name from Ingredient i where i.name in :names" )
+    List<String> findNamesIn ( @Param ( "names" ) Collection<String> names );
+
 }
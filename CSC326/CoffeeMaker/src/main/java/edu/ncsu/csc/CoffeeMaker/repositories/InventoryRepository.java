@@ -1,16 +1,46 @@
 package edu.ncsu.csc.CoffeeMaker.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import edu.ncsu.csc.CoffeeMaker.models.Inventory;
 
 /**
  * InventoryRepository is used to provide CRUD operations for the Inventory
- * model. Spring will generate appropriate code with JPA.
+ * model. Spring will generate appropriate code with JPA; the operations in
+ * InventoryRepositoryCustom are implemented by hand in
+ * InventoryRepositoryImpl.
  *
  * @author Kai Presler-Marshall
  *
  */
-public interface InventoryRepository extends JpaRepository<Inventory, Long> {
+public interface InventoryRepository extends JpaRepository<Inventory, Long>, InventoryRepositoryCustom {
+
+    /**
+     * Reads the amount of a single ingredient without loading the rest of the
+     * Inventory.
+     *
+     * @param inventoryId
+     *            ID of the Inventory
+     * @param ingredient
+     *            Name of the ingredient
+     * @return Amount in stock, null if the ingredient isn't in the Inventory
+     */
+    @Query ( value = "SELECT amount FROM inventory_ingredient "
+            + "WHERE inventory_id = :inventoryId AND ingredient = :ingredient", nativeQuery = true )
+    Integer findAmount ( @Param ( "inventoryId" ) Long inventoryId, @Param ( "ingredient" ) String ingredient );
+
+    /**
+     * Removes the ingredient amounts of every Inventory in one statement, so
+     * that the inventories themselves can then be removed in one more. The
+     * persistence context is flushed first and cleared after.
+     *
+     * @return number of rows removed
+     */
+    @Modifying ( flushAutomatically = true, clearAutomatically = true )
+    @Query ( value = "DELETE FROM inventory_ingredient", nativeQuery = true )
+    int deleteAllIngredients ();
 
 }
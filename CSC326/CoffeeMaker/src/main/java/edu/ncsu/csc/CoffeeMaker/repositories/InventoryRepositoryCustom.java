@@ -0,0 +1,34 @@
+package edu.ncsu.csc.CoffeeMaker.repositories;
+
+import edu.ncsu.csc.CoffeeMaker.models.RecipePlan;
+
+/**
+ * Operations on the Inventory that Spring can't generate from a method name.
+ * These are implemented in InventoryRepositoryImpl and made available through
+ * InventoryRepository.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+public interface InventoryRepositoryCustom {
+
+    /**
+     * Subtracts the ingredients of a RecipePlan from the Inventory, all or
+     * nothing, in one UPDATE statement. The Inventory is joined to a row of
+     * each ingredient, and the statement only matches if every one of them
+     * has at least the amount being subtracted; then they are all updated
+     * along with the Inventory's version. Otherwise nothing is changed, so a
+     * shortfall never leaves the caller's transaction with part of a recipe
+     * taken out. An ingredient missing from the Inventory counts as a
+     * shortfall. MySQL joins at most 61 tables in one statement, so a plan can
+     * have up to 60 ingredients.
+     *
+     * @param inventoryId
+     *            ID of the Inventory to update
+     * @param plan
+     *            plan of the recipe whose ingredients to use
+     * @return true if every ingredient was used, false if nothing was
+     */
+    boolean useIngredients ( Long inventoryId, RecipePlan plan );
+
+}
@@ -0,0 +1,84 @@
+package edu.ncsu.csc.CoffeeMaker.repositories;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+
+import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.models.RecipePlan;
+
+/**
+ * Implementation of the custom InventoryRepository operations. Spring finds
+ * this class by name and combines it with the generated repository.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+public class InventoryRepositoryImpl implements InventoryRepositoryCustom {
+
+    /** EntityManager used to run the native queries */
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public boolean useIngredients ( final Long inventoryId, final RecipePlan plan ) {
+        if ( 0 == plan.size() ) {
+            return true;
+        }
+
+        // UPDATE inventory i JOIN inventory_ingredient i0 ON ... AND
+        // i0.ingredient = :name0 ... SET i0.amount = i0.amount - :amount0, ...,
+        // i.version = i.version + 1 WHERE i.id = :inventoryId AND i0.amount >=
+        // :amount0 ...
+        final StringBuilder update = new StringBuilder( "UPDATE inventory i" );
+        final StringBuilder set = new StringBuilder( " SET i.version = i.version + 1" );
+        final StringBuilder where = new StringBuilder( " WHERE i.id = :inventoryId" );
+        for ( int n = 0; n < plan.size(); n++ ) {
+            final String row = "i" + n;
+            update.append( " JOIN inventory_ingredient " ).append( row ).append( " ON " ).append( row )
+                    .append( ".inventory_id = i.id AND " ).append( row ).append( ".ingredient = :name" ).append( n );
+            set.append( ", " ).append( row ).append( ".amount = " ).append( row ).append( ".amount - :amount" )
+                    .append( n );
+            where.append( " AND " ).append( row ).append( ".amount >= :amount" ).append( n );
+        }
+        update.append( set ).append( where );
+
+        // Make sure pending changes are written before we go around Hibernate
+        entityManager.flush();
+
+        // The Inventory and every ingredient are one joined row, so either it
+        // matches and they are all updated, or it doesn't and none are
+        final int updated = bind( entityManager.createNativeQuery( update.toString() ), inventoryId, plan )
+                .executeUpdate();
+
+        // If this transaction already has the Inventory loaded, it is now
+        // stale; detaching it makes a save of it fail on its version, and the
+        // next read load it again
+        final Inventory loaded = entityManager.getReference( Inventory.class, inventoryId );
+        if ( entityManager.getEntityManagerFactory().getPersistenceUnitUtil().isLoaded( loaded ) ) {
+            entityManager.detach( loaded );
+        }
+        return updated > 0;
+    }
+
+    /**
+     * Sets the parameters of a query built by `useIngredients`
+     *
+     * @param query
+     *            the query
+     * @param inventoryId
+     *            ID of the Inventory to update
+     * @param plan
+     *            plan of the recipe whose ingredients to use
+     * @return the query
+     */
+    private static Query bind ( final Query query, final Long inventoryId, final RecipePlan plan ) {
+        query.setParameter( "inventoryId", inventoryId );
+        for ( int i = 0; i < plan.size(); i++ ) {
+            query.setParameter( "name" + i, plan.getName( i ) );
+            query.setParameter( "amount" + i, plan.getAmount( i ) );
+        }
+        return query;
+    }
+
+}
@@ -1,6 +1,15 @@
 package edu.ncsu.csc.CoffeeMaker.repositories;
 
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.QueryHint;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
 import edu.ncsu.csc.CoffeeMaker.models.Recipe;
 
@@ -14,13 +23,80 @@ import edu.ncsu.csc.CoffeeMaker.models.Recipe;
 public interface RecipeRepository extends JpaRepository<Recipe, Long> {
 
     /**
-     * Finds a Recipe object with the provided name. Spring will generate code
-     * to make this happen.
-     * 
+     * Finds a Recipe object with the provided name, along with its
+     * ingredients, in one query.
+     *
      * @param name
      *            Name of the recipe
      * @return Found recipe, null if none.
      */
-    Recipe findByName ( String name );
+    @Query ( "select distinct r from Recipe r left join fetch r.ingredients where r.name = :name" )
+    @QueryHints ( @QueryHint ( name = "hibernate.query.passDistinctThrough", value = "false" ) )
+    Recipe findByName ( @Param ( "name" ) String name );
+
+    /**
+     * Finds all of the Recipes with any of the provided names, along with
+     * their ingredients, in one query.
+     *
+     * @param names
+     *            Names of the recipes
+     * @return Found recipes, empty if none.
+     */
+    @Query ( "select distinct r from Recipe r left join fetch r.ingredients where r.name in :names" )
+    @QueryHints ( @QueryHint ( name = "hibernate.query.passDistinctThrough", value = "false" ) )
+    List<Recipe> findByNameIn ( @Param ( "names" ) Collection<String> names );
+
+    /**
+     * Finds every Recipe along with its ingredients in one query, rather than
+     * one query for the recipes and another for each recipe's ingredients.
+     *
+     * @return All recipes.
+     */
+    @Query ( "select distinct r from Recipe r left join fetch r.ingredients" )
+    @QueryHints ( @QueryHint ( name = "hibernate.query.passDistinctThrough", value = "false" ) )
+    List<Recipe> findAllWithIngredients ();
+
+    /**
+     * Finds which of the provided names are already used by a Recipe, without
+     * loading the recipes.
+     *
+     * @param names
+     *            Names to look for
+     * @return The names that are taken, empty if none.
+     */
+    @Query ( "select r.name from Recipe r where r.name in :names" )
+    List<String> findNamesIn ( @Param ( "names" ) Collection<String> names );
+
+    /**
+     * Finds the IDs of every Ingredient that belongs to a Recipe, without
+     * loading the recipes or the ingredients.
+     *
+     * @return IDs of the recipes' ingredients
+     */
+    @Query ( "select i.id from Recipe r join r.ingredients i" )
+    List<Long> findIngredientIds ();
+
+    /**
+     * Removes every row linking a Recipe to its ingredients in one statement.
+     * The persistence context is flushed first and cleared after, since
+     * anything loaded in it is out of date afterwards.
+     *
+     * @return number of rows removed
+     */
+    @Modifying ( flushAutomatically = true, clearAutomatically = true )
+    @Query ( value = "DELETE FROM recipe_ingredients", nativeQuery = true )
+    int deleteIngredientLinks ();
+
+    /**
+     * Removes the Ingredients with the provided IDs in one statement. Used
+     * for ingredients that belonged to recipes, once nothing links to them.
+     *
+     * @param ids
+     *            IDs of the ingredients
+     * @return number of ingredients removed
+     */
+    @Modifying ( flushAutomatically = true, clearAutomatically = true )
+    @Query ( "delete from Ingredient i where i.id in :ids" )
+    int deleteIngredientsByIdIn ( @Param ( "ids" ) Collection<Long> ids );
 
 }
@@ -0,0 +1,552 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.ncsu.csc.CoffeeMaker.models.DomainObject;
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+
+/**
+ * Imports ingredients and recipes in bulk from a stream with one definition
+ * per line, either as NDJSON:
+ *
+ * <pre>
+ * {"type": "ingredient", "name": "Coffee", "amount": 5}
+ * {"type": "recipe", "name": "Latte", "price": 3, "ingredients": [{"name": "Coffee", "amount": 1}]}
+ * </pre>
+ *
+ * or as CSV, where a recipe's ingredients are `name:amount` pairs separated by
+ * semicolons and a first line starting with `type` is taken as a header:
+ *
+ * <pre>
+ * ingredient,Coffee,5
+ * recipe,Latte,3,Coffee:1;Milk:2
+ * </pre>
+ *
+ * The stream is read a line at a time, and definitions are written through
+ * the IngredientService and RecipeService with `saveAll` once
+ * `coffeemaker.import.batch-size` of them have been read, so at most one batch
+ * of definitions is held at a time. The names read so far are kept for the
+ * whole import, to turn down duplicates, so they grow with the number of
+ * definitions. A line that can't be imported, such as one whose name is
+ * already taken or a recipe that lists an ingredient twice, is recorded in the
+ * ImportReport, which keeps the first `ImportReport.MAX_ERRORS` and counts the
+ * rest, and the import carries on. Recipes are still held to the size of the
+ * recipe book.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+@Component
+public class CatalogImport {
+
+    /** Most recipes the recipe book holds, as for `POST /recipes` */
+    private static final int  MAX_RECIPES = 3;
+
+    /** Definitions of each kind read before they are written */
+    @Value ( "${coffeemaker.import.batch-size:500}" )
+    private int               batchSize;
+
+    /** Used to write the ingredients */
+    @Autowired
+    private IngredientService ingredientService;
+
+    /** Used to write the recipes */
+    @Autowired
+    private RecipeService     recipeService;
+
+    /** Used to parse NDJSON lines */
+    @Autowired
+    private ObjectMapper      mapper;
+
+    /**
+     * Formats an import can be read from
+     */
+    public enum Format {
+        /** One JSON object per line */
+        NDJSON,
+        /** Comma separated values */
+        CSV
+    }
+
+    /**
+     * Reads and imports every definition in a stream
+     *
+     * @param in
+     *            the stream, UTF-8; not closed
+     * @param format
+     *            format of the stream
+     * @return what was imported, and what was not
+     * @throws IOException
+     *             if the stream can't be read
+     */
+    public ImportReport run ( final InputStream in, final Format format ) throws IOException {
+        final Run run = new Run();
+        final BufferedReader reader = new BufferedReader( new InputStreamReader( in, StandardCharsets.UTF_8 ) );
+        String line;
+        int number = 0;
+        while ( null != ( line = reader.readLine() ) ) {
+            number++;
+            if ( line.isBlank() ) {
+                continue;
+            }
+            try {
+                if ( Format.CSV == format ) {
+                    run.csv( number, line );
+                }
+                else {
+                    run.ndjson( number, line );
+                }
+            }
+            catch ( final IllegalArgumentException e ) {
+                run.report.addError( number, e.getMessage() );
+            }
+        }
+        run.flushIngredients();
+        run.flushRecipes();
+        run.report.sortErrors();
+        return run.report;
+    }
+
+    /**
+     * Splits a CSV line into its fields. Fields may be quoted with double
+     * quotes, and a doubled double quote inside a quoted field stands for one.
+     *
+     * @param line
+     *            the line
+     * @return its fields, trimmed
+     */
+    static List<String> splitCsv ( final String line ) {
+        final List<String> fields = new ArrayList<String>();
+        final StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for ( int i = 0; i < line.length(); i++ ) {
+            final char c = line.charAt( i );
+            if ( quoted ) {
+                if ( '"' != c ) {
+                    field.append( c );
+                }
+                else if ( i + 1 < line.length() && '"' == line.charAt( i + 1 ) ) {
+                    field.append( '"' );
+                    i++;
+                }
+                else {
+                    quoted = false;
+                }
+            }
+            else if ( '"' == c ) {
+                quoted = true;
+            }
+            else if ( ',' == c ) {
+                fields.add( field.toString().trim() );
+                field.setLength( 0 );
+            }
+            else {
+                field.append( c );
+            }
+        }
+        if ( quoted ) {
+            throw new IllegalArgumentException( "Unterminated quote" );
+        }
+        fields.add( field.toString().trim() );
+        return fields;
+    }
+
+    /**
+     * Parses a whole number that can't be negative
+     *
+     * @param what
+     *            what the number is, for the error message
+     * @param text
+     *            the number
+     * @return the number
+     */
+    private static int amount ( final String what, final String text ) {
+        final int value;
+        try {
+            value = Integer.parseInt( text.trim() );
+        }
+        catch ( final NumberFormatException e ) {
+            throw new IllegalArgumentException( "Invalid " + what + ": " + text );
+        }
+        if ( value < 0 ) {
+            throw new IllegalArgumentException( "Invalid " + what + ": " + text );
+        }
+        return value;
+    }
+
+    /**
+     * Reads a whole number that can't be negative out of a JSON object
+     *
+     * @param node
+     *            the object
+     * @param field
+     *            name of the field
+     * @return the number
+     */
+    private static int amount ( final JsonNode node, final String field ) {
+        final JsonNode value = node.get( field );
+        if ( null == value || !value.canConvertToInt() || !value.isIntegralNumber() || value.intValue() < 0 ) {
+            throw new IllegalArgumentException( "Invalid " + field + ": " + value );
+        }
+        return value.intValue();
+    }
+
+    /**
+     * A definition read from a line that has not been written yet. The entity
+     * is built when it is written, so that a fresh one can be built if a batch
+     * has to be written again a row at a time.
+     *
+     * @param <T>
+     *            type of entity defined
+     */
+    private static final class Row<T extends DomainObject> {
+
+        /** Line number it was read from */
+        private final int         line;
+
+        /** Name it defines */
+        private final String      name;
+
+        /** Builds the entity */
+        private final Supplier<T> build;
+
+        /**
+         * Creates a Row
+         *
+         * @param line
+         *            line number it was read from
+         * @param name
+         *            name it defines
+         * @param build
+         *            builds the entity
+         */
+        private Row ( final int line, final String name, final Supplier<T> build ) {
+            this.line = line;
+            this.name = name;
+            this.build = build;
+        }
+    }
+
+    /**
+     * The state of one import
+     */
+    private final class Run {
+
+        /** What has been imported so far */
+        private final ImportReport          report         = new ImportReport();
+
+        /** Names of ingredients read so far, for the whole import */
+        private final Set<String>           ingredients    = new HashSet<String>();
+
+        /** Names of recipes read so far, for the whole import */
+        private final Set<String>           recipes        = new HashSet<String>();
+
+        /** Ingredients read but not written */
+        private final List<Row<Ingredient>> ingredientRows = new ArrayList<Row<Ingredient>>();
+
+        /** Recipes read but not written */
+        private final List<Row<Recipe>>     recipeRows     = new ArrayList<Row<Recipe>>();
+
+        /** Room left in the recipe book, null until the first recipe */
+        private Long                        recipeSpace;
+
+        /** Whether a CSV line has been read yet */
+        private boolean                     started;
+
+        /**
+         * Reads one CSV line
+         *
+         * @param line
+         *            line number
+         * @param text
+         *            the line
+         */
+        private void csv ( final int line, final String text ) {
+            final List<String> fields = splitCsv( text );
+            final boolean first = !started;
+            started = true;
+            if ( first && "type".equalsIgnoreCase( fields.get( 0 ) ) ) {
+                return;
+            }
+            if ( "ingredient".equalsIgnoreCase( fields.get( 0 ) ) ) {
+                if ( fields.size() != 3 ) {
+                    throw new IllegalArgumentException( "Expected ingredient,name,amount" );
+                }
+                ingredient( line, fields.get( 1 ), amount( "amount", fields.get( 2 ) ) );
+            }
+            else if ( "recipe".equalsIgnoreCase( fields.get( 0 ) ) ) {
+                if ( fields.size() != 4 ) {
+                    throw new IllegalArgumentException( "Expected recipe,name,price,ingredient:amount;..." );
+                }
+                final Map<String, Integer> uses = new LinkedHashMap<String, Integer>();
+                for ( final String use : fields.get( 3 ).split( ";" ) ) {
+                    if ( use.isBlank() ) {
+                        continue;
+                    }
+                    final int colon = use.lastIndexOf( ':' );
+                    if ( colon < 0 ) {
+                        throw new IllegalArgumentException( "Expected ingredient:amount, got " + use.trim() );
+                    }
+                    use( uses, use.substring( 0, colon ).trim(), amount( "amount", use.substring( colon + 1 ) ) );
+                }
+                recipe( line, fields.get( 1 ), amount( "price", fields.get( 2 ) ), uses );
+            }
+            else {
+                throw new IllegalArgumentException( "Unknown type " + fields.get( 0 ) );
+            }
+        }
+
+        /**
+         * Reads one NDJSON line
+         *
+         * @param line
+         *            line number
+         * @param text
+         *            the line
+         */
+        private void ndjson ( final int line, final String text ) {
+            final JsonNode node;
+            try {
+                node = mapper.readTree( text );
+            }
+            catch ( final JsonProcessingException e ) {
+                throw new IllegalArgumentException( "Not valid JSON: " + e.getOriginalMessage() );
+            }
+            if ( !node.isObject() ) {
+                throw new IllegalArgumentException( "Expected a JSON object" );
+            }
+            final String type = node.path( "type" ).asText();
+            final String name = node.path( "name" ).asText( null );
+            if ( "ingredient".equalsIgnoreCase( type ) ) {
+                ingredient( line, name, amount( node, "amount" ) );
+            }
+            else if ( "recipe".equalsIgnoreCase( type ) ) {
+                final Map<String, Integer> uses = new LinkedHashMap<String, Integer>();
+                final Iterator<JsonNode> elements = node.path( "ingredients" ).elements();
+                while ( elements.hasNext() ) {
+                    final JsonNode use = elements.next();
+                    use( uses, use.path( "name" ).asText( null ), amount( use, "amount" ) );
+                }
+                recipe( line, name, amount( node, "price" ), uses );
+            }
+            else {
+                throw new IllegalArgumentException( "Unknown type " + type );
+            }
+        }
+
+        /**
+         * Adds an ingredient to those a recipe uses, turning the line down if
+         * the recipe already uses it
+         *
+         * @param uses
+         *            amount of each ingredient the recipe uses so far
+         * @param ingredient
+         *            name of the ingredient
+         * @param amount
+         *            amount of it the recipe uses
+         */
+        private void use ( final Map<String, Integer> uses, final String ingredient, final int amount ) {
+            checkName( ingredient );
+            if ( null != uses.putIfAbsent( ingredient, amount ) ) {
+                throw new IllegalArgumentException( "Duplicate ingredient " + ingredient + " in recipe" );
+            }
+        }
+
+        /**
+         * Queues an ingredient to be written
+         *
+         * @param line
+         *            line number
+         * @param name
+         *            its name
+         * @param amount
+         *            its amount
+         */
+        private void ingredient ( final int line, final String name, final int amount ) {
+            checkName( name );
+            if ( !ingredients.add( name ) ) {
+                throw new IllegalArgumentException( "Duplicate ingredient " + name );
+            }
+            ingredientRows.add( new Row<Ingredient>( line, name, () -> new Ingredient( name, amount ) ) );
+            if ( ingredientRows.size() >= batchSize ) {
+                flushIngredients();
+            }
+        }
+
+        /**
+         * Queues a recipe to be written
+         *
+         * @param line
+         *            line number
+         * @param name
+         *            its name
+         * @param price
+         *            its price
+         * @param uses
+         *            amount of each ingredient it uses, each named once
+         */
+        private void recipe ( final int line, final String name, final int price, final Map<String, Integer> uses ) {
+            checkName( name );
+            if ( !recipes.add( name ) ) {
+                throw new IllegalArgumentException( "Duplicate recipe " + name );
+            }
+            recipeRows.add( new Row<Recipe>( line, name, () -> {
+                final Recipe recipe = new Recipe();
+                recipe.setName( name );
+                recipe.setPrice( price );
+                uses.forEach( ( ingredient, amount ) -> recipe.addIngredient( new Ingredient( ingredient, amount ) ) );
+                return recipe;
+            } ) );
+            if ( recipeRows.size() >= batchSize ) {
+                flushRecipes();
+            }
+        }
+
+        /**
+         * Writes the queued ingredients
+         */
+        private void flushIngredients () {
+            report.addIngredients( write( ingredientRows, ingredientService, ingredientService::findExistingNames,
+                    "Ingredient" ) );
+        }
+
+        /**
+         * Writes the queued recipes, as far as there is room for them
+         */
+        private void flushRecipes () {
+            if ( recipeRows.isEmpty() ) {
+                return;
+            }
+            if ( null == recipeSpace ) {
+                recipeSpace = MAX_RECIPES - recipeService.count();
+            }
+            final Set<String> taken = recipeService.findExistingNames( names( recipeRows ) );
+            for ( final Iterator<Row<Recipe>> rows = recipeRows.iterator(); rows.hasNext(); ) {
+                final Row<Recipe> row = rows.next();
+                if ( taken.contains( row.name ) ) {
+                    continue;
+                }
+                if ( recipeSpace <= 0 ) {
+                    report.addError( row.line, "Insufficient space in recipe book for recipe " + row.name );
+                    rows.remove();
+                }
+                else {
+                    recipeSpace--;
+                }
+            }
+            report.addRecipes( write( recipeRows, recipeService, names -> taken, "Recipe" ) );
+        }
+
+        /**
+         * Writes queued rows in one `saveAll`, leaving out those whose names
+         * are taken. If the batch can't be written, the rows are written one
+         * at a time instead so that only the bad ones are turned down.
+         *
+         * @param <T>
+         *            type of entity
+         * @param rows
+         *            the rows; emptied
+         * @param service
+         *            service to write through
+         * @param existing
+         *            finds which names are already taken
+         * @param kind
+         *            what the rows are, for error messages
+         * @return number of entities written
+         */
+        private <T extends DomainObject> int write ( final List<Row<T>> rows, final Service<T, Long> service,
+                final Function<Collection<String>, Set<String>> existing, final String kind ) {
+            if ( rows.isEmpty() ) {
+                return 0;
+            }
+            final Set<String> taken = existing.apply( names( rows ) );
+            final List<Row<T>> fresh = new ArrayList<Row<T>>( rows.size() );
+            for ( final Row<T> row : rows ) {
+                if ( taken.contains( row.name ) ) {
+                    report.addError( row.line, kind + " with the name " + row.name + " already exists" );
+                }
+                else {
+                    fresh.add( row );
+                }
+            }
+            rows.clear();
+            if ( fresh.isEmpty() ) {
+                return 0;
+            }
+
+            final List<T> entities = new ArrayList<T>( fresh.size() );
+            for ( final Row<T> row : fresh ) {
+                entities.add( row.build.get() );
+            }
+            try {
+                service.saveAll( entities );
+                return entities.size();
+            }
+            catch ( final RuntimeException e ) {
+                // Find out which rows were to blame
+                int written = 0;
+                for ( final Row<T> row : fresh ) {
+                    try {
+                        service.save( row.build.get() );
+                        written++;
+                    }
+                    catch ( final RuntimeException rowFailure ) {
+                        report.addError( row.line, kind + " " + row.name + " could not be saved" );
+                    }
+                }
+                return written;
+            }
+        }
+
+        /**
+         * Gets the names of some rows
+         *
+         * @param rows
+         *            the rows
+         * @return their names
+         */
+        private List<String> names ( final List<? extends Row<?>> rows ) {
+            final List<String> names = new ArrayList<String>( rows.size() );
+            for ( final Row<?> row : rows ) {
+                names.add( row.name );
+            }
+            return names;
+        }
+
+        /**
+         * Checks that a name was given
+         *
+         * @param name
+         *            the name
+         */
+        private void checkName ( final String name ) {
+            if ( null == name || name.isBlank() ) {
+                throw new IllegalArgumentException( "Missing name" );
+            }
+        }
+    }
+
+}
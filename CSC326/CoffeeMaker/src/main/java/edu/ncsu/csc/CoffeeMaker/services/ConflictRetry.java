@@ -0,0 +1,116 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Runs a unit of work that may lose an optimistic locking race (or a database
+ * deadlock) against another request, retrying it a bounded number of times
+ * with jittered exponential backoff. The work must start its own transaction
+ * each time it is run, which is the case for calls into a `@Transactional`
+ * Service from a controller; if a transaction is already active the work is
+ * only run once, since it could not succeed in a transaction that has already
+ * failed.
+ *
+ * The number of retries and of requests given up on are kept so that they can
+ * be reported.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+@Component
+public class ConflictRetry {
+
+    /** Most times the work is run before giving up */
+    @Value ( "${coffeemaker.retry.max-attempts:5}" )
+    private int              maxAttempts;
+
+    /** Backoff before the first retry, in milliseconds */
+    @Value ( "${coffeemaker.retry.base-delay-ms:5}" )
+    private long             baseDelay;
+
+    /** Longest backoff before any retry, in milliseconds */
+    @Value ( "${coffeemaker.retry.max-delay-ms:100}" )
+    private long             maxDelay;
+
+    /** Number of times work has been retried */
+    private final AtomicLong retries = new AtomicLong();
+
+    /** Number of times work has been given up on */
+    private final AtomicLong giveUps = new AtomicLong();
+
+    /**
+     * Runs the work, retrying it if it fails with a ConcurrencyFailureException
+     *
+     * @param <T>
+     *            type of the work's result
+     * @param work
+     *            the work to run
+     * @return the result of the first attempt that succeeded
+     * @throws ConcurrencyFailureException
+     *             if every attempt conflicted
+     */
+    public <T> T run ( final Supplier<T> work ) {
+        final boolean canRetry = !TransactionSynchronizationManager.isActualTransactionActive();
+        for ( int attempt = 1;; attempt++ ) {
+            try {
+                return work.get();
+            }
+            catch ( final ConcurrencyFailureException e ) {
+                if ( !canRetry || attempt >= maxAttempts ) {
+                    giveUps.incrementAndGet();
+                    throw e;
+                }
+                retries.incrementAndGet();
+                backOff( attempt, e );
+            }
+        }
+    }
+
+    /**
+     * Gets the number of times work has been retried
+     *
+     * @return number of retries
+     */
+    public long getRetries () {
+        return retries.get();
+    }
+
+    /**
+     * Gets the number of times work was given up on after conflicting on every
+     * attempt
+     *
+     * @return number of give-ups
+     */
+    public long getGiveUps () {
+        return giveUps.get();
+    }
+
+    /**
+     * Sleeps for a random time up to the backoff for the attempt that just
+     * failed, so that the requests that conflicted don't all retry at once
+     *
+     * @param attempt
+     *            number of the attempt that failed, starting at 1
+     * @param conflict
+     *            the conflict, rethrown if the thread is interrupted
+     */
+    private void backOff ( final int attempt, final ConcurrencyFailureException conflict ) {
+        final long ceiling = Math.min( maxDelay, baseDelay << Math.min( attempt - 1, 20 ) );
+        try {
+            Thread.sleep( ThreadLocalRandom.current().nextLong( ceiling + 1 ) );
+        }
+        catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            giveUps.incrementAndGet();
+            throw conflict;
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The outcome of a CatalogImport: how many ingredients and recipes were
+ * created, how many lines weren't imported, and why each of the first
+ * `MAX_ERRORS` of them was turned down.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+public class ImportReport {
+
+    /** Most lines that were not imported whose errors are kept */
+    public static final int       MAX_ERRORS = 100;
+
+    /** Ingredients created */
+    private int                   ingredients;
+
+    /** Recipes created */
+    private int                   recipes;
+
+    /** Lines that were not imported, counting those not kept */
+    private int                   errorCount;
+
+    /** Lines that were not imported, the first `MAX_ERRORS` found */
+    private final List<LineError> errors     = new ArrayList<LineError>();
+
+    /**
+     * Gets the number of ingredients created
+     *
+     * @return ingredients created
+     */
+    public int getIngredients () {
+        return ingredients;
+    }
+
+    /**
+     * Gets the number of recipes created
+     *
+     * @return recipes created
+     */
+    public int getRecipes () {
+        return recipes;
+    }
+
+    /**
+     * Gets the number of lines that were not imported, including those whose
+     * errors weren't kept
+     *
+     * @return lines not imported
+     */
+    public int getErrorCount () {
+        return errorCount;
+    }
+
+    /**
+     * Gets the first `MAX_ERRORS` lines found that were not imported
+     *
+     * @return errors, in order of line
+     */
+    public List<LineError> getErrors () {
+        return errors;
+    }
+
+    /**
+     * Counts ingredients as created
+     *
+     * @param count
+     *            number created
+     */
+    void addIngredients ( final int count ) {
+        ingredients += count;
+    }
+
+    /**
+     * Counts recipes as created
+     *
+     * @param count
+     *            number created
+     */
+    void addRecipes ( final int count ) {
+        recipes += count;
+    }
+
+    /**
+     * Records a line that was not imported. Only the first `MAX_ERRORS` are
+     * kept; the rest are only counted.
+     *
+     * @param line
+     *            line number, starting at 1
+     * @param message
+     *            why it was not imported
+     */
+    void addError ( final int line, final String message ) {
+        errorCount++;
+        if ( errors.size() < MAX_ERRORS ) {
+            errors.add( new LineError( line, message ) );
+        }
+    }
+
+    /**
+     * Sorts the errors by line, since lines can be turned down out of order
+     * when a batch is written
+     */
+    void sortErrors () {
+        errors.sort( ( a, b ) -> Integer.compare( a.line, b.line ) );
+    }
+
+    /**
+     * One line that was not imported
+     */
+    public static final class LineError {
+
+        /** Line number, starting at 1 */
+        private final int    line;
+
+        /** Why it was not imported */
+        private final String message;
+
+        /**
+         * Creates a LineError
+         *
+         * @param line
+         *            line number, starting at 1
+         * @param message
+         *            why it was not imported
+         */
+        private LineError ( final int line, final String message ) {
+            this.line = line;
+            this.message = message;
+        }
+
+        /**
+         * Gets the line number
+         *
+         * @return line number, starting at 1
+         */
+        public int getLine () {
+            return line;
+        }
+
+        /**
+         * Gets why the line was not imported
+         *
+         * @return the message
+         */
+        public String getMessage () {
+            return message;
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Gives every ingredient name a small integer slot, so that amounts can be
+ * kept in plain arrays indexed by slot instead of maps keyed by name. Slots are
+ * handed out the first time a name is seen and never change or get reused for
+ * the life of the application context, so an array built against the catalog
+ * stays valid as new ingredients are added (it is just shorter than the
+ * catalog).
+ *
+ * There is one catalog per application context, shared by the RecipePlans,
+ * the InventoryCounters and the RecipeAvailability, so separate contexts in
+ * the same JVM (as in the tests) each start from slot 0. The catalog grows by
+ * one slot for each distinct ingredient name used in a recipe or the
+ * Inventory, and is kept small by only being asked about those names.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+@Component
+public class IngredientCatalog {
+
+    /** Slot assigned to each ingredient name */
+    private final ConcurrentHashMap<String, Integer> slots = new ConcurrentHashMap<String, Integer>();
+
+    /** Next slot to hand out */
+    private final AtomicInteger                      next  = new AtomicInteger();
+
+    /**
+     * Gets the slot of an ingredient, assigning one if the name hasn't been
+     * seen before
+     *
+     * @param name
+     *            name of the ingredient
+     * @return the ingredient's slot
+     */
+    public int slotOf ( final String name ) {
+        return slots.computeIfAbsent( name, n -> next.getAndIncrement() );
+    }
+
+    /**
+     * Gets the number of slots handed out so far. Every slot is less than
+     * this.
+     *
+     * @return number of slots
+     */
+    public int size () {
+        return next.get();
+    }
+
+}
@@ -1,13 +1,19 @@
 package edu.ncsu.csc.CoffeeMaker.services;
 
-import javax.transaction.Transactional;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
 import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
 import edu.ncsu.csc.CoffeeMaker.repositories.IngredientRepository;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions.Resource;
 
 /**
  * The IngredientService is used to handle CRUD operations on the Ingredient
@@ -29,11 +35,94 @@ public class IngredientService extends Service<Ingredient, Long> {
     @Autowired
     private IngredientRepository ingredientRepository;
 
+    /**
+     * Compiled plans of the recipes, which are built from their ingredients
+     */
+    @Autowired
+    private RecipePlans          plans;
+
+    /**
+     * Versions of the API's resources, bumped when ingredients change
+     */
+    @Autowired
+    private ResourceVersions     versions;
+
+    /**
+     * Statements sent in one JDBC batch by `saveAll`
+     */
+    @Value ( "${coffeemaker.batch-size.ingredient:${coffeemaker.batch-size.default:50}}" )
+    private int                  batchSize;
+
     @Override
     protected JpaRepository<Ingredient, Long> getRepository () {
         return ingredientRepository;
     }
 
+    /**
+     * Ingredients can also be paged through by name, which is always set
+     *
+     * @return id and name
+     */
+    @Override
+    protected Set<String> getSortProperties () {
+        return Set.of( "id", "name" );
+    }
+
+    @Override
+    protected int getBatchSize () {
+        return batchSize;
+    }
+
+    /**
+     * Saves the Ingredient. A recipe's ingredient may have changed, so the
+     * compiled recipe plans are discarded.
+     *
+     * @param obj
+     *            The Ingredient to save into the database.
+     */
+    @Override
+    public void save ( final Ingredient obj ) {
+        super.save( obj );
+        plans.invalidateAll();
+        versions.bump( Resource.INGREDIENTS, Resource.RECIPES );
+    }
+
+    /**
+     * Saves the Ingredients and discards the compiled recipe plans
+     *
+     * @param objects
+     *            The Ingredients to save into the database.
+     */
+    @Override
+    public void saveAll ( final List<Ingredient> objects ) {
+        super.saveAll( objects );
+        plans.invalidateAll();
+        versions.bump( Resource.INGREDIENTS, Resource.RECIPES );
+    }
+
+    /**
+     * Deletes the Ingredient and discards the compiled recipe plans
+     *
+     * @param obj
+     *            The Ingredient to delete from the database.
+     */
+    @Override
+    public void delete ( final Ingredient obj ) {
+        super.delete( obj );
+        plans.invalidateAll();
+        versions.bump( Resource.INGREDIENTS, Resource.RECIPES );
+    }
+
+    /**
+     * Deletes all Ingredients and discards the compiled recipe plans
+     */
+    @Override
+    public void deleteAll () {
+        super.deleteAll();
+        plans.invalidateAll();
+        versions.bump( Resource.INGREDIENTS, Resource.RECIPES );
+    }
+
     /**
      * Find a ingredient with the provided name
      *
@@ -41,8 +130,24 @@ public class IngredientService extends Service<Ingredient, Long> {
      *            Name of the ingredient to find
      * @return found ingredient, null if none
      */
+    @Transactional ( readOnly = true )
     public Ingredient findByName ( final String name ) {
         return ingredientRepository.findByName( name );
     }
 
+    /**
+     * Finds which of the provided names are already used by an Ingredient
+     *
+     * @param names
+     *            names to look for
+     * @return the names that are taken
+     */
+    @Transactional ( readOnly = true )
+    public Set<String> findExistingNames ( final Collection<String> names ) {
+        if ( names.isEmpty() ) {
+            return new HashSet<String>();
+        }
+        return new HashSet<String>( ingredientRepository.findNamesIn( names ) );
+    }
+
 }
@@ -0,0 +1,321 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.models.RecipePlan;
+
+/**
+ * In-memory copy of the Inventory used on the make-coffee path. Each
+ * ingredient's quantity lives in its IngredientCatalog slot of an
+ * AtomicIntegerArray, and a RecipePlan is reserved by taking its amounts out of
+ * those slots with compare-and-set. No lock is held while reserving, and a
+ * slot can never drop below zero, so concurrent purchases cannot oversell.
+ *
+ * The counters are (re)loaded from the persisted Inventory by the
+ * InventoryService whenever the Inventory is saved, so the database remains
+ * the source of truth across restarts. They are never written back: a
+ * reservation only decides whether a purchase goes on to the database, where
+ * its ingredients are taken with a guarded decrement, so the amounts read
+ * here never overwrite a purchase made by another thread or instance. A
+ * Listener can be set to hear about every change to them.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+@Component
+public class InventoryCounters {
+
+    /** Gives the ingredients their slots */
+    @Autowired
+    private IngredientCatalog catalog;
+
+    /** Compiled plans of the recipes being reserved */
+    @Autowired
+    private RecipePlans       plans;
+
+    /** Current slots; replaced as a whole whenever the counters are loaded */
+    private volatile Slots    slots    = null;
+
+    /** Told about every change, if set */
+    private volatile Listener listener = null;
+
+    /**
+     * Sets the Listener to tell about changes to the counters
+     *
+     * @param listener
+     *            the Listener, or null for none
+     */
+    public void setListener ( final Listener listener ) {
+        this.listener = listener;
+    }
+
+    /**
+     * Checks whether the counters have been loaded from the Inventory yet
+     *
+     * @return true if loaded, false otherwise
+     */
+    public boolean isLoaded () {
+        return slots != null;
+    }
+
+    /**
+     * Replaces the contents of the counters with the amounts provided
+     *
+     * @param ingredientMap
+     *            ingredient names and their amounts
+     */
+    public void load ( final Map<String, Integer> ingredientMap ) {
+        slots = new Slots( ingredientMap, catalog );
+        reloaded();
+    }
+
+    /**
+     * Discards the counters, forcing them to be loaded again before the next
+     * reservation
+     */
+    public void clear () {
+        slots = null;
+        reloaded();
+    }
+
+    /**
+     * Gets the amount of an ingredient currently held in the counters
+     *
+     * @param ingredient
+     *            name of the ingredient
+     * @return amount of that ingredient, -1 if the ingredient is not stocked
+     */
+    public int getAmount ( final String ingredient ) {
+        final Slots current = slots;
+        if ( null == current ) {
+            return -1;
+        }
+        final Integer slot = current.index.get( ingredient );
+        return null == slot ? -1 : current.amounts.get( slot );
+    }
+
+    /**
+     * Gets the amount held in an IngredientCatalog slot
+     *
+     * @param slot
+     *            slot of the ingredient
+     * @return amount in that slot, 0 if the ingredient is not stocked, -1 if
+     *         the counters are not loaded
+     */
+    public int getAmount ( final int slot ) {
+        final Slots current = slots;
+        if ( null == current ) {
+            return -1;
+        }
+        return slot < current.amounts.length() ? current.amounts.get( slot ) : 0;
+    }
+
+    /**
+     * Returns a copy of the amounts currently held in the counters. Each slot
+     * is read on its own, so a purchase made while the copy is taken may be
+     * in it for some ingredients and not others; the copy is only good for
+     * reporting, and must not be saved back as the Inventory.
+     *
+     * @return map of ingredient names to amounts, empty if not loaded
+     */
+    public Map<String, Integer> snapshot () {
+        final Map<String, Integer> copy = new HashMap<String, Integer>();
+        final Slots current = slots;
+        if ( null != current ) {
+            for ( final Map.Entry<String, Integer> entry : current.index.entrySet() ) {
+                copy.put( entry.getKey(), current.amounts.get( entry.getValue() ) );
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Reserves all of the ingredients of a Recipe, using its plan from
+     * RecipePlans. Either every ingredient is taken from the counters or none
+     * of them are.
+     *
+     * @param recipe
+     *            recipe to reserve the ingredients for
+     * @return the Reservation, or null if there is not enough inventory (or the
+     *         counters are not loaded)
+     */
+    public Reservation reserve ( final Recipe recipe ) {
+        return reserve( plans.get( recipe ) );
+    }
+
+    /**
+     * Reserves all of the ingredients of a compiled RecipePlan. Either every
+     * ingredient is taken from the counters or none of them are.
+     *
+     * @param plan
+     *            plan of the recipe to reserve the ingredients for
+     * @return the Reservation, or null if there is not enough inventory (or the
+     *         counters are not loaded)
+     */
+    public Reservation reserve ( final RecipePlan plan ) {
+        final Slots current = slots;
+        if ( null == current ) {
+            return null;
+        }
+        for ( int i = 0; i < plan.size(); i++ ) {
+            if ( !current.take( plan.getSlot( i ), plan.getAmount( i ) ) ) {
+                // Not enough inventory; hand back what was already taken
+                for ( int j = 0; j < i; j++ ) {
+                    current.amounts.addAndGet( plan.getSlot( j ), plan.getAmount( j ) );
+                }
+                return null;
+            }
+        }
+        changed( plan );
+        return new Reservation( current, plan );
+    }
+
+    /**
+     * Tells the Listener that the whole of the counters have changed
+     */
+    private void reloaded () {
+        final Listener current = listener;
+        if ( null != current ) {
+            current.reloaded();
+        }
+    }
+
+    /**
+     * Tells the Listener that the ingredients of a plan have changed
+     *
+     * @param plan
+     *            plan whose ingredients were taken or put back
+     */
+    private void changed ( final RecipePlan plan ) {
+        final Listener current = listener;
+        if ( null != current ) {
+            current.changed( plan );
+        }
+    }
+
+    /**
+     * Told about changes to the counters. Calls are made on the thread that
+     * made the change, after it is made, and may arrive out of order, so a
+     * Listener should read the amounts it needs back from the counters rather
+     * than keep track of the differences. Every purchase makes a call, so a
+     * Listener should only note what changed, without taking a lock.
+     */
+    public interface Listener {
+
+        /**
+         * Called after the counters were loaded or cleared
+         */
+        void reloaded ();
+
+        /**
+         * Called after the ingredients of a plan were taken out of the
+         * counters or put back
+         *
+         * @param plan
+         *            plan whose ingredients changed
+         */
+        void changed ( RecipePlan plan );
+    }
+
+    /**
+     * Ingredient name to slot index, plus the atomic amounts for each slot.
+     * The index is never modified after construction.
+     */
+    private static final class Slots {
+
+        /** Slot index of each ingredient */
+        private final Map<String, Integer> index;
+
+        /** Amount of each ingredient, by slot */
+        private final AtomicIntegerArray   amounts;
+
+        /**
+         * Builds the slots from a map of ingredient amounts
+         *
+         * @param ingredientMap
+         *            ingredient names and amounts
+         * @param catalog
+         *            gives the ingredients their slots
+         */
+        private Slots ( final Map<String, Integer> ingredientMap, final IngredientCatalog catalog ) {
+            index = new HashMap<String, Integer>();
+            for ( final String name : ingredientMap.keySet() ) {
+                index.put( name, catalog.slotOf( name ) );
+            }
+            amounts = new AtomicIntegerArray( catalog.size() );
+            for ( final Map.Entry<String, Integer> entry : ingredientMap.entrySet() ) {
+                amounts.set( index.get( entry.getKey() ), null == entry.getValue() ? 0 : entry.getValue() );
+            }
+        }
+
+        /**
+         * Takes an amount out of a slot if enough is there
+         *
+         * @param slot
+         *            slot to take from
+         * @param amount
+         *            amount to take
+         * @return true if taken, false if there was not enough
+         */
+        private boolean take ( final int slot, final int amount ) {
+            if ( slot >= amounts.length() ) {
+                // Not in the catalog when loaded, so not stocked
+                return false;
+            }
+            while ( true ) {
+                final int have = amounts.get( slot );
+                if ( have < amount ) {
+                    return false;
+                }
+                if ( amounts.compareAndSet( slot, have, have - amount ) ) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Ingredients taken out of the counters for one purchase. Cancelling the
+     * reservation puts them back.
+     */
+    public final class Reservation {
+
+        /** Slots the ingredients were taken from */
+        private final Slots      slots;
+
+        /** Plan whose ingredients were taken */
+        private final RecipePlan plan;
+
+        /**
+         * Creates a Reservation
+         *
+         * @param slots
+         *            slots the ingredients were taken from
+         * @param plan
+         *            plan whose ingredients were taken
+         */
+        private Reservation ( final Slots slots, final RecipePlan plan ) {
+            this.slots = slots;
+            this.plan = plan;
+        }
+
+        /**
+         * Returns the reserved ingredients to the counters
+         */
+        public void cancel () {
+            for ( int i = 0; i < plan.size(); i++ ) {
+                slots.amounts.addAndGet( plan.getSlot( i ), plan.getAmount( i ) );
+            }
+            if ( slots == InventoryCounters.this.slots ) {
+                changed( plan );
+            }
+        }
+    }
+
+}
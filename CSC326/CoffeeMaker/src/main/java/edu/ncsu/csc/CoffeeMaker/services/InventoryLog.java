@@ -0,0 +1,704 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.models.RecipePlan;
+import edu.ncsu.csc.CoffeeMaker.repositories.InventoryRepository;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryCounters.Reservation;
+
+/**
+ * Write-behind Inventory backed by a local write-ahead log. When
+ * `coffeemaker.wal.enabled` is set, the InventoryCounters hold the
+ * authoritative amounts: every deduction and restock is appended (and, unless
+ * `coffeemaker.wal.fsync` is turned off, forced to disk) to an append-only file
+ * before it is acknowledged, and a background checkpoint copies the amounts
+ * into the Inventory table every `coffeemaker.wal.checkpoint-ms`. The
+ * Inventory row records the sequence number of the last record it reflects, so
+ * at startup the log records after it are replayed on top of it to recover.
+ * Records already in the database are dropped from the file after each
+ * checkpoint.
+ *
+ * Records are written to the file in order under a lock, but forced to disk
+ * after it is released. Whichever caller forces first covers every record
+ * written up to then, so concurrent purchases share one fsync instead of
+ * queueing for one each.
+ *
+ * A restock replaces the amounts, so it is only accepted from an Inventory read
+ * since the last record; one read before a purchase that was logged since is
+ * turned away as an optimistic locking failure, to be read again and retried.
+ *
+ * Each record is one line: a sequence number, `D` (amounts used) or `S`
+ * (amounts set), URL-encoded `name=amount` pairs and a CRC32 of the rest of
+ * the line, so that a record torn by a crash is recognised and ignored.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+@Component
+public class InventoryLog implements ApplicationRunner {
+
+    /** Record of amounts used */
+    private static final String        DEDUCT = "D";
+
+    /** Record of amounts set */
+    private static final String        SET    = "S";
+
+    /** Logger */
+    private static final Logger        LOG    = LoggerFactory.getLogger( InventoryLog.class );
+
+    /** Whether the Inventory is kept in memory and logged */
+    @Value ( "${coffeemaker.wal.enabled:false}" )
+    private boolean                    enabled;
+
+    /** Log file */
+    @Value ( "${coffeemaker.wal.path:inventory.wal}" )
+    private String                     path;
+
+    /** Whether each record is forced to disk before it is acknowledged */
+    @Value ( "${coffeemaker.wal.fsync:true}" )
+    private boolean                    fsync;
+
+    /** Time between checkpoints, in milliseconds */
+    @Value ( "${coffeemaker.wal.checkpoint-ms:1000}" )
+    private long                       checkpointDelay;
+
+    /** Repository the checkpoints are written to */
+    @Autowired
+    private InventoryRepository        inventoryRepository;
+
+    /** In-memory amounts */
+    @Autowired
+    private InventoryCounters          counters;
+
+    /** Used to run recovery and checkpoints in their own transactions */
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Held while appending, so that records are written in sequence order and
+     * the counters always match the last record written
+     */
+    private final ReentrantLock        lock      = new ReentrantLock();
+
+    /**
+     * Held while forcing the log to disk, and while the file is replaced.
+     * Taken after `lock` when both are needed.
+     */
+    private final ReentrantLock        syncLock  = new ReentrantLock();
+
+    /** Records written since the last checkpoint, oldest first */
+    private final Deque<Record>        unflushed = new ArrayDeque<Record>();
+
+    /** Open log file */
+    private volatile FileChannel       channel;
+
+    /** Sequence number of the last record written */
+    private volatile long              sequence;
+
+    /** Sequence number of the last record known to be on disk */
+    private volatile long              durable;
+
+    /** Sequence number of the last record in the database */
+    private long                       checkpointed;
+
+    /** Set once the counters have been recovered from the log */
+    private volatile boolean           recovered;
+
+    /** Runs the checkpoints */
+    private ScheduledExecutorService   checkpointer;
+
+    /**
+     * Recovers the Inventory from the log and starts the checkpoints, if the
+     * log is enabled
+     *
+     * @param args
+     *            application arguments (unused)
+     */
+    @Override
+    public void run ( final ApplicationArguments args ) {
+        if ( !enabled ) {
+            return;
+        }
+        lock.lock();
+        try {
+            recover();
+        }
+        finally {
+            lock.unlock();
+        }
+        checkpointer = Executors.newSingleThreadScheduledExecutor( r -> {
+            final Thread thread = new Thread( r, "inventory-checkpoint" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        checkpointer.scheduleWithFixedDelay( this::checkpoint, checkpointDelay, checkpointDelay,
+                TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Stops the checkpoints, writes a last one and closes the log
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for a checkpoint to finish
+     * @throws IOException
+     *             if the log can't be closed
+     */
+    @PreDestroy
+    public void stop () throws InterruptedException, IOException {
+        if ( null != checkpointer ) {
+            checkpointer.shutdown();
+            checkpointer.awaitTermination( 10, TimeUnit.SECONDS );
+            checkpoint();
+        }
+        lock.lock();
+        try {
+            if ( null != channel ) {
+                channel.close();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether the Inventory is kept in memory and logged
+     *
+     * @return true if the log is in use
+     */
+    public boolean isEnabled () {
+        return enabled;
+    }
+
+    /**
+     * Uses the ingredients of a RecipePlan, if there are enough of them, and
+     * logs it
+     *
+     * @param plan
+     *            plan of the recipe to make
+     * @return true if there was enough inventory and it has been used, false
+     *         otherwise
+     * @throws UncheckedIOException
+     *             if the record can't be written, in which case nothing is
+     *             used, or can't be forced to disk, in which case the
+     *             ingredients stay used but the purchase must not be
+     *             acknowledged
+     */
+    public boolean purchase ( final RecipePlan plan ) {
+        final Map<String, Integer> used = new LinkedHashMap<String, Integer>();
+        for ( int i = 0; i < plan.size(); i++ ) {
+            used.put( plan.getName( i ), plan.getAmount( i ) );
+        }
+
+        final long written;
+        lock.lock();
+        try {
+            recover();
+            final Reservation reservation = counters.reserve( plan );
+            if ( null == reservation ) {
+                return false;
+            }
+            try {
+                written = append( DEDUCT, used );
+            }
+            catch ( final UncheckedIOException e ) {
+                reservation.cancel();
+                throw e;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        sync( written );
+        return true;
+    }
+
+    /**
+     * Replaces the amounts in the Inventory, and logs it. Only accepted if
+     * nothing has been logged since the amounts were read, so that a purchase
+     * made in between is never overwritten.
+     *
+     * @param amounts
+     *            the new amount of each ingredient
+     * @param readAt
+     *            sequence number of the last record reflected in the
+     *            Inventory the amounts were worked out from, or -1 to replace
+     *            whatever is there
+     * @return sequence number of the record
+     * @throws OptimisticLockingFailureException
+     *             if something was logged after `readAt`; nothing is changed
+     * @throws UncheckedIOException
+     *             if the record can't be written; nothing is changed
+     */
+    public long restock ( final Map<String, Integer> amounts, final long readAt ) {
+        final long written;
+        lock.lock();
+        try {
+            recover();
+            if ( readAt >= 0 && readAt < sequence ) {
+                throw new OptimisticLockingFailureException(
+                        "Inventory read at log record " + readAt + " but now at " + sequence );
+            }
+            written = append( SET, amounts );
+            counters.load( amounts );
+        }
+        finally {
+            lock.unlock();
+        }
+        sync( written );
+        return written;
+    }
+
+    /**
+     * Gets the current amounts, along with the sequence number of the last
+     * record they reflect
+     *
+     * @param into
+     *            map to put the amounts into
+     * @return sequence number of the last record reflected
+     */
+    public long snapshot ( final Map<String, Integer> into ) {
+        lock.lock();
+        try {
+            recover();
+            into.putAll( counters.snapshot() );
+            return sequence;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the current amount of an ingredient
+     *
+     * @param ingredient
+     *            name of the ingredient
+     * @return amount in stock, -1 if the ingredient is not in the Inventory
+     */
+    public int getAmount ( final String ingredient ) {
+        if ( !recovered ) {
+            lock.lock();
+            try {
+                recover();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        return counters.getAmount( ingredient );
+    }
+
+    /**
+     * Gets the sequence number of the last record logged, without copying the
+     * amounts as `snapshot` does
+     *
+     * @return sequence number of the last record
+     */
+    public long getSequence () {
+        if ( !recovered ) {
+            lock.lock();
+            try {
+                recover();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * Forgets everything in the log, for when the Inventory itself has been
+     * deleted. It is recovered from the database again before next use.
+     */
+    public void reset () {
+        lock.lock();
+        try {
+            unflushed.clear();
+            checkpointed = sequence;
+            rewrite();
+            counters.clear();
+            recovered = false;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copies the current amounts into the Inventory table and drops the
+     * records they reflect from the log. Failures are logged and left for the
+     * next checkpoint.
+     */
+    public void checkpoint () {
+        final Map<String, Integer> amounts = new HashMap<String, Integer>();
+        final long upTo;
+        lock.lock();
+        try {
+            if ( !recovered || sequence == checkpointed ) {
+                return;
+            }
+            amounts.putAll( counters.snapshot() );
+            upTo = sequence;
+        }
+        finally {
+            lock.unlock();
+        }
+
+        try {
+            new TransactionTemplate( transactionManager ).execute( status -> {
+                final Inventory inventory = oldestInventory();
+                if ( null == inventory || inventory.getWalSequence() >= upTo ) {
+                    return null;
+                }
+                for ( final Map.Entry<String, Integer> entry : amounts.entrySet() ) {
+                    inventory.putIngredient( entry.getKey(), entry.getValue() );
+                }
+                inventory.setWalSequence( upTo );
+                return inventoryRepository.saveAndFlush( inventory );
+            } );
+        }
+        catch ( final RuntimeException e ) {
+            LOG.warn( "Inventory checkpoint through record {} failed; will retry", upTo, e );
+            return;
+        }
+
+        lock.lock();
+        try {
+            if ( upTo > checkpointed ) {
+                checkpointed = upTo;
+                while ( !unflushed.isEmpty() && unflushed.peekFirst().sequence <= upTo ) {
+                    unflushed.removeFirst();
+                }
+                rewrite();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Loads the counters from the Inventory table and replays the log records
+     * after its checkpoint on top of it. Does nothing once recovered. Must be
+     * called with the lock held.
+     */
+    private void recover () {
+        if ( recovered ) {
+            return;
+        }
+        final Map<String, Integer> amounts = new HashMap<String, Integer>();
+        final long[] from = new long[1];
+        new TransactionTemplate( transactionManager ).execute( status -> {
+            final Inventory inventory = oldestInventory();
+            if ( null != inventory ) {
+                amounts.putAll( inventory.getIngredientMap() );
+                from[0] = inventory.getWalSequence();
+            }
+            return null;
+        } );
+
+        unflushed.clear();
+        long last = from[0];
+        for ( final String line : readLines() ) {
+            final Record record = Record.parse( line );
+            if ( null == record ) {
+                LOG.warn( "Ignoring damaged inventory log record after {}: {}", last, line );
+                break;
+            }
+            if ( record.sequence <= from[0] ) {
+                continue;
+            }
+            record.applyTo( amounts );
+            unflushed.addLast( record );
+            last = record.sequence;
+        }
+
+        counters.load( amounts );
+        checkpointed = from[0];
+        sequence = Math.max( sequence, last );
+        rewrite();
+        recovered = true;
+        LOG.info( "Recovered inventory through log record {} ({} replayed)", last, unflushed.size() );
+    }
+
+    /**
+     * Writes a record to the end of the log, without forcing it to disk. Must
+     * be called with the lock held.
+     *
+     * @param kind
+     *            DEDUCT or SET
+     * @param amounts
+     *            ingredient names and amounts
+     * @return sequence number of the record
+     */
+    private long append ( final String kind, final Map<String, Integer> amounts ) {
+        final Record record = new Record( sequence + 1, kind, amounts );
+        try {
+            final ByteBuffer bytes = ByteBuffer.wrap( record.encode().getBytes( StandardCharsets.UTF_8 ) );
+            while ( bytes.hasRemaining() ) {
+                channel.write( bytes );
+            }
+        }
+        catch ( final IOException e ) {
+            // Don't leave a partial record in front of the next one
+            rewrite();
+            throw new UncheckedIOException( "Could not write inventory log", e );
+        }
+        unflushed.addLast( record );
+        sequence = record.sequence;
+        return record.sequence;
+    }
+
+    /**
+     * Waits until a record is on disk, forcing the log if no one else has yet.
+     * Must be called without the lock held. Does nothing if fsync is off.
+     *
+     * @param upTo
+     *            sequence number of the record
+     * @throws UncheckedIOException
+     *             if the log can't be forced to disk
+     */
+    private void sync ( final long upTo ) {
+        if ( !fsync || durable >= upTo ) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if ( durable >= upTo ) {
+                // Forced by whoever held the lock before us
+                return;
+            }
+            // Every record up to here has been written to the channel
+            final long through = sequence;
+            channel.force( false );
+            durable = through;
+        }
+        catch ( final IOException e ) {
+            throw new UncheckedIOException( "Could not force inventory log to disk", e );
+        }
+        finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the log file with the records that haven't been checkpointed
+     * yet, and reopens it for appending. The new file is forced to disk, so
+     * every record written so far is then durable. Must be called with the
+     * lock held.
+     */
+    private void rewrite () {
+        final Path file = Paths.get( path );
+        final Path temp = Paths.get( path + ".tmp" );
+        syncLock.lock();
+        try {
+            if ( null != channel ) {
+                channel.close();
+            }
+            try ( FileChannel out = FileChannel.open( temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING ) ) {
+                for ( final Record record : unflushed ) {
+                    final ByteBuffer bytes = ByteBuffer.wrap( record.encode().getBytes( StandardCharsets.UTF_8 ) );
+                    while ( bytes.hasRemaining() ) {
+                        out.write( bytes );
+                    }
+                }
+                out.force( true );
+            }
+            Files.move( temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            channel = FileChannel.open( file, StandardOpenOption.WRITE, StandardOpenOption.APPEND );
+            durable = sequence;
+        }
+        catch ( final IOException e ) {
+            throw new UncheckedIOException( "Could not rewrite inventory log " + file, e );
+        }
+        finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Reads every line of the log file
+     *
+     * @return the lines, empty if there is no log file
+     */
+    private List<String> readLines () {
+        try ( BufferedReader reader = Files.newBufferedReader( Paths.get( path ), StandardCharsets.UTF_8 ) ) {
+            final List<String> lines = new ArrayList<String>();
+            for ( String line = reader.readLine(); null != line; line = reader.readLine() ) {
+                lines.add( line );
+            }
+            return lines;
+        }
+        catch ( final NoSuchFileException e ) {
+            return Collections.emptyList();
+        }
+        catch ( final IOException e ) {
+            throw new UncheckedIOException( "Could not read inventory log " + path, e );
+        }
+    }
+
+    /**
+     * Finds the Inventory the log applies to. Must be called in a transaction.
+     *
+     * @return the oldest Inventory, null if there is none
+     */
+    private Inventory oldestInventory () {
+        Inventory oldest = null;
+        for ( final Inventory inventory : inventoryRepository.findAll() ) {
+            if ( null == oldest || inventory.getId() < oldest.getId() ) {
+                oldest = inventory;
+            }
+        }
+        return oldest;
+    }
+
+    /**
+     * One record in the log
+     */
+    private static final class Record {
+
+        /** Sequence number */
+        private final long                 sequence;
+
+        /** DEDUCT or SET */
+        private final String               kind;
+
+        /** Ingredient names and amounts */
+        private final Map<String, Integer> amounts;
+
+        /**
+         * Creates a Record
+         *
+         * @param sequence
+         *            sequence number
+         * @param kind
+         *            DEDUCT or SET
+         * @param amounts
+         *            ingredient names and amounts
+         */
+        private Record ( final long sequence, final String kind, final Map<String, Integer> amounts ) {
+            this.sequence = sequence;
+            this.kind = kind;
+            this.amounts = amounts;
+        }
+
+        /**
+         * Applies the record to a map of amounts
+         *
+         * @param target
+         *            the amounts to change
+         */
+        private void applyTo ( final Map<String, Integer> target ) {
+            if ( SET.equals( kind ) ) {
+                target.clear();
+                target.putAll( amounts );
+                return;
+            }
+            for ( final Map.Entry<String, Integer> entry : amounts.entrySet() ) {
+                target.merge( entry.getKey(), -entry.getValue(), Integer::sum );
+            }
+        }
+
+        /**
+         * Encodes the record as a line of the log file
+         *
+         * @return the line, including its newline
+         */
+        private String encode () {
+            final StringBuilder body = new StringBuilder().append( sequence ).append( ' ' ).append( kind );
+            for ( final Map.Entry<String, Integer> entry : amounts.entrySet() ) {
+                body.append( ' ' ).append( URLEncoder.encode( entry.getKey(), StandardCharsets.UTF_8 ) ).append( '=' )
+                        .append( entry.getValue() );
+            }
+            return body + " " + Long.toHexString( checksum( body.toString() ) ) + "\n";
+        }
+
+        /**
+         * Parses a line of the log file
+         *
+         * @param line
+         *            the line, without its newline
+         * @return the record, or null if the line is damaged
+         */
+        private static Record parse ( final String line ) {
+            final int end = line.lastIndexOf( ' ' );
+            if ( end < 0 ) {
+                return null;
+            }
+            final String body = line.substring( 0, end );
+            try {
+                if ( Long.parseLong( line.substring( end + 1 ), 16 ) != checksum( body ) ) {
+                    return null;
+                }
+                final String[] fields = body.split( " " );
+                final Map<String, Integer> amounts = new LinkedHashMap<String, Integer>();
+                for ( int i = 2; i < fields.length; i++ ) {
+                    final int equals = fields[i].lastIndexOf( '=' );
+                    amounts.put( URLDecoder.decode( fields[i].substring( 0, equals ), StandardCharsets.UTF_8 ),
+                            Integer.valueOf( fields[i].substring( equals + 1 ) ) );
+                }
+                return new Record( Long.parseLong( fields[0] ), fields[1], amounts );
+            }
+            catch ( final RuntimeException e ) {
+                return null;
+            }
+        }
+
+        /**
+         * Computes the checksum of a record's text
+         *
+         * @param body
+         *            the record, without its checksum
+         * @return CRC32 of the text
+         */
+        private static long checksum ( final String body ) {
+            final CRC32 crc = new CRC32();
+            crc.update( body.getBytes( StandardCharsets.UTF_8 ) );
+            return crc.getValue();
+        }
+    }
+
+}
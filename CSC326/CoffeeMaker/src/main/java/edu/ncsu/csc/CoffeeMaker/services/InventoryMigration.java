@@ -0,0 +1,158 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.flywaydb.core.api.MigrationVersion;
+import org.flywaydb.core.api.migration.Context;
+import org.flywaydb.core.api.migration.JavaMigration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves Inventory data out of the old `ingredient_map` column, where Hibernate
+ * stored the whole ingredient map as one Java-serialized blob, and into the
+ * inventory_ingredient table (one row per ingredient). A Flyway migration,
+ * version 2.1: it runs once, after V2 has created the new table and before
+ * anything else uses it, and drops the old column once the data has been
+ * copied. Spring Boot hands every JavaMigration bean to Flyway.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+@Component
+public class InventoryMigration implements JavaMigration {
+
+    /** Column the serialized map used to be stored in */
+    private static final String        LEGACY_COLUMN = "ingredient_map";
+
+    /** The only classes that may appear in a serialized ingredient map */
+    private static final Set<Class<?>> MAP_CLASSES   = Set.of( HashMap.class, Integer.class, Number.class,
+            String.class );
+
+    /** Logger */
+    private static final Logger        LOG           = LoggerFactory.getLogger( InventoryMigration.class );
+
+    /**
+     * Runs between V2, which creates inventory_ingredient, and V3
+     *
+     * @return 2.1
+     */
+    @Override
+    public MigrationVersion getVersion () {
+        return MigrationVersion.fromVersion( "2.1" );
+    }
+
+    /**
+     * Describes the migration in Flyway's schema history
+     *
+     * @return the description
+     */
+    @Override
+    public String getDescription () {
+        return "inventory ingredient map to rows";
+    }
+
+    /**
+     * The migration is code, so has no checksum
+     *
+     * @return null
+     */
+    @Override
+    public Integer getChecksum () {
+        return null;
+    }
+
+    /**
+     * This migration moves data forward only
+     *
+     * @return false
+     */
+    @Override
+    public boolean isUndo () {
+        return false;
+    }
+
+    /**
+     * The copy can run in Flyway's transaction, on databases that have them
+     * for DDL
+     *
+     * @return true
+     */
+    @Override
+    public boolean canExecuteInTransaction () {
+        return true;
+    }
+
+    /**
+     * Copies the serialized ingredient maps into the inventory_ingredient
+     * table and then drops the old column, on Flyway's connection
+     *
+     * @param context
+     *            gives the connection to migrate on
+     */
+    @Override
+    public void migrate ( final Context context ) {
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(
+                new SingleConnectionDataSource( context.getConnection(), true ) );
+
+        final List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT id, " + LEGACY_COLUMN + " FROM inventory WHERE " + LEGACY_COLUMN + " IS NOT NULL" );
+        for ( final Map<String, Object> row : rows ) {
+            final Number id = (Number) row.get( "id" );
+            final Map<String, Integer> ingredientMap = deserialize( (byte[]) row.get( LEGACY_COLUMN ) );
+            final List<Object[]> inserts = new ArrayList<Object[]>();
+            for ( final Map.Entry<String, Integer> entry : ingredientMap.entrySet() ) {
+                inserts.add( new Object[] { id.longValue(), entry.getKey(), entry.getValue() } );
+            }
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO inventory_ingredient (inventory_id, ingredient, amount) VALUES (?, ?, ?)", inserts );
+            LOG.info( "Moved {} ingredients of Inventory {} to inventory_ingredient", inserts.size(), id );
+        }
+
+        jdbcTemplate.execute( "ALTER TABLE inventory DROP COLUMN " + LEGACY_COLUMN );
+    }
+
+    /**
+     * Reads a Java-serialized ingredient map. Only the classes a
+     * HashMap<String, Integer> is made of are accepted, along with the
+     * `Map.Entry[]` table a HashMap checks with the filter before it allocates
+     * it.
+     *
+     * @param data
+     *            serialized map
+     * @return the ingredient map
+     */
+    @SuppressWarnings ( "unchecked" )
+    private static Map<String, Integer> deserialize ( final byte[] data ) {
+        try ( ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( data ) ) ) {
+            in.setObjectInputFilter( info -> {
+                final Class<?> type = info.serialClass();
+                if ( null == type ) {
+                    return ObjectInputFilter.Status.UNDECIDED;
+                }
+                if ( type.isArray() ) {
+                    return Map.Entry.class == type.getComponentType() ? ObjectInputFilter.Status.ALLOWED
+                            : ObjectInputFilter.Status.REJECTED;
+                }
+                return MAP_CLASSES.contains( type ) ? ObjectInputFilter.Status.ALLOWED
+                        : ObjectInputFilter.Status.REJECTED;
+            } );
+            return (Map<String, Integer>) in.readObject();
+        }
+        catch ( final IOException | ClassNotFoundException e ) {
+            throw new IllegalStateException( "Unreadable ingredient map in the inventory table", e );
+        }
+    }
+
+}
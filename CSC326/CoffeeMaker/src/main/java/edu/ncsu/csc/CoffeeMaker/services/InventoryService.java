@@ -1,20 +1,34 @@
 package edu.ncsu.csc.CoffeeMaker.services;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import javax.transaction.Transactional;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.models.RecipePlan;
 import edu.ncsu.csc.CoffeeMaker.repositories.InventoryRepository;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryCounters.Reservation;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions.Resource;
 
 /**
  * The InventoryService is used to handle CRUD operations on the Inventory
  * model. In addition to all functionality in `Service`, we also manage the
- * Inventory singleton.
+ * Inventory singleton and the in-memory InventoryCounters used for purchases.
  *
  * @author Kai Presler-Marshall
  *
@@ -31,21 +45,138 @@ public class InventoryService extends Service<Inventory, Long> {
     @Autowired
     private InventoryRepository inventoryRepository;
 
+    /**
+     * In-memory counters that purchases reserve ingredients from
+     */
+    @Autowired
+    private InventoryCounters   counters;
+
+    /**
+     * Compiled plans of the recipes being made
+     */
+    @Autowired
+    private RecipePlans         plans;
+
+    /**
+     * Write-ahead log that holds the Inventory in memory, when enabled
+     */
+    @Autowired
+    private InventoryLog        log;
+
+    /**
+     * Versions of the API's resources, told when the Inventory changes
+     */
+    @Autowired
+    private ResourceVersions    versions;
+
+    /**
+     * Used to detach an Inventory brought up to date from the InventoryLog
+     */
+    @PersistenceContext
+    private EntityManager       entityManager;
+
+    /**
+     * ID of the singleton Inventory, remembered so that purchases don't have
+     * to load it
+     */
+    private volatile Long       inventoryId;
+
+    /**
+     * Shortest time between reloads of the counters from the database when a
+     * purchase falls short, in milliseconds
+     */
+    @Value ( "${coffeemaker.inventory.recheck-ms:1000}" )
+    private long                recheckDelay;
+
+    /**
+     * System.nanoTime() before which a shortfall is not checked against the
+     * database again
+     */
+    private final AtomicLong    nextRecheck = new AtomicLong( System.nanoTime() );
+
     @Override
     protected JpaRepository<Inventory, Long> getRepository () {
         return inventoryRepository;
     }
 
+    /**
+     * Saves the Inventory and reloads the in-memory counters from it, since
+     * the amounts provided replace whatever was there before.
+     *
+     * If the InventoryLog is enabled, the new amounts are logged rather than
+     * written to the database, which the next checkpoint brings up to date.
+     * An Inventory read from `getInventory` is only accepted if nothing has
+     * been logged since it was read; a new Inventory replaces whatever is
+     * there.
+     *
+     * @param obj
+     *            The Inventory to save into the database.
+     * @throws org.springframework.dao.OptimisticLockingFailureException
+     *             if the InventoryLog is enabled and a purchase was logged
+     *             since the Inventory was read
+     */
+    @Override
+    public void save ( final Inventory obj ) {
+        if ( log.isEnabled() ) {
+            // The log record is what makes the new amounts stick
+            final boolean created = null == obj.getId();
+            obj.setWalSequence( log.restock( obj.getIngredientMap(), created ? -1 : obj.getWalSequence() ) );
+            if ( created ) {
+                super.save( obj );
+                versions.bump( Resource.INVENTORY );
+            }
+            inventoryId = obj.getId();
+            return;
+        }
+        super.save( obj );
+        inventoryId = obj.getId();
+        versions.bump( Resource.INVENTORY );
+        counters.load( obj.getIngredientMap() );
+        clearCountersOnRollback();
+    }
+
+    /**
+     * Removes the Inventory from the database and discards the in-memory
+     * counters.
+     */
+    @Override
+    public void deleteAll () {
+        inventoryRepository.deleteAllIngredients();
+        super.deleteAll();
+        inventoryId = null;
+        versions.bump( Resource.INVENTORY );
+        if ( log.isEnabled() ) {
+            log.reset();
+        }
+        counters.clear();
+    }
+
     /**
      * Retrieves the singleton Inventory instance from the database, creating it
-     * if it does not exist.
+     * if it does not exist. Concurrent changes to the Inventory are caught by
+     * its version when it is saved, so no lock is taken here. If the
+     * InventoryLog is enabled, the amounts are brought up to date from it in a
+     * detached copy, so reading the Inventory never writes it; changes to it
+     * only stick through `save`.
      *
      * @return the Inventory, either new or fetched
      */
-    public synchronized Inventory getInventory () {
+    public Inventory getInventory () {
         final List<Inventory> inventoryList = findAll();
-        if ( inventoryList != null && inventoryList.size() == 1 ) {
-            return inventoryList.get( 0 );
+        if ( inventoryList != null && !inventoryList.isEmpty() ) {
+            // Two first requests racing to create the Inventory can leave a
+            // second one behind; always use the oldest
+            Inventory oldest = inventoryList.get( 0 );
+            for ( final Inventory inventory : inventoryList ) {
+                if ( inventory.getId() < oldest.getId() ) {
+                    oldest = inventory;
+                }
+            }
+            inventoryId = oldest.getId();
+            if ( log.isEnabled() ) {
+                catchUp( oldest );
+            }
+            return oldest;
         }
         else {
             // Initialize the inventory with 0 of everything
@@ -55,4 +186,288 @@ public class InventoryService extends Service<Inventory, Long> {
         }
     }
 
+    /**
+     * Loads the in-memory counters from the Inventory if they are not loaded
+     * already, so that they can be read without going to the database.
+     */
+    public void loadCounters () {
+        if ( counters.isLoaded() ) {
+            return;
+        }
+        if ( log.isEnabled() ) {
+            // Recovers the counters from the log
+            log.snapshot( new HashMap<String, Integer>() );
+            return;
+        }
+        counters.load( getInventory().getIngredientMap() );
+        clearCountersOnRollback();
+    }
+
+    /**
+     * Gets the amount of a single ingredient in the Inventory. Only that
+     * ingredient's row is read from the database.
+     *
+     * @param ingredient
+     *            name of the ingredient
+     * @return amount in stock, -1 if the ingredient is not in the Inventory
+     */
+    public int getAmount ( final String ingredient ) {
+        if ( log.isEnabled() ) {
+            return log.getAmount( ingredient );
+        }
+        if ( null == inventoryId ) {
+            getInventory();
+        }
+        final Integer amount = inventoryRepository.findAmount( inventoryId, ingredient );
+        return null == amount ? -1 : amount;
+    }
+
+    /**
+     * Uses the ingredients for one serving of the provided Recipe. The
+     * ingredients are reserved out of the in-memory counters first, so that
+     * concurrent purchases never ask the database for more than is in stock,
+     * and then taken out of the database with `useIngredients`.
+     *
+     * @param recipe
+     *            the Recipe to make
+     * @return true if there was enough inventory and it has been used, false
+     *         otherwise
+     */
+    public boolean purchase ( final Recipe recipe ) {
+        final RecipePlan plan = plans.get( recipe );
+        if ( log.isEnabled() ) {
+            return log.purchase( plan );
+        }
+        return reserveAndUse( plan );
+    }
+
+    /**
+     * Makes several Recipes, in order, in one transaction. Each Recipe is
+     * reserved from the in-memory counters in turn, so it is only made if
+     * there is enough left after the ones before it, and then the total of
+     * everything reserved is taken out of the database with one
+     * `useIngredients`, so a batch costs one UPDATE however many orders it
+     * has. If another instance has taken some of that stock in the meantime,
+     * the batch falls back to making each Recipe as `purchase` does.
+     *
+     * @param recipes
+     *            the Recipes to make; null entries are skipped
+     * @return for each Recipe, whether it was made
+     */
+    public boolean[] purchaseAll ( final List<Recipe> recipes ) {
+        final boolean[] made = new boolean[recipes.size()];
+        if ( log.isEnabled() ) {
+            for ( int i = 0; i < recipes.size(); i++ ) {
+                made[i] = null != recipes.get( i ) && log.purchase( plans.get( recipes.get( i ) ) );
+            }
+            return made;
+        }
+        if ( !counters.isLoaded() ) {
+            counters.load( getInventory().getIngredientMap() );
+        }
+
+        final List<Reservation> reservations = new ArrayList<Reservation>();
+        final List<RecipePlan> reserved = new ArrayList<RecipePlan>();
+        boolean shortfall = false;
+        for ( int i = 0; i < recipes.size(); i++ ) {
+            if ( null == recipes.get( i ) ) {
+                continue;
+            }
+            final RecipePlan plan = plans.get( recipes.get( i ) );
+            final Reservation reservation = counters.reserve( plan );
+            if ( null == reservation ) {
+                shortfall = true;
+                continue;
+            }
+            reservations.add( reservation );
+            reserved.add( plan );
+            made[i] = true;
+        }
+        if ( shortfall && recheck() ) {
+            // Another instance may have restocked; start over against the
+            // database, one Recipe at a time
+            cancel( reservations );
+            counters.load( getInventory().getIngredientMap() );
+            return purchaseEach( recipes );
+        }
+
+        try {
+            if ( useIngredients( RecipePlan.sum( reserved ) ) ) {
+                clearCountersOnRollback();
+                return made;
+            }
+        }
+        catch ( final RuntimeException e ) {
+            cancel( reservations );
+            throw e;
+        }
+        // Another instance got there first; the counters are out of date
+        counters.clear();
+        return purchaseEach( recipes );
+    }
+
+    /**
+     * Makes each of several Recipes on its own, as `purchase` does
+     *
+     * @param recipes
+     *            the Recipes to make; null entries are skipped
+     * @return for each Recipe, whether it was made
+     */
+    private boolean[] purchaseEach ( final List<Recipe> recipes ) {
+        final boolean[] made = new boolean[recipes.size()];
+        for ( int i = 0; i < recipes.size(); i++ ) {
+            made[i] = null != recipes.get( i ) && reserveAndUse( plans.get( recipes.get( i ) ) );
+        }
+        return made;
+    }
+
+    /**
+     * Hands back reservations that won't be used
+     *
+     * @param reservations
+     *            the reservations
+     */
+    private static void cancel ( final List<Reservation> reservations ) {
+        for ( final Reservation reservation : reservations ) {
+            reservation.cancel();
+        }
+    }
+
+    /**
+     * Reserves the ingredients of a plan from the in-memory counters and then
+     * takes them out of the database with `useIngredients`
+     *
+     * @param plan
+     *            plan of the Recipe to make
+     * @return true if there was enough inventory and it has been used, false
+     *         otherwise
+     */
+    private boolean reserveAndUse ( final RecipePlan plan ) {
+        if ( !counters.isLoaded() ) {
+            counters.load( getInventory().getIngredientMap() );
+        }
+        Reservation reservation = counters.reserve( plan );
+        if ( null == reservation ) {
+            // Another instance may have restocked since the counters were
+            // loaded, so check again against the database before giving up,
+            // but only once in a while so that a run of orders for something
+            // out of stock doesn't load the Inventory for each of them
+            if ( !recheck() ) {
+                return false;
+            }
+            counters.load( getInventory().getIngredientMap() );
+            reservation = counters.reserve( plan );
+            if ( null == reservation ) {
+                return false;
+            }
+        }
+
+        try {
+            if ( useIngredients( plan ) ) {
+                clearCountersOnRollback();
+                return true;
+            }
+            // Another instance got there first; the counters are out of date
+            counters.clear();
+            return false;
+        }
+        catch ( final RuntimeException e ) {
+            reservation.cancel();
+            throw e;
+        }
+    }
+
+    /**
+     * Decides whether a shortfall should be checked against the database. At
+     * most one caller is let through every `recheckDelay` milliseconds; the
+     * rest are answered from the counters. Restocks made through this
+     * instance reload the counters straight away, so only those made by
+     * another instance wait for the next check.
+     *
+     * @return true if the counters should be reloaded
+     */
+    private boolean recheck () {
+        final long now = System.nanoTime();
+        final long next = nextRecheck.get();
+        return now - next >= 0
+                && nextRecheck.compareAndSet( next, now + TimeUnit.MILLISECONDS.toNanos( recheckDelay ) );
+    }
+
+    /**
+     * Takes the ingredients for one serving of the provided Recipe out of the
+     * Inventory in the database, without loading the Inventory, in a single
+     * UPDATE statement. Each ingredient is only decremented if there is at
+     * least as much in stock as the recipe needs, and if any of them falls
+     * short none of them are used.
+     * The current transaction is left as it was either way, so a caller that
+     * joined it decides for itself whether a shortfall should roll it back.
+     *
+     * @param recipe
+     *            the Recipe to make
+     * @return true if all of the ingredients were used, false if there was a
+     *         shortfall
+     */
+    public boolean useIngredients ( final Recipe recipe ) {
+        return useIngredients( plans.get( recipe ) );
+    }
+
+    /**
+     * Takes the ingredients of a compiled RecipePlan out of the Inventory in
+     * the database; see `useIngredients(Recipe)`.
+     *
+     * @param plan
+     *            plan of the Recipe to make
+     * @return true if all of the ingredients were used, false if there was a
+     *         shortfall
+     */
+    public boolean useIngredients ( final RecipePlan plan ) {
+        if ( 0 == plan.size() ) {
+            return true;
+        }
+
+        if ( null == inventoryId ) {
+            getInventory();
+        }
+        if ( !inventoryRepository.useIngredients( inventoryId, plan ) ) {
+            return false;
+        }
+        versions.bump( Resource.INVENTORY );
+        return true;
+    }
+
+    /**
+     * Detaches an Inventory read from the database and copies the current
+     * amounts from the InventoryLog into it, along with the log sequence it
+     * now reflects. Only the checkpoints write the amounts back.
+     *
+     * @param inventory
+     *            the Inventory to bring up to date
+     */
+    private void catchUp ( final Inventory inventory ) {
+        entityManager.detach( inventory );
+        final Map<String, Integer> amounts = new HashMap<String, Integer>();
+        inventory.setWalSequence( log.snapshot( amounts ) );
+        for ( final Map.Entry<String, Integer> entry : amounts.entrySet() ) {
+            inventory.putIngredient( entry.getKey(), entry.getValue() );
+        }
+    }
+
+    /**
+     * If the current transaction is rolled back, the counters no longer match
+     * the database, so make sure they are reloaded before they are used again.
+     */
+    private void clearCountersOnRollback () {
+        if ( !TransactionSynchronizationManager.isSynchronizationActive() ) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion ( final int status ) {
+                if ( STATUS_COMMITTED != status ) {
+                    counters.clear();
+                }
+            }
+        } );
+    }
+
 }
@@ -0,0 +1,56 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Writes a Stream of records as a JSON array one record at a time, so that
+ * neither the list of records nor the whole JSON text is ever held in memory.
+ * Used with `Service.stream` for the list endpoints.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+public final class JsonStreams {
+
+    /**
+     * Not instantiable
+     */
+    private JsonStreams () {
+    }
+
+    /**
+     * Writes the records as a UTF-8 JSON array, consuming and closing the
+     * stream. Each record is encoded exactly as Spring would encode it in a
+     * List. The output stream is flushed but left open.
+     *
+     * @param mapper
+     *            Used to encode each record
+     * @param records
+     *            The records to write
+     * @param out
+     *            Where to write them
+     * @throws IOException
+     *             if the output can't be written to
+     */
+    public static void writeArray ( final ObjectMapper mapper, final Stream<?> records, final OutputStream out )
+            throws IOException {
+        try ( Stream<?> rows = records;
+                JsonGenerator json = mapper.getFactory().createGenerator( out, JsonEncoding.UTF8 ) ) {
+            json.disable( JsonGenerator.Feature.AUTO_CLOSE_TARGET );
+            json.writeStartArray();
+            final Iterator<?> iterator = rows.iterator();
+            while ( iterator.hasNext() ) {
+                json.writeObject( iterator.next() );
+            }
+            json.writeEndArray();
+        }
+    }
+
+}
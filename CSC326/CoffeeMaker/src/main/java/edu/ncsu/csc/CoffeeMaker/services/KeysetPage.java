@@ -0,0 +1,56 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.util.List;
+
+import edu.ncsu.csc.CoffeeMaker.models.DomainObject;
+
+/**
+ * One page of records read by `Service.findPage`, along with the cursor to
+ * pass back in to get the page after it.
+ *
+ * @param <T>
+ *            Type of entity on the page
+ *
+ * @author Shailesh Paudel
+ *
+ */
+public class KeysetPage<T extends DomainObject> {
+
+    /** Records on this page */
+    private final List<T> content;
+
+    /** Cursor for the next page, null if this is the last one */
+    private final String  nextCursor;
+
+    /**
+     * Creates a page
+     *
+     * @param content
+     *            records on the page
+     * @param nextCursor
+     *            cursor for the next page, null if this is the last one
+     */
+    public KeysetPage ( final List<T> content, final String nextCursor ) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Gets the records on this page
+     *
+     * @return the records, in order
+     */
+    public List<T> getContent () {
+        return content;
+    }
+
+    /**
+     * Gets the cursor to pass as `after` to read the next page
+     *
+     * @return the cursor, null if this is the last page
+     */
+    public String getNextCursor () {
+        return nextCursor;
+    }
+
+}
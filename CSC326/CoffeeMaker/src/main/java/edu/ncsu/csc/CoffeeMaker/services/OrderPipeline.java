@@ -0,0 +1,341 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+
+/**
+ * Single-writer pipeline for making coffee. Purchases are put on a bounded
+ * queue and a single dedicated thread takes them off in groups, making each
+ * group with `InventoryService.purchaseAll` in one transaction. The orders in
+ * a group are checked against the in-memory counters one after another, and
+ * everything they use is then taken out of the database with one guarded
+ * UPDATE, so a group costs one statement however many orders it has. A group
+ * is committed once it has `batch-size` orders, or once the first order in it
+ * has waited `max-delay-ms`, whichever comes first.
+ *
+ * Requests never contend with each other for the Inventory; each one just
+ * waits on a future for its own result, for at most `timeout-ms`. An order
+ * the writer has not started on by then is dropped and the request is turned
+ * away as if the queue were full. If the writer thread dies, every order it
+ * had is failed and the pipeline turns itself off, so purchases are made
+ * directly again. The pipeline is off unless
+ * `coffeemaker.pipeline.enabled` is set, since orders are committed by the
+ * writer thread rather than in the caller's transaction.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+@Component
+public class OrderPipeline {
+
+    /** Whether purchases go through the pipeline */
+    @Value ( "${coffeemaker.pipeline.enabled:false}" )
+    private boolean              enabled;
+
+    /** Most orders that can be waiting to be made */
+    @Value ( "${coffeemaker.pipeline.capacity:1024}" )
+    private int                  capacity;
+
+    /** Most orders committed together */
+    @Value ( "${coffeemaker.pipeline.batch-size:64}" )
+    private int                  batchSize;
+
+    /** Longest the first order of a group waits for more, in milliseconds */
+    @Value ( "${coffeemaker.pipeline.max-delay-ms:5}" )
+    private long                 maxDelay;
+
+    /** Longest a purchase waits for the writer to start on it, in milliseconds */
+    @Value ( "${coffeemaker.pipeline.timeout-ms:5000}" )
+    private long                 timeout;
+
+    /**
+     * InventoryService, used by the writer to make each group of orders
+     */
+    @Autowired
+    private InventoryService     inventoryService;
+
+    /**
+     * Retries groups that conflict with another update to the Inventory
+     */
+    @Autowired
+    private ConflictRetry        retry;
+
+    /** Orders waiting to be made */
+    private BlockingQueue<Order> queue;
+
+    /** Thread making the orders */
+    private Thread               writer;
+
+    /** Set when the pipeline is shutting down */
+    private volatile boolean     stopping;
+
+    /**
+     * Starts the writer thread, if the pipeline is enabled
+     */
+    @PostConstruct
+    public void start () {
+        if ( !enabled ) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<Order>( capacity );
+        writer = new Thread( this::write, "order-writer" );
+        writer.setDaemon( true );
+        writer.start();
+    }
+
+    /**
+     * Stops the writer thread. Orders already taken off the queue are still
+     * committed; any left on it are failed.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for the writer to finish
+     */
+    @PreDestroy
+    public void stop () throws InterruptedException {
+        if ( null == writer ) {
+            return;
+        }
+        stopping = true;
+        writer.interrupt();
+        writer.join( TimeUnit.SECONDS.toMillis( 10 ) );
+        // Anything queued while the writer was finishing up
+        rejectQueued();
+    }
+
+    /**
+     * Checks whether purchases should go through the pipeline
+     *
+     * @return true if the pipeline is running
+     */
+    public boolean isEnabled () {
+        return null != writer && !stopping;
+    }
+
+    /**
+     * Queues one serving of a Recipe to be made
+     *
+     * @param recipe
+     *            the Recipe to make
+     * @return future completed with true if there was enough inventory and it
+     *         has been used, false otherwise. It is completed exceptionally
+     *         with a RejectedExecutionException if the queue is full.
+     */
+    public CompletableFuture<Boolean> submit ( final Recipe recipe ) {
+        return enqueue( recipe ).result;
+    }
+
+    /**
+     * Makes one serving of a Recipe through the pipeline, waiting for the
+     * result. If the writer has not started on the order within the timeout,
+     * it is dropped so that it is never made.
+     *
+     * @param recipe
+     *            the Recipe to make
+     * @return true if there was enough inventory and it has been used, false
+     *         otherwise
+     * @throws RejectedExecutionException
+     *             if the queue is full, or the order timed out before the
+     *             writer got to it
+     */
+    public boolean purchase ( final Recipe recipe ) {
+        final Order order = enqueue( recipe );
+        try {
+            return order.result.get( timeout, TimeUnit.MILLISECONDS );
+        }
+        catch ( final TimeoutException | InterruptedException e ) {
+            if ( e instanceof InterruptedException ) {
+                Thread.currentThread().interrupt();
+            }
+            if ( order.take() ) {
+                throw new RejectedExecutionException( "Order pipeline did not get to the order in time", e );
+            }
+            // The writer already has it; its transaction decides the result
+            try {
+                return order.result.join();
+            }
+            catch ( final CompletionException f ) {
+                throw failure( f.getCause() );
+            }
+        }
+        catch ( final ExecutionException e ) {
+            throw failure( e.getCause() );
+        }
+    }
+
+    /**
+     * Queues one serving of a Recipe to be made
+     *
+     * @param recipe
+     *            the Recipe to make
+     * @return the Order, already failed if the queue is full
+     */
+    private Order enqueue ( final Recipe recipe ) {
+        final Order order = new Order( recipe );
+        if ( !isEnabled() || !queue.offer( order ) ) {
+            order.result.completeExceptionally( new RejectedExecutionException( "Order pipeline is full" ) );
+        }
+        return order;
+    }
+
+    /**
+     * Gets what to throw for the failure of an order
+     *
+     * @param cause
+     *            what the order failed with
+     * @return the exception to throw
+     */
+    private static RuntimeException failure ( final Throwable cause ) {
+        if ( cause instanceof Error ) {
+            throw (Error) cause;
+        }
+        return cause instanceof RuntimeException ? (RuntimeException) cause : new CompletionException( cause );
+    }
+
+    /**
+     * Body of the writer thread: takes orders off the queue in groups and
+     * commits each group until the pipeline is stopped
+     */
+    private void write () {
+        final List<Order> group = new ArrayList<Order>( batchSize );
+        try {
+            while ( !stopping ) {
+                try {
+                    group.add( queue.take() );
+                    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( maxDelay );
+                    while ( group.size() < batchSize ) {
+                        queue.drainTo( group, batchSize - group.size() );
+                        final long left = deadline - System.nanoTime();
+                        if ( group.size() >= batchSize || left <= 0 ) {
+                            break;
+                        }
+                        final Order next = queue.poll( left, TimeUnit.NANOSECONDS );
+                        if ( null == next ) {
+                            break;
+                        }
+                        group.add( next );
+                    }
+                }
+                catch ( final InterruptedException e ) {
+                    // Stopping; commit what we have and then leave. The
+                    // interrupt flag is clear again, so the commit itself
+                    // isn't interrupted
+                    stopping = true;
+                }
+                commit( group );
+                group.clear();
+            }
+        }
+        finally {
+            // Whether stopped or killed, nothing is left waiting on the writer
+            stopping = true;
+            for ( final Order order : group ) {
+                order.result.completeExceptionally( new RejectedExecutionException( "Order pipeline stopped" ) );
+            }
+            rejectQueued();
+        }
+    }
+
+    /**
+     * Fails every order still on the queue
+     */
+    private void rejectQueued () {
+        final List<Order> left = new ArrayList<Order>();
+        queue.drainTo( left );
+        for ( final Order order : left ) {
+            order.result.completeExceptionally( new RejectedExecutionException( "Order pipeline stopped" ) );
+        }
+    }
+
+    /**
+     * Makes a group of orders in one transaction and completes their futures.
+     * However the group fails, every future is completed; an Error is then
+     * thrown on so that it ends the writer.
+     *
+     * @param group
+     *            the orders to make
+     */
+    private void commit ( final List<Order> group ) {
+        // Leave out orders whose purchase has already given up on them
+        final List<Order> taken = new ArrayList<Order>( group.size() );
+        final List<Recipe> recipes = new ArrayList<Recipe>( group.size() );
+        for ( final Order order : group ) {
+            if ( order.take() ) {
+                taken.add( order );
+                recipes.add( order.recipe );
+            }
+        }
+        if ( taken.isEmpty() ) {
+            return;
+        }
+        try {
+            final boolean[] made = retry.run( () -> inventoryService.purchaseAll( recipes ) );
+            for ( int i = 0; i < taken.size(); i++ ) {
+                taken.get( i ).result.complete( made[i] );
+            }
+        }
+        catch ( final Throwable e ) {
+            for ( final Order order : taken ) {
+                order.result.completeExceptionally( e );
+            }
+            if ( e instanceof Error ) {
+                throw (Error) e;
+            }
+        }
+    }
+
+    /**
+     * One serving of a Recipe waiting to be made, and the future its result is
+     * delivered through
+     */
+    private static final class Order {
+
+        /** Recipe to make */
+        private final Recipe                     recipe;
+
+        /** Completed with whether the Recipe was made */
+        private final CompletableFuture<Boolean> result = new CompletableFuture<Boolean>();
+
+        /** Set by whichever of the writer and the purchase gets it first */
+        private final AtomicBoolean              taken  = new AtomicBoolean();
+
+        /**
+         * Creates an Order
+         *
+         * @param recipe
+         *            Recipe to make
+         */
+        private Order ( final Recipe recipe ) {
+            this.recipe = recipe;
+        }
+
+        /**
+         * Claims the order, either for the writer to make or for the purchase
+         * to give up on
+         *
+         * @return true if this call claimed it, false if it was already
+         *         claimed
+         */
+        private boolean take () {
+            return taken.compareAndSet( false, true );
+        }
+    }
+
+}
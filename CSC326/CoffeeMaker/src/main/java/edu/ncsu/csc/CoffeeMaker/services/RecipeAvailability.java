@@ -0,0 +1,414 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.models.RecipePlan;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions.Resource;
+
+/**
+ * Keeps how many servings of each Recipe the current stock is enough for, and
+ * so which Recipes can be made at all. It listens to the InventoryCounters,
+ * which hold the live stock whether or not the InventoryLog is enabled, and
+ * keeps an index from each ingredient slot to the recipes that use it. When
+ * the amount in a slot changes, only the recipes in that slot's index are
+ * looked at again. A recipe's servings only have to be worked out over all of
+ * its ingredients when the slot that went up was the one limiting it; any
+ * other change is settled from that one ingredient.
+ *
+ * Purchases don't take the lock: they only flag the slots they changed, in an
+ * array of flags, and the next read folds the flagged slots in under the lock.
+ * A purchase flags its slots after changing the counters and a read clears a
+ * flag before reading its slot back, so no change is missed.
+ *
+ * The recipes themselves are read from the database the first time they are
+ * asked for, and again after the version of the recipes changes. Asking for
+ * the available recipes otherwise only compares that version, which
+ * ResourceVersions keeps in memory, so it takes no query at all.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+@Component
+public class RecipeAvailability implements InventoryCounters.Listener {
+
+    /** Used to read the recipes */
+    @Autowired
+    private RecipeService                 recipeService;
+
+    /** Used to load the counters when they are not loaded */
+    @Autowired
+    private InventoryService              inventoryService;
+
+    /** The live stock */
+    @Autowired
+    private InventoryCounters             counters;
+
+    /** Compiled plans of the recipes */
+    @Autowired
+    private RecipePlans                   plans;
+
+    /** Slots of the ingredients */
+    @Autowired
+    private IngredientCatalog             catalog;
+
+    /** Versions of the recipes */
+    @Autowired
+    private ResourceVersions              versions;
+
+    /** Guards changes to everything below */
+    private final ReentrantLock           lock      = new ReentrantLock();
+
+    /** Version of the recipes the index was built from, -1 if not built */
+    private volatile long                 built     = -1;
+
+    /** Recipes that use each slot, by slot */
+    private List<List<Use>>               users     = new ArrayList<List<Use>>();
+
+    /** Amount last seen in each slot, by slot */
+    private int[]                         stock     = new int[0];
+
+    /** Names of the recipes that can be made; read without the lock */
+    private volatile NavigableSet<String> available = new ConcurrentSkipListSet<String>();
+
+    /** Servings of each recipe; read without the lock */
+    private volatile Map<String, Integer> servings  = new ConcurrentHashMap<String, Integer>();
+
+    /** Flag for each slot changed since it was last folded in, by slot */
+    private volatile AtomicIntegerArray   dirty     = new AtomicIntegerArray( 16 );
+
+    /** Whether any slot may be flagged since the last fold */
+    private volatile boolean              pending   = false;
+
+    /**
+     * Whether every slot must be looked at, since the counters were reloaded
+     * or a slot was changed that had no flag yet
+     */
+    private volatile boolean              rescan    = false;
+
+    /**
+     * Starts listening to the counters
+     */
+    @PostConstruct
+    public void listen () {
+        counters.setListener( this );
+    }
+
+    /**
+     * Gets the names of the Recipes that can be made from the current stock
+     *
+     * @return names of the available recipes, in order
+     */
+    public List<String> getAvailable () {
+        if ( isStale() ) {
+            rebuild();
+        }
+        fold();
+        return new ArrayList<String>( available );
+    }
+
+    /**
+     * Gets how many servings of each Recipe the current stock is enough for
+     *
+     * @return servings by recipe name, in order of name; -1 for a recipe that
+     *         needs none of any ingredient
+     */
+    public Map<String, Integer> getServings () {
+        if ( isStale() ) {
+            rebuild();
+        }
+        fold();
+        return new TreeMap<String, Integer>( servings );
+    }
+
+    /**
+     * Checks whether the index needs to be built again. Both checks are made
+     * in memory: the recipes' version is the one ResourceVersions keeps, moved
+     * forward when a change to the recipes commits and refreshed now and then
+     * for changes made by other instances.
+     *
+     * @return true if the recipes have changed or the counters are not loaded
+     */
+    private boolean isStale () {
+        return built != versions.get( Resource.RECIPES ) || !counters.isLoaded();
+    }
+
+    /**
+     * Reads every Recipe and builds the index and the set of available recipes
+     * from scratch
+     */
+    private void rebuild () {
+        final long version = versions.get( Resource.RECIPES );
+        inventoryService.loadCounters();
+        // Kept until the recipes change again, so not read from a replica
+        final List<Recipe> recipes = recipeService.findAllFromPrimary();
+
+        lock.lock();
+        try {
+            users = new ArrayList<List<Use>>();
+            stock = new int[catalog.size()];
+            for ( int slot = 0; slot < stock.length; slot++ ) {
+                stock[slot] = Math.max( 0, counters.getAmount( slot ) );
+            }
+            final NavigableSet<String> made = new ConcurrentSkipListSet<String>();
+            final Map<String, Integer> counts = new ConcurrentHashMap<String, Integer>();
+            for ( final Recipe recipe : recipes ) {
+                final Entry entry = new Entry( recipe.getName(), plans.get( recipe ) );
+                for ( int i = 0; i < entry.plan.size(); i++ ) {
+                    if ( entry.plan.getAmount( i ) > 0 ) {
+                        usersOf( entry.plan.getSlot( i ) ).add( new Use( entry, entry.plan.getAmount( i ) ) );
+                    }
+                }
+                entry.servings = servingsOf( entry );
+                counts.put( entry.name, entry.servings );
+                if ( 0 != entry.servings ) {
+                    made.add( entry.name );
+                }
+            }
+            available = made;
+            servings = counts;
+            built = version;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Has every slot looked at again on the next read, after the counters were
+     * loaded or cleared. Only the recipes using slots whose amount actually
+     * changed are looked at then.
+     */
+    @Override
+    public void reloaded () {
+        rescan = true;
+        pending = true;
+    }
+
+    /**
+     * Flags the slots of a plan after a purchase took from them or put back
+     * into them, to be looked at again on the next read. Never takes the lock.
+     *
+     * @param plan
+     *            plan whose ingredients changed
+     */
+    @Override
+    public void changed ( final RecipePlan plan ) {
+        final AtomicIntegerArray flags = dirty;
+        for ( int i = 0; i < plan.size(); i++ ) {
+            final int slot = plan.getSlot( i );
+            if ( slot >= flags.length() ) {
+                rescan = true;
+            }
+            else if ( 0 == flags.get( slot ) ) {
+                flags.set( slot, 1 );
+            }
+        }
+        if ( !pending ) {
+            pending = true;
+        }
+    }
+
+    /**
+     * Looks at the slots flagged since the last read again, or at every slot
+     * if the counters were reloaded since
+     */
+    private void fold () {
+        if ( !pending ) {
+            return;
+        }
+        lock.lock();
+        try {
+            pending = false;
+            if ( built < 0 ) {
+                return;
+            }
+            if ( dirty.length() < catalog.size() ) {
+                // A purchase still flagging the old array changed the
+                // counters before reading it, so the rescan below sees it
+                dirty = new AtomicIntegerArray( catalog.size() + 16 );
+                rescan = true;
+            }
+            if ( rescan ) {
+                rescan = false;
+                final int slots = Math.max( stock.length, catalog.size() );
+                for ( int slot = 0; slot < slots; slot++ ) {
+                    if ( slot < dirty.length() ) {
+                        dirty.set( slot, 0 );
+                    }
+                    slotChanged( slot );
+                }
+                return;
+            }
+            final AtomicIntegerArray flags = dirty;
+            for ( int slot = 0; slot < flags.length(); slot++ ) {
+                if ( 0 != flags.get( slot ) && 0 != flags.getAndSet( slot, 0 ) ) {
+                    slotChanged( slot );
+                }
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the amount in a slot back from the counters and, if it changed,
+     * checks that ingredient again for each recipe using it. Must hold the
+     * lock, and have cleared the slot's flag first.
+     *
+     * @param slot
+     *            slot that may have changed
+     */
+    private void slotChanged ( final int slot ) {
+        final int now = Math.max( 0, counters.getAmount( slot ) );
+        final int before = amountIn( slot );
+        if ( now == before ) {
+            return;
+        }
+        if ( slot >= stock.length ) {
+            stock = Arrays.copyOf( stock, Math.max( slot + 1, catalog.size() ) );
+        }
+        stock[slot] = now;
+        if ( slot >= users.size() ) {
+            return;
+        }
+        for ( final Use use : users.get( slot ) ) {
+            final Entry entry = use.entry;
+            final int from = entry.servings;
+            final int enough = now / use.need;
+            if ( enough < from ) {
+                entry.servings = enough;
+            }
+            else if ( before / use.need == from ) {
+                // This ingredient may have been what limited the recipe
+                entry.servings = servingsOf( entry );
+            }
+            if ( entry.servings == from ) {
+                continue;
+            }
+            servings.put( entry.name, entry.servings );
+            if ( 0 == entry.servings ) {
+                available.remove( entry.name );
+            }
+            else if ( 0 == from ) {
+                available.add( entry.name );
+            }
+        }
+    }
+
+    /**
+     * Works out the servings of a recipe over all of its ingredients. Must
+     * hold the lock.
+     *
+     * @param entry
+     *            the recipe
+     * @return the least, over its ingredients, of the amount in stock divided
+     *         by the amount needed; -1 if it needs none of anything
+     */
+    private int servingsOf ( final Entry entry ) {
+        int least = -1;
+        for ( int i = 0; i < entry.plan.size(); i++ ) {
+            final int need = entry.plan.getAmount( i );
+            if ( need > 0 ) {
+                final int enough = amountIn( entry.plan.getSlot( i ) ) / need;
+                least = least < 0 ? enough : Math.min( least, enough );
+            }
+        }
+        return least;
+    }
+
+    /**
+     * Gets the amount last seen in a slot. Must hold the lock.
+     *
+     * @param slot
+     *            the slot
+     * @return its amount, 0 if never seen
+     */
+    private int amountIn ( final int slot ) {
+        return slot < stock.length ? stock[slot] : 0;
+    }
+
+    /**
+     * Gets the list of recipes that use a slot, making it if needed. Must hold
+     * the lock.
+     *
+     * @param slot
+     *            the slot
+     * @return the recipes using it
+     */
+    private List<Use> usersOf ( final int slot ) {
+        while ( users.size() <= slot ) {
+            users.add( new ArrayList<Use>( 4 ) );
+        }
+        return users.get( slot );
+    }
+
+    /**
+     * A recipe, and how many servings of it the stock is enough for
+     */
+    private static final class Entry {
+
+        /** Name of the recipe */
+        private final String     name;
+
+        /** Its compiled plan */
+        private final RecipePlan plan;
+
+        /** Servings the stock is enough for, -1 for no limit */
+        private int              servings;
+
+        /**
+         * Creates an Entry
+         *
+         * @param name
+         *            name of the recipe
+         * @param plan
+         *            its compiled plan
+         */
+        private Entry ( final String name, final RecipePlan plan ) {
+            this.name = name;
+            this.plan = plan;
+        }
+    }
+
+    /**
+     * One recipe's use of an ingredient slot, for a positive amount
+     */
+    private static final class Use {
+
+        /** The recipe */
+        private final Entry entry;
+
+        /** Amount of the ingredient it needs */
+        private final int   need;
+
+        /**
+         * Creates a Use
+         *
+         * @param entry
+         *            the recipe
+         * @param need
+         *            amount of the ingredient it needs
+         */
+        private Use ( final Entry entry, final int need ) {
+            this.entry = entry;
+            this.need = need;
+        }
+    }
+
+}
@@ -0,0 +1,213 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+
+/**
+ * Bounded cache of Recipes by name, used by RecipeService so that looking up a
+ * recipe to make it doesn't go to the database. Entries are evicted least
+ * recently used first once there are more than `max-size` of them, and expire
+ * `ttl-seconds` after they were loaded.
+ *
+ * Recipes are only added once the transaction that read them commits, and a
+ * load that overlaps a change to any recipe is not cached at all, so the cache
+ * never holds data that was rolled back or has been replaced. Each entry is a
+ * private copy of the Recipe as it was loaded, and every lookup gets a copy of
+ * its own, so callers may change what they are given without another request
+ * seeing it. Hits, misses and evictions are counted.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+@Component
+public class RecipeCache {
+
+    /** Most recipes held */
+    @Value ( "${coffeemaker.recipe-cache.max-size:256}" )
+    private int                                maxSize;
+
+    /** Time a recipe is held for after it was loaded, in seconds */
+    @Value ( "${coffeemaker.recipe-cache.ttl-seconds:300}" )
+    private long                               ttl;
+
+    /** Cached recipes, least recently used first */
+    private final LinkedHashMap<String, Entry> entries    = new LinkedHashMap<String, Entry>( 16, 0.75f, true );
+
+    /** Guards entries */
+    private final ReentrantLock                lock       = new ReentrantLock();
+
+    /** Bumped on every invalidation, so that overlapping loads are dropped */
+    private final AtomicLong                   generation = new AtomicLong();
+
+    /** Number of lookups answered from the cache */
+    private final AtomicLong                   hits       = new AtomicLong();
+
+    /** Number of lookups that had to go to the database */
+    private final AtomicLong                   misses     = new AtomicLong();
+
+    /** Number of recipes evicted for size or age */
+    private final AtomicLong                   evictions  = new AtomicLong();
+
+    /**
+     * Gets a cached Recipe
+     *
+     * @param name
+     *            name of the Recipe
+     * @return a copy of the Recipe, null if it isn't cached
+     */
+    public Recipe get ( final String name ) {
+        lock.lock();
+        try {
+            final Entry entry = entries.get( name );
+            if ( null != entry && entry.expires - System.nanoTime() > 0 ) {
+                hits.incrementAndGet();
+                return entry.recipe.copy();
+            }
+            if ( null != entry ) {
+                entries.remove( name );
+                evictions.incrementAndGet();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Gets the current generation. Take this before loading a Recipe from the
+     * database and pass it to `put`.
+     *
+     * @return current generation
+     */
+    public long generation () {
+        return generation.get();
+    }
+
+    /**
+     * Caches a Recipe loaded from the database, once the current transaction
+     * commits, as long as no recipe has changed since the load started
+     *
+     * @param recipe
+     *            the Recipe that was loaded
+     * @param loadedAt
+     *            the generation when the load started
+     */
+    public void put ( final Recipe recipe, final long loadedAt ) {
+        // Copied now, before the caller can change it
+        final Recipe copy = recipe.copy();
+        TransactionHooks.afterCommit( () -> {
+            lock.lock();
+            try {
+                if ( generation.get() != loadedAt ) {
+                    return;
+                }
+                entries.put( copy.getName(), new Entry( copy, System.nanoTime() + TimeUnit.SECONDS.toNanos( ttl ) ) );
+                final Iterator<Entry> eldest = entries.values().iterator();
+                while ( entries.size() > maxSize ) {
+                    eldest.next();
+                    eldest.remove();
+                    evictions.incrementAndGet();
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+        } );
+    }
+
+    /**
+     * Drops one Recipe, now and again once the current transaction completes
+     *
+     * @param name
+     *            name of the Recipe that changed
+     */
+    public void invalidate ( final String name ) {
+        final Runnable drop = () -> {
+            lock.lock();
+            try {
+                generation.incrementAndGet();
+                entries.remove( name );
+            }
+            finally {
+                lock.unlock();
+            }
+        };
+        drop.run();
+        TransactionHooks.afterCompletion( drop );
+    }
+
+    /**
+     * Drops every Recipe, now and again once the current transaction completes
+     */
+    public void invalidateAll () {
+        final Runnable drop = () -> {
+            lock.lock();
+            try {
+                generation.incrementAndGet();
+                entries.clear();
+            }
+            finally {
+                lock.unlock();
+            }
+        };
+        drop.run();
+        TransactionHooks.afterCompletion( drop );
+    }
+
+    /**
+     * Gets the cache statistics
+     *
+     * @return number of hits, misses and evictions, and the current size
+     */
+    public Map<String, Long> getStats () {
+        final Map<String, Long> stats = new LinkedHashMap<String, Long>();
+        stats.put( "hits", hits.get() );
+        stats.put( "misses", misses.get() );
+        stats.put( "evictions", evictions.get() );
+        lock.lock();
+        try {
+            stats.put( "size", (long) entries.size() );
+        }
+        finally {
+            lock.unlock();
+        }
+        return stats;
+    }
+
+    /**
+     * A cached Recipe and when it expires
+     */
+    private static final class Entry {
+
+        /** Private copy of the Recipe, never handed out */
+        private final Recipe recipe;
+
+        /** System.nanoTime() at which the entry expires */
+        private final long   expires;
+
+        /**
+         * Creates an Entry
+         *
+         * @param recipe
+         *            the Recipe
+         * @param expires
+         *            System.nanoTime() at which the entry expires
+         */
+        private Entry ( final Recipe recipe, final long expires ) {
+            this.recipe = recipe;
+            this.expires = expires;
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions.Resource;
+
+/**
+ * Holds the list of all Recipes already encoded as JSON, plain and gzipped,
+ * so that the menu can be written straight to a response instead of being
+ * read and serialized on every request. The encoding is tagged with the
+ * version of the recipes it was read at, and is rebuilt the first time it is
+ * asked for after that version changes.
+ *
+ * A menu read inside a transaction is never kept, since that transaction may
+ * have changed recipes that are not committed yet.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+@Component
+public class RecipeMenu {
+
+    /** Number of recipes read from the database at a time */
+    private static final int PAGE_SIZE = 500;
+
+    /** Used to read the recipes */
+    @Autowired
+    private RecipeService    recipeService;
+
+    /** Versions of the recipes */
+    @Autowired
+    private ResourceVersions versions;
+
+    /** Used to encode the recipes, configured the same as the controllers' */
+    @Autowired
+    private ObjectMapper     mapper;
+
+    /** Most recently built menu, null until the first one is built */
+    private volatile Encoded current;
+
+    /**
+     * Gets the encoded menu, rebuilding it if the recipes have changed
+     *
+     * @return the current menu
+     */
+    public Encoded get () {
+        final Encoded menu = current;
+        final long version = versions.get( Resource.RECIPES );
+        if ( null != menu && menu.version == version ) {
+            return menu;
+        }
+        final Encoded rebuilt = encode( version );
+        if ( !TransactionSynchronizationManager.isActualTransactionActive() ) {
+            current = rebuilt;
+        }
+        return rebuilt;
+    }
+
+    /**
+     * Reads and encodes every Recipe. The recipes are streamed from the
+     * database a page at a time rather than loaded into one list.
+     *
+     * @param version
+     *            version of the recipes taken before reading them
+     * @return the encoded menu
+     */
+    private Encoded encode ( final long version ) {
+        try {
+            final ByteArrayOutputStream json = new ByteArrayOutputStream( 8192 );
+            JsonStreams.writeArray( mapper, recipeService.stream( PAGE_SIZE ), json );
+            final ByteArrayOutputStream gzipped = new ByteArrayOutputStream( json.size() / 4 + 64 );
+            try ( GZIPOutputStream out = new GZIPOutputStream( gzipped ) ) {
+                json.writeTo( out );
+            }
+            return new Encoded( version, json.toByteArray(), gzipped.toByteArray() );
+        }
+        catch ( final IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    /**
+     * The menu as JSON, and the same JSON gzipped. The arrays are shared and
+     * must not be modified.
+     */
+    public static final class Encoded {
+
+        /** Version of the recipes this was built from */
+        private final long   version;
+
+        /** UTF-8 JSON */
+        private final byte[] json;
+
+        /** Gzipped UTF-8 JSON */
+        private final byte[] gzip;
+
+        /**
+         * Creates an encoded menu
+         *
+         * @param version
+         *            version of the recipes
+         * @param json
+         *            UTF-8 JSON
+         * @param gzip
+         *            gzipped UTF-8 JSON
+         */
+        private Encoded ( final long version, final byte[] json, final byte[] gzip ) {
+            this.version = version;
+            this.json = json;
+            this.gzip = gzip;
+        }
+
+        /**
+         * Gets the JSON
+         *
+         * @return UTF-8 JSON
+         */
+        public byte[] getJson () {
+            return json;
+        }
+
+        /**
+         * Gets the gzipped JSON
+         *
+         * @return gzipped UTF-8 JSON
+         */
+        public byte[] getGzip () {
+            return gzip;
+        }
+    }
+
+}
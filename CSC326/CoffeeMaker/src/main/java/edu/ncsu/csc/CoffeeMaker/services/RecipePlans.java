@@ -0,0 +1,69 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.models.RecipePlan;
+
+/**
+ * Holds the compiled RecipePlan of each Recipe, so that a Recipe is only
+ * compiled once rather than on every purchase. Plans are keyed by recipe name
+ * and are thrown away whenever the RecipeService or IngredientService changes
+ * something they were compiled from.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+@Component
+public class RecipePlans {
+
+    /** Gives the ingredients their slots */
+    @Autowired
+    private IngredientCatalog                           catalog;
+
+    /** Compiled plans, keyed by recipe name */
+    private final ConcurrentHashMap<String, RecipePlan> plans = new ConcurrentHashMap<String, RecipePlan>();
+
+    /**
+     * Gets the plan for a Recipe, compiling it if there isn't one already
+     *
+     * @param recipe
+     *            the Recipe to get the plan for
+     * @return the compiled plan
+     */
+    public RecipePlan get ( final Recipe recipe ) {
+        if ( null == recipe.getName() ) {
+            return RecipePlan.compile( recipe, catalog::slotOf );
+        }
+        return plans.computeIfAbsent( recipe.getName(), name -> RecipePlan.compile( recipe, catalog::slotOf ) );
+    }
+
+    /**
+     * Discards the plan for one Recipe, now and again once the current
+     * transaction completes so that a plan compiled in the meantime from
+     * uncommitted (or rolled back) data is not kept.
+     *
+     * @param name
+     *            name of the Recipe that changed
+     */
+    public void invalidate ( final String name ) {
+        if ( null == name ) {
+            return;
+        }
+        plans.remove( name );
+        TransactionHooks.afterCompletion( () -> plans.remove( name ) );
+    }
+
+    /**
+     * Discards every plan, now and again once the current transaction
+     * completes
+     */
+    public void invalidateAll () {
+        plans.clear();
+        TransactionHooks.afterCompletion( plans::clear );
+    }
+
+}
@@ -1,13 +1,26 @@
 package edu.ncsu.csc.CoffeeMaker.services;
 
-import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import edu.ncsu.csc.CoffeeMaker.models.Recipe;
 import edu.ncsu.csc.CoffeeMaker.repositories.RecipeRepository;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions.Resource;
 
 /**
  * The RecipeService is used to handle CRUD operations on the Recipe model. In
@@ -22,12 +35,46 @@ import edu.ncsu.csc.CoffeeMaker.repositories.RecipeRepository;
 @Transactional
 public class RecipeService extends Service<Recipe, Long> {
 
+    /** Most ingredient IDs removed by one statement in `deleteAll` */
+    private static final int           DELETE_CHUNK = 1000;
+
     /**
      * RecipeRepository, to be autowired in by Spring and provide CRUD
      * operations on Recipe model.
      */
     @Autowired
-    private RecipeRepository recipeRepository;
+    private RecipeRepository           recipeRepository;
+
+    /**
+     * Compiled plans of the recipes, discarded when a recipe changes
+     */
+    @Autowired
+    private RecipePlans                plans;
+
+    /**
+     * Versions of the API's resources, bumped when recipes change
+     */
+    @Autowired
+    private ResourceVersions           versions;
+
+    /**
+     * Recipes recently looked up by name
+     */
+    @Autowired
+    private RecipeCache                cache;
+
+    /**
+     * Used to load the recipes missing from the cache in a transaction of
+     * their own, when the caller has none
+     */
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Statements sent in one JDBC batch by `saveAll`
+     */
+    @Value ( "${coffeemaker.batch-size.recipe:${coffeemaker.batch-size.default:50}}" )
+    private int                        batchSize;
 
     /**
      * Gets recipe repository
@@ -40,14 +87,195 @@ public class RecipeService extends Service<Recipe, Long> {
     }
 
     /**
-     * Find a recipe with the provided name
+     * Returns all Recipes, fetching their ingredients in the same query
+     *
+     * @return All recipes stored in the database.
+     */
+    @Transactional ( readOnly = true )
+    @Override
+    public List<Recipe> findAll () {
+        return recipeRepository.findAllWithIngredients();
+    }
+
+    /**
+     * Returns all Recipes like `findAll`, but read from the primary database
+     * even when read-only transactions go to a replica, for views that are
+     * kept after the read and so must not be built from a replica that is
+     * behind. Joins the caller's transaction if there is one.
+     *
+     * @return All recipes stored in the database.
+     */
+    public List<Recipe> findAllFromPrimary () {
+        return recipeRepository.findAllWithIngredients();
+    }
+
+    /**
+     * Recipes can also be paged through by name, which is always set
+     *
+     * @return id and name
+     */
+    @Override
+    protected Set<String> getSortProperties () {
+        return Set.of( "id", "name" );
+    }
+
+    @Override
+    protected int getBatchSize () {
+        return batchSize;
+    }
+
+    /**
+     * Saves the Recipe and discards its compiled plan and cached copy
+     *
+     * @param obj
+     *            The Recipe to save into the database.
+     */
+    @Override
+    public void save ( final Recipe obj ) {
+        super.save( obj );
+        plans.invalidate( obj.getName() );
+        versions.bump( Resource.RECIPES, Resource.INGREDIENTS );
+        cache.invalidate( obj.getName() );
+    }
+
+    /**
+     * Saves the Recipes and discards all compiled plans and cached recipes
+     *
+     * @param objects
+     *            The Recipes to save into the database.
+     */
+    @Override
+    public void saveAll ( final List<Recipe> objects ) {
+        super.saveAll( objects );
+        plans.invalidateAll();
+        versions.bump( Resource.RECIPES, Resource.INGREDIENTS );
+        cache.invalidateAll();
+    }
+
+    /**
+     * Deletes the Recipe and discards its compiled plan and cached copy
+     *
+     * @param obj
+     *            The Recipe to delete from the database.
+     */
+    @Override
+    public void delete ( final Recipe obj ) {
+        super.delete( obj );
+        plans.invalidate( obj.getName() );
+        versions.bump( Resource.RECIPES, Resource.INGREDIENTS );
+        cache.invalidate( obj.getName() );
+    }
+
+    /**
+     * Deletes all Recipes and discards all compiled plans and cached recipes.
+     * The ingredients belong to their recipes, so they go too: the links
+     * between them are removed in one statement, then the ingredients a
+     * thousand IDs at a time, then the recipes in one more.
+     */
+    @Override
+    public void deleteAll () {
+        final List<Long> ingredientIds = recipeRepository.findIngredientIds();
+        recipeRepository.deleteIngredientLinks();
+        for ( int from = 0; from < ingredientIds.size(); from += DELETE_CHUNK ) {
+            recipeRepository.deleteIngredientsByIdIn(
+                    ingredientIds.subList( from, Math.min( from + DELETE_CHUNK, ingredientIds.size() ) ) );
+        }
+        super.deleteAll();
+        plans.invalidateAll();
+        versions.bump( Resource.RECIPES, Resource.INGREDIENTS );
+        cache.invalidateAll();
+    }
+
+    /**
+     * Find a recipe with the provided name. Recently used recipes are served
+     * from the RecipeCache without going to the database; the cache is
+     * checked before any transaction is begun, so a hit takes no connection.
+     * A miss is loaded in a read-write transaction, or the caller's if there
+     * is one, so that it is read from the primary database: what it reads is
+     * cached, and a replica may still be behind a change that has just
+     * emptied the cache. When joined to a caller's read-only transaction, the
+     * recipe is returned but not cached.
      *
      * @param name
      *            Name of the recipe to find
      * @return found recipe, null if none
      */
+    @Transactional ( propagation = Propagation.SUPPORTS )
     public Recipe findByName ( final String name ) {
-        return recipeRepository.findByName( name );
+        final Recipe cached = cache.get( name );
+        if ( null != cached ) {
+            return cached;
+        }
+        final long generation = cache.generation();
+        return new TransactionTemplate( transactionManager ).execute( status -> {
+            final Recipe recipe = recipeRepository.findByName( name );
+            if ( null != recipe && !TransactionSynchronizationManager.isCurrentTransactionReadOnly() ) {
+                cache.put( recipe, generation );
+            }
+            return recipe;
+        } );
+    }
+
+    /**
+     * Find all of the recipes with the provided names. Cached recipes are used
+     * where possible, without a transaction as for `findByName`, and the rest
+     * are loaded with a single query, from the primary database.
+     *
+     * @param names
+     *            Names of the recipes to find
+     * @return found recipes, keyed by name; names with no recipe are left out
+     */
+    @Transactional ( propagation = Propagation.SUPPORTS )
+    public Map<String, Recipe> findByNames ( final Collection<String> names ) {
+        final Map<String, Recipe> found = new HashMap<String, Recipe>();
+        final List<String> missing = new ArrayList<String>();
+        for ( final String name : names ) {
+            final Recipe cached = cache.get( name );
+            if ( null != cached ) {
+                found.put( name, cached );
+            }
+            else {
+                missing.add( name );
+            }
+        }
+        if ( missing.isEmpty() ) {
+            return found;
+        }
+        final long generation = cache.generation();
+        return new TransactionTemplate( transactionManager ).execute( status -> {
+            final boolean cacheable = !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+            for ( final Recipe recipe : recipeRepository.findByNameIn( missing ) ) {
+                found.put( recipe.getName(), recipe );
+                if ( cacheable ) {
+                    cache.put( recipe, generation );
+                }
+            }
+            return found;
+        } );
+    }
+
+    /**
+     * Gets the statistics of the RecipeCache used by `findByName`
+     *
+     * @return number of hits, misses and evictions, and the current size
+     */
+    public Map<String, Long> getCacheStats () {
+        return cache.getStats();
+    }
+
+    /**
+     * Finds which of the provided names are already used by a Recipe
+     *
+     * @param names
+     *            names to look for
+     * @return the names that are taken
+     */
+    @Transactional ( readOnly = true )
+    public Set<String> findExistingNames ( final Collection<String> names ) {
+        if ( names.isEmpty() ) {
+            return new HashSet<String>();
+        }
+        return new HashSet<String>( recipeRepository.findNamesIn( names ) );
     }
 
 }
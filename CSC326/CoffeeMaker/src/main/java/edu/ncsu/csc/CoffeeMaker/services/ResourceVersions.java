@@ -0,0 +1,329 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicStampedReference;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Keeps a version for each collection the API serves, which the controllers
+ * use as ETags, so that a client re-reading something that hasn't changed gets
+ * a 304 without the collection being read.
+ *
+ * The versions are read from memory, so checking one takes no query. Recipes
+ * and Ingredients have a row each in the resource_version table, which the
+ * Services move forward in the same transaction as their change; the new
+ * value is read back in that transaction and only copied into memory once it
+ * commits, so no other reader sees the new version before the new data. The
+ * transaction making the change sees its new version straight away. The rows
+ * are read again every `coffeemaker.versions.refresh-ms`, to pick up changes
+ * made by other instances of the application; versions in memory only ever
+ * move forward, so a refresh that races with a commit can't take one back.
+ *
+ * The Inventory's version is taken from the Inventory itself: its ID with its
+ * `@Version`, or, when the InventoryLog is enabled, the sequence number of the
+ * last record logged. The ID and version are read once and kept until the
+ * InventoryService commits a change, or the next refresh; until the change
+ * commits, the transaction making it reads them from the database.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+@Component
+public class ResourceVersions {
+
+    /**
+     * The collections that are versioned
+     */
+    public enum Resource {
+        /** All Recipes */
+        RECIPES,
+        /** All Ingredients */
+        INGREDIENTS,
+        /** The Inventory */
+        INVENTORY
+    }
+
+    /** Logs refreshes that fail */
+    private static final Logger                  LOG  = LoggerFactory.getLogger( ResourceVersions.class );
+
+    /** Stands for there being no Inventory */
+    private static final long[]                  NONE = new long[0];
+
+    /** Used to read and move forward the versions */
+    @Autowired
+    private JdbcTemplate                         jdbcTemplate;
+
+    /** Holds the Inventory's amounts when enabled, so versions it too */
+    @Autowired
+    private InventoryLog                         log;
+
+    /** Milliseconds between reads of the versions from the database */
+    @Value ( "${coffeemaker.versions.refresh-ms:1000}" )
+    private long                                 refreshDelay;
+
+    /** Latest version of each resource, by ordinal; the Inventory's unused */
+    private final AtomicLongArray                versions  = new AtomicLongArray( Resource.values().length );
+
+    /** Set once the versions have first been read from the database */
+    private volatile boolean                     loaded;
+
+    /**
+     * ID and version of the Inventory, null when they have to be read again;
+     * the stamp counts the changes, so a read that started before one can't
+     * put back what it read
+     */
+    private final AtomicStampedReference<long[]> inventory = new AtomicStampedReference<long[]>( null, 0 );
+
+    /** Reads the versions from the database every `refreshDelay` */
+    private ScheduledExecutorService             refresher;
+
+    /**
+     * Starts reading the versions from the database now and then
+     */
+    @PostConstruct
+    public void start () {
+        refresher = Executors.newSingleThreadScheduledExecutor( r -> {
+            final Thread thread = new Thread( r, "resource-versions" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        refresher.scheduleWithFixedDelay( () -> {
+            try {
+                refresh();
+            }
+            catch ( final RuntimeException e ) {
+                LOG.warn( "Resource versions could not be refreshed", e );
+            }
+        }, refreshDelay, refreshDelay, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Stops the refreshes
+     */
+    @PreDestroy
+    public void stop () {
+        if ( null != refresher ) {
+            refresher.shutdownNow();
+        }
+    }
+
+    /**
+     * Gets the current version of a resource
+     *
+     * @param resource
+     *            the resource
+     * @return its version; for the Inventory, only comparable while it keeps
+     *         the same ID
+     */
+    public long get ( final Resource resource ) {
+        if ( Resource.INVENTORY == resource ) {
+            final long[] inventory = inventory();
+            return NONE == inventory ? 0 : log.isEnabled() ? log.getSequence() : inventory[1];
+        }
+        final Map<Resource, Long> pending = pending();
+        if ( null != pending && pending.containsKey( resource ) ) {
+            return pending.get( resource );
+        }
+        if ( !loaded ) {
+            refresh();
+        }
+        return versions.get( resource.ordinal() );
+    }
+
+    /**
+     * Gets the strong ETag for the current version of a resource
+     *
+     * @param resource
+     *            the resource
+     * @return quoted ETag
+     */
+    public String etag ( final Resource resource ) {
+        return "\"" + resource.name().toLowerCase() + "-" + tag( resource ) + "\"";
+    }
+
+    /**
+     * Gets the strong ETag for one representation of the current version of a
+     * resource, such as its gzipped encoding
+     *
+     * @param resource
+     *            the resource
+     * @param variant
+     *            name of the representation
+     * @return quoted ETag
+     */
+    public String etag ( final Resource resource, final String variant ) {
+        return "\"" + resource.name().toLowerCase() + "-" + tag( resource ) + "-" + variant + "\"";
+    }
+
+    /**
+     * Records that resources have changed, as part of the current transaction.
+     * The rows of Recipes and Ingredients are updated in one statement, which
+     * locks them in key order, so two transactions bumping the same resources
+     * in a different order can't deadlock; the versions in memory follow once
+     * the transaction commits, and until then only the transaction itself
+     * sees the new versions. The Inventory is versioned by its own changes, so
+     * for it this only drops the ID and version kept in memory, once the
+     * change commits.
+     *
+     * @param changed
+     *            the resources that changed
+     */
+    public void bump ( final Resource... changed ) {
+        final Map<Resource, Long> bumped = new EnumMap<Resource, Long>( Resource.class );
+        final List<String> names = new ArrayList<String>();
+        for ( final Resource resource : changed ) {
+            if ( Resource.INVENTORY == resource ) {
+                bumped.put( resource, 0L );
+                TransactionHooks.afterCommit( this::forgetInventory );
+            }
+            else {
+                names.add( resource.name() );
+            }
+        }
+        if ( !names.isEmpty() ) {
+            final String in = String.join( ", ", Collections.nCopies( names.size(), "?" ) );
+            jdbcTemplate.update( "UPDATE resource_version SET version = version + 1 WHERE name IN (" + in + ")",
+                    names.toArray() );
+            final Map<Resource, Long> read = new EnumMap<Resource, Long>( Resource.class );
+            jdbcTemplate.query( "SELECT name, version FROM resource_version WHERE name IN (" + in + ")",
+                    rs -> { read.put( Resource.valueOf( rs.getString( 1 ) ), rs.getLong( 2 ) ); },
+                    names.toArray() );
+            bumped.putAll( read );
+            TransactionHooks.afterCommit( () -> advance( read ) );
+        }
+        if ( bumped.isEmpty() || !TransactionSynchronizationManager.isSynchronizationActive() ) {
+            return;
+        }
+        Map<Resource, Long> pending = pending();
+        if ( null == pending ) {
+            pending = new EnumMap<Resource, Long>( Resource.class );
+            TransactionSynchronizationManager.bindResource( this, pending );
+            TransactionHooks
+                    .afterCompletion( () -> TransactionSynchronizationManager.unbindResourceIfPossible( this ) );
+        }
+        pending.putAll( bumped );
+    }
+
+    /**
+     * Reads the versions of Recipes and Ingredients from the database, and the
+     * ID and version of the Inventory, to catch up with changes made by other
+     * instances of the application
+     */
+    void refresh () {
+        final Map<Resource, Long> read = new EnumMap<Resource, Long>( Resource.class );
+        jdbcTemplate.query( "SELECT name, version FROM resource_version",
+                rs -> { read.put( Resource.valueOf( rs.getString( 1 ) ), rs.getLong( 2 ) ); } );
+        advance( read );
+        loaded = true;
+
+        final int[] stamp = new int[1];
+        final long[] kept = inventory.get( stamp );
+        inventory.compareAndSet( kept, readInventory(), stamp[0], stamp[0] );
+    }
+
+    /**
+     * Moves versions in memory forward to those read from the database
+     *
+     * @param read
+     *            versions, keyed by resource
+     */
+    private void advance ( final Map<Resource, Long> read ) {
+        for ( final Map.Entry<Resource, Long> entry : read.entrySet() ) {
+            versions.accumulateAndGet( entry.getKey().ordinal(), entry.getValue(), Math::max );
+        }
+    }
+
+    /**
+     * Gets the versions bumped by the current transaction, which only it sees
+     * until it commits
+     *
+     * @return the versions, keyed by resource; null if it has bumped none
+     */
+    @SuppressWarnings ( "unchecked" )
+    private Map<Resource, Long> pending () {
+        return (Map<Resource, Long>) TransactionSynchronizationManager.getResource( this );
+    }
+
+    /**
+     * Drops the ID and version of the Inventory kept in memory, so that they
+     * are read again before next use
+     */
+    private void forgetInventory () {
+        final int[] stamp = new int[1];
+        long[] kept = inventory.get( stamp );
+        while ( !inventory.compareAndSet( kept, null, stamp[0], stamp[0] + 1 ) ) {
+            kept = inventory.get( stamp );
+        }
+    }
+
+    /**
+     * Gets the part of an ETag that identifies the current version of a
+     * resource
+     *
+     * @param resource
+     *            the resource
+     * @return the version; for the Inventory, with its ID in front
+     */
+    private String tag ( final Resource resource ) {
+        if ( Resource.INVENTORY != resource ) {
+            return Long.toString( get( resource ) );
+        }
+        final long[] inventory = inventory();
+        if ( NONE == inventory ) {
+            return "none";
+        }
+        // Purchases are only logged, so the log's sequence is the version
+        return inventory[0] + "." + ( log.isEnabled() ? log.getSequence() : inventory[1] );
+    }
+
+    /**
+     * Gets the ID and version of the Inventory in use, reading them only if
+     * they have changed since last read, or the current transaction is
+     * changing them
+     *
+     * @return the ID and version, NONE if there is no Inventory
+     */
+    private long[] inventory () {
+        final Map<Resource, Long> pending = pending();
+        if ( null != pending && pending.containsKey( Resource.INVENTORY ) ) {
+            return readInventory();
+        }
+        final int[] stamp = new int[1];
+        final long[] kept = inventory.get( stamp );
+        if ( null != kept ) {
+            return kept;
+        }
+        final long[] read = readInventory();
+        inventory.compareAndSet( null, read, stamp[0], stamp[0] );
+        return read;
+    }
+
+    /**
+     * Reads the ID and version of the Inventory in use, the oldest one
+     *
+     * @return the ID and version, NONE if there is no Inventory
+     */
+    private long[] readInventory () {
+        return jdbcTemplate.query( "SELECT id, version FROM inventory ORDER BY id LIMIT 1",
+                rs -> rs.next() ? new long[] { rs.getLong( 1 ), rs.getLong( 2 ) } : NONE );
+    }
+
+}
@@ -1,10 +1,37 @@
 package edu.ncsu.csc.CoffeeMaker.services;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import org.hibernate.Session;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.GenericTypeResolver;
+import org.springframework.core.convert.ConversionException;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.support.DefaultConversionService;
 import org.springframework.data.domain.Example;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import edu.ncsu.csc.CoffeeMaker.models.DomainObject;
 
@@ -32,6 +59,24 @@ import edu.ncsu.csc.CoffeeMaker.models.DomainObject;
  */
 abstract public class Service<T extends DomainObject, K> {
 
+    /** Name of the ID property, which every entity has and pages break ties on */
+    private static final String            ID          = "id";
+
+    /** Used to turn the values in a cursor back into properties */
+    private static final ConversionService CONVERSIONS = DefaultConversionService.getSharedInstance();
+
+    /** Used for the keyset queries that Spring Data can't generate */
+    @PersistenceContext
+    private EntityManager                  entityManager;
+
+    /** Begins the read-only transactions that `stream` reads its pages in */
+    @Autowired
+    private PlatformTransactionManager     transactionManager;
+
+    /** Statements sent in one JDBC batch by `saveAll`, unless overridden */
+    @Value ( "${coffeemaker.batch-size.default:50}" )
+    private int                            batchSize;
+
     /**
      * Returns the Repository that Spring uses for interacting with the
      * database. This is the only method that _must_ be overridden in child
@@ -60,21 +105,199 @@ abstract public class Service<T extends DomainObject, K> {
      *
      * @return All records stored in the database.
      */
+    @Transactional ( readOnly = true )
     public List<T> findAll () {
         return getRepository().findAll();
     }
 
+    /**
+     * Returns one page of records, ordered by the `sort` property and then by
+     * ID. Pages are found by keyset rather than offset: the cursor records
+     * where the previous page ended and the query starts straight after it, so
+     * a page deep into the records costs no more than the first one.
+     *
+     * @param sort
+     *            Property to order by; must be one of `getSortProperties()`
+     * @param descending
+     *            Whether to order from highest to lowest
+     * @param after
+     *            The previous page's `nextCursor`, or null for the first page
+     * @param limit
+     *            Most records to return
+     * @return The page, with a cursor for the next one if there are more.
+     * @throws IllegalArgumentException
+     *             if the sort property, cursor or limit is not valid
+     */
+    @Transactional ( readOnly = true )
+    @SuppressWarnings ( { "rawtypes", "unchecked" } )
+    public KeysetPage<T> findPage ( final String sort, final boolean descending, final String after,
+            final int limit ) {
+        if ( !getSortProperties().contains( sort ) ) {
+            throw new IllegalArgumentException( "Cannot sort by " + sort );
+        }
+        if ( limit < 1 ) {
+            throw new IllegalArgumentException( "Limit must be at least 1" );
+        }
+
+        final Class<T> type = getEntityType();
+        final CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        final CriteriaQuery<T> query = builder.createQuery( type );
+        final Root<T> root = query.from( type );
+        final Path<Comparable> key = root.get( sort );
+        final Path<Comparable> id = root.get( ID );
+
+        if ( null != after ) {
+            final String[] cursor = decodeCursor( after );
+            if ( !ID.equals( sort ) && null == cursor[1] ) {
+                throw new IllegalArgumentException( "Invalid cursor" );
+            }
+            try {
+                final Comparable lastId = CONVERSIONS.convert( cursor[0], id.getJavaType() );
+                Predicate next = descending ? builder.lessThan( id, lastId ) : builder.greaterThan( id, lastId );
+                if ( !ID.equals( sort ) ) {
+                    final Comparable lastKey = CONVERSIONS.convert( cursor[1], key.getJavaType() );
+                    next = builder.or(
+                            descending ? builder.lessThan( key, lastKey ) : builder.greaterThan( key, lastKey ),
+                            builder.and( builder.equal( key, lastKey ), next ) );
+                }
+                query.where( next );
+            }
+            catch ( final ConversionException e ) {
+                throw new IllegalArgumentException( "Invalid cursor", e );
+            }
+        }
+        if ( ID.equals( sort ) ) {
+            query.orderBy( descending ? builder.desc( id ) : builder.asc( id ) );
+        }
+        else {
+            query.orderBy( descending ? builder.desc( key ) : builder.asc( key ),
+                    descending ? builder.desc( id ) : builder.asc( id ) );
+        }
+
+        final List<T> rows = entityManager.createQuery( query ).setMaxResults( limit + 1 ).getResultList();
+        if ( rows.size() <= limit ) {
+            return new KeysetPage<T>( rows, null );
+        }
+        final List<T> content = new ArrayList<T>( rows.subList( 0, limit ) );
+        return new KeysetPage<T>( content, encodeCursor( content.get( limit - 1 ), sort ) );
+    }
+
+    /**
+     * Returns every record of this type, in ID order, read a page at a time as
+     * the stream is consumed, so that only one page needs to be in memory at
+     * once. Each page is read in a read-only transaction of its own, or in
+     * the caller's if there is one. Outside of a transaction, each page's
+     * records are detached once the stream moves past them; inside one, the
+     * records already consumed stay in the caller's persistence context.
+     *
+     * @param pageSize
+     *            Number of records to read at a time
+     * @return All records stored in the database.
+     */
+    public Stream<T> stream ( final int pageSize ) {
+        final TransactionTemplate readOnly = new TransactionTemplate( transactionManager );
+        readOnly.setReadOnly( true );
+        return Stream.iterate( readOnly.execute( status -> findPage( ID, false, null, pageSize ) ),
+                Objects::nonNull, page -> {
+                    if ( !TransactionSynchronizationManager.isActualTransactionActive() ) {
+                        page.getContent().forEach( entityManager::detach );
+                    }
+                    return null == page.getNextCursor() ? null
+                            : readOnly.execute(
+                                    status -> findPage( ID, false, page.getNextCursor(), pageSize ) );
+                } ).flatMap( page -> page.getContent().stream() );
+    }
+
+    /**
+     * Returns the properties that `findPage` can order by. Only ID by default;
+     * Services can add properties that are never null.
+     *
+     * @return Names of the properties.
+     */
+    protected Set<String> getSortProperties () {
+        return Collections.singleton( ID );
+    }
+
+    /**
+     * Works out the entity class this Service handles from its type
+     * parameters
+     *
+     * @return The entity class.
+     */
+    @SuppressWarnings ( "unchecked" )
+    private Class<T> getEntityType () {
+        return (Class<T>) GenericTypeResolver.resolveTypeArguments( getClass(), Service.class )[0];
+    }
+
+    /**
+     * Builds the cursor that follows a record: its ID and, unless sorting by
+     * ID, its sort property
+     *
+     * @param last
+     *            Last record on a page
+     * @param sort
+     *            Property the page is ordered by
+     * @return The cursor.
+     */
+    private static String encodeCursor ( final DomainObject last, final String sort ) {
+        String cursor = String.valueOf( last.getId() );
+        if ( !ID.equals( sort ) ) {
+            cursor += ":" + PropertyAccessorFactory.forDirectFieldAccess( last ).getPropertyValue( sort );
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString( cursor.getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    /**
+     * Splits a cursor back into the ID and sort property it was built from
+     *
+     * @param cursor
+     *            The cursor
+     * @return The ID, followed by the sort property if there was one.
+     * @throws IllegalArgumentException
+     *             if the cursor is not one `encodeCursor` built
+     */
+    private static String[] decodeCursor ( final String cursor ) {
+        final String decoded = new String( Base64.getUrlDecoder().decode( cursor ), StandardCharsets.UTF_8 );
+        final int split = decoded.indexOf( ':' );
+        return split < 0 ? new String[] { decoded, null }
+                : new String[] { decoded.substring( 0, split ), decoded.substring( split + 1 ) };
+    }
+
     /**
      * Saves a collection of elements to the database. If an error occurs saving
      * any of them, no objects will be saved. This makes it handy for ensuring
      * database consistency where all records should exist together.
      *
+     * The inserts and updates are sent in JDBC batches of `getBatchSize()`
+     * statements. Hibernate orders them by entity (`hibernate.order_inserts`
+     * and `hibernate.order_updates`), so the ingredients cascaded from a list
+     * of recipes are batched together too rather than interleaved with them.
+     *
      * @param objects
      *            A List of objects to save to the database.
      */
     public void saveAll ( final List<T> objects ) {
-        getRepository().saveAll( objects );
-        getRepository().flush();
+        final Session session = entityManager.unwrap( Session.class );
+        final Integer previous = session.getJdbcBatchSize();
+        session.setJdbcBatchSize( getBatchSize() );
+        try {
+            getRepository().saveAll( objects );
+            getRepository().flush();
+        }
+        finally {
+            session.setJdbcBatchSize( previous );
+        }
+    }
+
+    /**
+     * Gets the number of statements `saveAll` sends in one JDBC batch. This is
+     * `coffeemaker.batch-size.default` (50 if not set); override it to give a
+     * Service its own.
+     *
+     * @return statements per batch
+     */
+    protected int getBatchSize () {
+        return batchSize;
     }
 
     /**
@@ -93,9 +316,18 @@ abstract public class Service<T extends DomainObject, K> {
      * Removes all records of a given type from the database. For example,
      * `UserService.deleteAll()` would delete all Users. Be very careful when
      * calling this.
+     *
+     * The records are removed with one bulk delete rather than loaded and
+     * removed one at a time, so nothing is cascaded by JPA. A Service whose
+     * entity owns other rows (a collection, or children it cascades to) must
+     * override this to remove those first. Pending changes are flushed before
+     * the delete, and the persistence context is cleared after it so that no
+     * removed entity is still served from it.
      */
     public void deleteAll () {
-        getRepository().deleteAll();
+        entityManager.flush();
+        getRepository().deleteAllInBatch();
+        entityManager.clear();
     }
 
     /**
@@ -105,6 +337,7 @@ abstract public class Service<T extends DomainObject, K> {
      *
      * @return The number of records in the DB.
      */
+    @Transactional ( readOnly = true )
     public long count () {
         return getRepository().count();
     }
@@ -130,6 +363,7 @@ abstract public class Service<T extends DomainObject, K> {
      *            Id to check for existence of
      * @return If the object was found
      */
+    @Transactional ( readOnly = true )
     public boolean existsById ( final K id ) {
         return getRepository().existsById( id );
     }
@@ -141,6 +375,7 @@ abstract public class Service<T extends DomainObject, K> {
      *            ID of the object to find
      * @return The found object, null if none
      */
+    @Transactional ( readOnly = true )
     public T findById ( final K id ) {
         if ( null == id ) {
             return null;
@@ -0,0 +1,62 @@
+package edu.ncsu.csc.CoffeeMaker.services;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Runs actions when the current transaction finishes, for the in-memory
+ * caches that have to stay in step with what was actually committed. If there
+ * is no transaction, the action runs straight away.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+final class TransactionHooks {
+
+    /**
+     * Not instantiable
+     */
+    private TransactionHooks () {
+    }
+
+    /**
+     * Runs an action once the current transaction completes, whether it
+     * commits or rolls back
+     *
+     * @param action
+     *            action to run
+     */
+    static void afterCompletion ( final Runnable action ) {
+        if ( !TransactionSynchronizationManager.isSynchronizationActive() ) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion ( final int status ) {
+                action.run();
+            }
+        } );
+    }
+
+    /**
+     * Runs an action once the current transaction commits; if it rolls back
+     * the action is dropped
+     *
+     * @param action
+     *            action to run
+     */
+    static void afterCommit ( final Runnable action ) {
+        if ( !TransactionSynchronizationManager.isSynchronizationActive() ) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit () {
+                action.run();
+            }
+        } );
+    }
+
+}
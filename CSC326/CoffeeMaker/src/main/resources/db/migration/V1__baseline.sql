@@ -0,0 +1,38 @@
+-- CoffeeMaker schema as Hibernate's ddl-auto=update used to leave it, with the
+-- whole Inventory serialized into ingredient_map. Databases that already have
+-- these tables are baselined at this version instead of running it, and are
+-- brought up to date by the migrations after it.
+
+CREATE TABLE hibernate_sequence (
+    next_val BIGINT
+) ENGINE = InnoDB;
+
+INSERT INTO hibernate_sequence (next_val) VALUES (1);
+
+CREATE TABLE ingredient (
+    id     BIGINT NOT NULL,
+    amount INTEGER,
+    name   VARCHAR(255),
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE recipe (
+    id    BIGINT NOT NULL,
+    name  VARCHAR(255),
+    price INTEGER,
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE recipe_ingredients (
+    recipe_id      BIGINT NOT NULL,
+    ingredients_id BIGINT NOT NULL,
+    CONSTRAINT uk_recipe_ingredients_ingredient UNIQUE (ingredients_id),
+    CONSTRAINT fk_recipe_ingredients_recipe FOREIGN KEY (recipe_id) REFERENCES recipe (id),
+    CONSTRAINT fk_recipe_ingredients_ingredient FOREIGN KEY (ingredients_id) REFERENCES ingredient (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE inventory (
+    id             BIGINT NOT NULL,
+    ingredient_map TINYBLOB,
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
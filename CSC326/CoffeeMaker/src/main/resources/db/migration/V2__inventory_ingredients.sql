@@ -0,0 +1,17 @@
+-- Gives each of the Inventory's ingredients a row of its own in
+-- inventory_ingredient, in place of the serialized ingredient_map, and adds the
+-- Inventory's @Version and the sequence number of the last InventoryLog record
+-- it reflects. The amounts are copied out of ingredient_map by
+-- InventoryMigration (version 2.1), which then drops the column.
+
+ALTER TABLE inventory
+    ADD COLUMN version      BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN wal_sequence BIGINT NOT NULL DEFAULT 0;
+
+CREATE TABLE inventory_ingredient (
+    inventory_id BIGINT NOT NULL,
+    ingredient   VARCHAR(255) NOT NULL,
+    amount       INTEGER,
+    PRIMARY KEY (inventory_id, ingredient),
+    CONSTRAINT fk_inventory_ingredient_inventory FOREIGN KEY (inventory_id) REFERENCES inventory (id)
+) ENGINE = InnoDB;
@@ -0,0 +1,8 @@
+-- Recipes are looked up by name on every purchase and every edit, and no two
+-- recipes may share a name.
+CREATE UNIQUE INDEX ux_recipe_name ON recipe (name);
+
+-- Ingredient rows are shared by the ingredient list and by every recipe that
+-- uses an ingredient, so the same name appears many times; index it without
+-- making it unique.
+CREATE INDEX ix_ingredient_name ON ingredient (name);
@@ -0,0 +1,27 @@
+-- Each entity gets its own ID sequence in place of the shared
+-- hibernate_sequence. MySQL has no sequences, so each one is a one-row table
+-- that Hibernate moves forward a block of IDs at a time. Every sequence starts
+-- past both the shared sequence and the entity's own highest ID.
+
+CREATE TABLE recipe_seq (
+    next_val BIGINT
+) ENGINE = InnoDB;
+
+INSERT INTO recipe_seq (next_val)
+    SELECT GREATEST(s.next_val, (SELECT COALESCE(MAX(id), 0) + 1 FROM recipe)) FROM hibernate_sequence s;
+
+CREATE TABLE ingredient_seq (
+    next_val BIGINT
+) ENGINE = InnoDB;
+
+INSERT INTO ingredient_seq (next_val)
+    SELECT GREATEST(s.next_val, (SELECT COALESCE(MAX(id), 0) + 1 FROM ingredient)) FROM hibernate_sequence s;
+
+CREATE TABLE inventory_seq (
+    next_val BIGINT
+) ENGINE = InnoDB;
+
+INSERT INTO inventory_seq (next_val)
+    SELECT GREATEST(s.next_val, (SELECT COALESCE(MAX(id), 0) + 1 FROM inventory)) FROM hibernate_sequence s;
+
+DROP TABLE hibernate_sequence;
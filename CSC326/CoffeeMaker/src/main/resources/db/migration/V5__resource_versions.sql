@@ -0,0 +1,15 @@
+-- One row for each collection the API serves ETags for, moved forward in the
+-- same transaction as every change to the collection, so that every instance
+-- of the application hands out the same ETags. Versions start from the time
+-- the table is created, so a database created again doesn't reuse ETags that
+-- clients may still hold.
+
+CREATE TABLE resource_version (
+    name    VARCHAR(32) NOT NULL,
+    version BIGINT NOT NULL,
+    PRIMARY KEY (name)
+) ENGINE = InnoDB;
+
+INSERT INTO resource_version (name, version) VALUES
+    ('RECIPES', UNIX_TIMESTAMP() * 1000),
+    ('INGREDIENTS', UNIX_TIMESTAMP() * 1000);
@@ -1,9 +1,14 @@
 package edu.ncsu.csc.CoffeeMaker.api;
 
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.transaction.Transactional;
 
 import org.junit.jupiter.api.Assertions;
@@ -16,8 +21,10 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import edu.ncsu.csc.CoffeeMaker.common.TestUtils;
+import edu.ncsu.csc.CoffeeMaker.forms.OrderForm;
 import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
 import edu.ncsu.csc.CoffeeMaker.models.Inventory;
 import edu.ncsu.csc.CoffeeMaker.models.Recipe;
@@ -153,4 +160,64 @@ public class APICoffeeTest {
 
     }
 
+    /**
+     * Test purchasing a beverage asynchronously. Not transactional, since the
+     * purchase is made on another thread and has to see the recipe and
+     * inventory from setup().
+     *
+     * @throws Exception
+     *             if coffee could not be made
+     */
+    @Test
+    public void testPurchaseAsync () throws Exception {
+        final MvcResult pending = mvc
+                .perform( post( "/api/v1/makecoffee/async/Coffee" ).contentType( MediaType.APPLICATION_JSON )
+                        .content( TestUtils.asJsonString( 60 ) ) )
+                .andExpect( request().asyncStarted() ).andReturn();
+        mvc.perform( asyncDispatch( pending ) ).andExpect( status().isOk() )
+                .andExpect( jsonPath( "$.message" ).value( 10 ) );
+        Assertions.assertEquals( 12, (int) iService.getInventory().getAmount( "Coffee" ) );
+
+        final MvcResult poor = mvc
+                .perform( post( "/api/v1/makecoffee/async/Coffee" ).contentType( MediaType.APPLICATION_JSON )
+                        .content( TestUtils.asJsonString( 40 ) ) )
+                .andExpect( request().asyncStarted() ).andReturn();
+        mvc.perform( asyncDispatch( poor ) ).andExpect( status().isConflict() )
+                .andExpect( jsonPath( "$.message" ).value( "Not enough money paid" ) );
+    }
+
+    /**
+     * Test purchasing several beverages in one batch, where some of the orders
+     * can't be made
+     *
+     * @throws Exception
+     *             if the batch could not be sent
+     */
+    @Test
+    @Transactional
+    public void testPurchaseBatch () throws Exception {
+        final List<OrderForm> orders = new ArrayList<OrderForm>();
+        orders.add( new OrderForm( "Coffee", 60 ) );
+        orders.add( new OrderForm( "Coffee", 40 ) );
+        orders.add( new OrderForm( "Tea", 50 ) );
+        // 15 coffee in the inventory is enough for 5 cups at 3 each
+        for ( int i = 0; i < 5; i++ ) {
+            orders.add( new OrderForm( "Coffee", 50 ) );
+        }
+
+        mvc.perform( post( "/api/v1/makecoffee/batch" ).contentType( MediaType.APPLICATION_JSON )
+                .content( TestUtils.asJsonString( orders ) ) ).andExpect( status().isOk() )
+                .andExpect( jsonPath( "$.length()" ).value( 8 ) )
+                .andExpect( jsonPath( "$[0].message" ).value( "10" ) )
+                .andExpect( jsonPath( "$[1].message" ).value( "Not enough money paid" ) )
+                .andExpect( jsonPath( "$[2].message" ).value( "No recipe selected" ) )
+                .andExpect( jsonPath( "$[3].status" ).value( "success" ) )
+                .andExpect( jsonPath( "$[6].message" ).value( "0" ) )
+                .andExpect( jsonPath( "$[7].message" ).value( "Not enough inventory" ) );
+
+        final Inventory ivt = iService.getInventory();
+        Assertions.assertEquals( 0, (int) ivt.getAmount( "Coffee" ) );
+        Assertions.assertEquals( 10, (int) ivt.getAmount( "Milk" ) );
+    }
+
 }
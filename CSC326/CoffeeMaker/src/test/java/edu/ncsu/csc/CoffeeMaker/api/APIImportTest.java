@@ -0,0 +1,183 @@
+package edu.ncsu.csc.CoffeeMaker.api;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.jayway.jsonpath.JsonPath;
+
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.services.ImportReport;
+import edu.ncsu.csc.CoffeeMaker.services.IngredientService;
+import edu.ncsu.csc.CoffeeMaker.services.RecipeService;
+
+/**
+ * Tests importing ingredients and recipes through `POST /api/v1/import`. The
+ * batch size is made small so that each import is written in several
+ * batches.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+@SpringBootTest ( properties = "coffeemaker.import.batch-size=2" )
+@AutoConfigureMockMvc
+@ExtendWith ( SpringExtension.class )
+public class APIImportTest {
+
+    /** Used to make requests */
+    private MockMvc               mvc;
+
+    /** Used during the setup process for the mvc */
+    @Autowired
+    private WebApplicationContext context;
+
+    /** Used to check the imported ingredients */
+    @Autowired
+    private IngredientService     ingredientService;
+
+    /** Used to check the imported recipes */
+    @Autowired
+    private RecipeService         recipeService;
+
+    /**
+     * Sets up the tests with no recipes or ingredients
+     */
+    @BeforeEach
+    public void setup () {
+        mvc = MockMvcBuilders.webAppContextSetup( context ).build();
+        tearDown();
+    }
+
+    /**
+     * Leaves no recipes or ingredients behind
+     */
+    @AfterEach
+    public void tearDown () {
+        recipeService.deleteAll();
+        ingredientService.deleteAll();
+    }
+
+    /**
+     * Posts an import
+     *
+     * @param contentType
+     *            type of the body
+     * @param body
+     *            the lines
+     * @return the response
+     * @throws Exception
+     *             if the request fails
+     */
+    private String importLines ( final String contentType, final String body ) throws Exception {
+        return mvc
+                .perform( post( "/api/v1/import" ).contentType( contentType )
+                        .content( body.getBytes( StandardCharsets.UTF_8 ) ) )
+                .andExpect( status().isOk() ).andReturn().getResponse().getContentAsString();
+    }
+
+    /**
+     * Tests an NDJSON import in which a duplicate and a bad line are reported
+     * without stopping the rest
+     *
+     * @throws Exception
+     *             if the request fails
+     */
+    @Test
+    public void testNdjson () throws Exception {
+        final String report = importLines( "application/x-ndjson", String.join( "\n",
+                "{\"type\": \"ingredient\", \"name\": \"Coffee\", \"amount\": 5}",
+                "{\"type\": \"ingredient\", \"name\": \"Milk\", \"amount\": 3}",
+                "{\"type\": \"ingredient\", \"name\": \"Coffee\", \"amount\": 1}",
+                "{\"type\": \"recipe\", \"name\": \"Latte\", \"price\": 3, "
+                        + "\"ingredients\": [{\"name\": \"Coffee\", \"amount\": 1}, {\"name\": \"Milk\", \"amount\": 2}]}",
+                "{\"type\": \"ingredient\", ", "" ) );
+
+        Assertions.assertEquals( 2, (int) JsonPath.read( report, "$.ingredients" ) );
+        Assertions.assertEquals( 1, (int) JsonPath.read( report, "$.recipes" ) );
+        Assertions.assertEquals( List.of( 3, 5 ), JsonPath.read( report, "$.errors[*].line" ) );
+        Assertions.assertEquals( 2, recipeService.findByName( "Latte" ).getNames().size() );
+    }
+
+    /**
+     * Tests a CSV import, with a header, a name already in the database and
+     * more recipes than the recipe book holds
+     *
+     * @throws Exception
+     *             if the request fails
+     */
+    @Test
+    public void testCsv () throws Exception {
+        ingredientService.save( new Ingredient( "Chocolate", 1 ) );
+
+        final String report = importLines( "text/csv", String.join( "\n", "type,name,amount,ingredients",
+                "ingredient,Sugar,4", "ingredient,Chocolate,2", "recipe,Mocha,5,Coffee:1;Chocolate:2",
+                "recipe,\"Cafe, Grande\",4,Coffee:3", "recipe,Black,1,Coffee:1", "recipe,Extra,1,Coffee:1" ) );
+
+        Assertions.assertEquals( 1, (int) JsonPath.read( report, "$.ingredients" ) );
+        Assertions.assertEquals( 3, (int) JsonPath.read( report, "$.recipes" ) );
+        Assertions.assertEquals( List.of( 3, 7 ), JsonPath.read( report, "$.errors[*].line" ) );
+        Assertions.assertNotNull( recipeService.findByName( "Cafe, Grande" ) );
+        Assertions.assertNull( recipeService.findByName( "Extra" ) );
+        Assertions.assertEquals( "Ingredient with the name Chocolate already exists",
+                JsonPath.read( report, "$.errors[0].message" ) );
+    }
+
+    /**
+     * Tests that a recipe listing an ingredient twice is turned down rather
+     * than merged, in both formats
+     *
+     * @throws Exception
+     *             if the request fails
+     */
+    @Test
+    public void testDuplicateIngredientInRecipe () throws Exception {
+        final String csv = importLines( "text/csv", "recipe,Latte,3,Coffee:1;Milk:2;Coffee:2" );
+        Assertions.assertEquals( 0, (int) JsonPath.read( csv, "$.recipes" ) );
+        Assertions.assertEquals( "Duplicate ingredient Coffee in recipe",
+                JsonPath.read( csv, "$.errors[0].message" ) );
+
+        final String ndjson = importLines( "application/x-ndjson",
+                "{\"type\": \"recipe\", \"name\": \"Latte\", \"price\": 3, \"ingredients\": "
+                        + "[{\"name\": \"Milk\", \"amount\": 1}, {\"name\": \"Milk\", \"amount\": 2}]}" );
+        Assertions.assertEquals( 0, (int) JsonPath.read( ndjson, "$.recipes" ) );
+        Assertions.assertEquals( "Duplicate ingredient Milk in recipe",
+                JsonPath.read( ndjson, "$.errors[0].message" ) );
+        Assertions.assertNull( recipeService.findByName( "Latte" ) );
+    }
+
+    /**
+     * Tests that only the first errors are kept, and the rest are counted
+     *
+     * @throws Exception
+     *             if the request fails
+     */
+    @Test
+    public void testErrorCap () throws Exception {
+        final StringBuilder body = new StringBuilder( "ingredient,Sugar,4\n" );
+        for ( int i = 0; i < ImportReport.MAX_ERRORS + 5; i++ ) {
+            body.append( "bogus,line\n" );
+        }
+        final String report = importLines( "text/csv", body.toString() );
+
+        Assertions.assertEquals( 1, (int) JsonPath.read( report, "$.ingredients" ) );
+        Assertions.assertEquals( ImportReport.MAX_ERRORS + 5, (int) JsonPath.read( report, "$.errorCount" ) );
+        Assertions.assertEquals( ImportReport.MAX_ERRORS, (int) JsonPath.read( report, "$.errors.length()" ) );
+        Assertions.assertEquals( 2, (int) JsonPath.read( report, "$.errors[0].line" ) );
+    }
+
+}
@@ -6,9 +6,15 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.io.ByteArrayInputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import javax.transaction.Transactional;
 
@@ -20,12 +26,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.context.WebApplicationContext;
 
+import com.jayway.jsonpath.JsonPath;
+
 import edu.ncsu.csc.CoffeeMaker.common.TestUtils;
 import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
 import edu.ncsu.csc.CoffeeMaker.models.Recipe;
@@ -373,4 +383,104 @@ public class APIRecipeTest {
         Assertions.assertTrue( recipe.contains( "Masala Chai" ) );
     }
 
+    /**
+     * Tests that re-reading unchanged recipes with their ETag gets a 304, and
+     * that changing a recipe changes the ETag
+     *
+     * @throws Exception
+     *             if error occurs when testing
+     */
+    @Test
+    @Transactional
+    public void testGetRecipesNotModified () throws Exception {
+        final String etag = mvc.perform( get( "/api/v1/recipes" ) ).andExpect( status().isOk() )
+                .andExpect( header().exists( "ETag" ) ).andReturn().getResponse().getHeader( "ETag" );
+
+        mvc.perform( get( "/api/v1/recipes" ).header( "If-None-Match", etag ) )
+                .andExpect( status().isNotModified() );
+
+        final Recipe r = new Recipe();
+        r.setName( "Mocha" );
+        r.setPrice( 3 );
+        r.addIngredient( new Ingredient( "Coffee", 1 ) );
+        mvc.perform( post( "/api/v1/recipes" ).contentType( MediaType.APPLICATION_JSON )
+                .content( TestUtils.asJsonString( r ) ) ).andExpect( status().isOk() );
+
+        final String changed = mvc.perform( get( "/api/v1/recipes" ).header( "If-None-Match", etag ) )
+                .andExpect( status().isOk() ).andReturn().getResponse().getHeader( "ETag" );
+        assertFalse( etag.equals( changed ) );
+    }
+
+    /**
+     * Tests that a client accepting gzip gets the same recipes, gzipped
+     *
+     * @throws Exception
+     *             if error occurs when testing
+     */
+    @Test
+    @Transactional
+    public void testGetRecipesGzip () throws Exception {
+        final Recipe r = new Recipe();
+        r.setName( "Mocha" );
+        r.setPrice( 3 );
+        r.addIngredient( new Ingredient( "Coffee", 1 ) );
+        service.save( r );
+
+        final String plain = mvc.perform( get( "/api/v1/recipes" ) ).andExpect( status().isOk() )
+                .andExpect( header().doesNotExist( "Content-Encoding" ) ).andReturn().getResponse()
+                .getContentAsString();
+        Assertions.assertTrue( plain.contains( "Mocha" ) );
+
+        final byte[] gzipped = mvc.perform( get( "/api/v1/recipes" ).header( "Accept-Encoding", "gzip, deflate" ) )
+                .andExpect( status().isOk() ).andExpect( header().string( "Content-Encoding", "gzip" ) )
+                .andReturn().getResponse().getContentAsByteArray();
+        try ( GZIPInputStream in = new GZIPInputStream( new ByteArrayInputStream( gzipped ) ) ) {
+            Assertions.assertEquals( plain, new String( in.readAllBytes(), StandardCharsets.UTF_8 ) );
+        }
+    }
+
+    /**
+     * Tests paging through the recipes by name with a cursor, and that bad
+     * paging parameters are rejected
+     *
+     * @throws Exception
+     *             if error occurs when testing
+     */
+    @Test
+    @Transactional
+    public void testGetRecipesPaged () throws Exception {
+        for ( final String name : new String[] { "Latte", "Americano", "Mocha", "Espresso", "Cappuccino" } ) {
+            final Recipe r = new Recipe();
+            r.setName( name );
+            r.setPrice( 3 );
+            r.addIngredient( new Ingredient( "Coffee", 1 ) );
+            service.save( r );
+        }
+
+        final List<String> names = new ArrayList<String>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            final MockHttpServletRequestBuilder request = get( "/api/v1/recipes" ).param( "limit", "2" )
+                    .param( "sort", "name,desc" );
+            if ( null != cursor ) {
+                request.param( "after", cursor );
+            }
+            final MockHttpServletResponse response = mvc.perform( request ).andExpect( status().isOk() ).andReturn()
+                    .getResponse();
+            names.addAll( JsonPath.read( response.getContentAsString(), "$[*].name" ) );
+            cursor = response.getHeader( "X-Next-Cursor" );
+            pages++;
+        }
+        while ( null != cursor );
+
+        Assertions.assertEquals( 3, pages );
+        Assertions.assertEquals( List.of( "Mocha", "Latte", "Espresso", "Cappuccino", "Americano" ), names );
+
+        mvc.perform( get( "/api/v1/recipes" ).param( "sort", "price" ) ).andExpect( status().isBadRequest() );
+        mvc.perform( get( "/api/v1/recipes" ).param( "limit", "0" ) ).andExpect( status().isBadRequest() );
+        mvc.perform( get( "/api/v1/recipes" ).param( "sort", "name" ).param( "after", "bm90LWEtY3Vyc29y" ) )
+                .andExpect( status().isBadRequest() );
+    }
+
 }
@@ -0,0 +1,178 @@
+package edu.ncsu.csc.CoffeeMaker.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.ncsu.csc.CoffeeMaker.CoffeeMakerApplication;
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.services.IngredientService;
+import edu.ncsu.csc.CoffeeMaker.services.JsonStreams;
+
+/**
+ * Compares writing the ingredient list by loading it with `findAll` and then
+ * encoding it, as `GET /api/v1/ingredients` used to, against streaming it a
+ * page at a time with `Service.stream` and `JsonStreams`. `benchmark.rows`
+ * ingredients (100000 by default) are written to a stream that throws the
+ * bytes away, and for each approach the time to the first byte, the total
+ * time, the bytes allocated and the peak heap use above the starting point are
+ * printed.
+ *
+ * This is not picked up by the normal test run. Run it with
+ * `mvn test -Dtest=ListStreamingBenchmark`.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+public class ListStreamingBenchmark {
+
+    /** Number of ingredients to write */
+    private static final int    ROWS   = Integer.getInteger( "benchmark.rows", 100000 );
+
+    /** Names of the ingredients created for the benchmark start with this */
+    private static final String PREFIX = "Benchmark-";
+
+    /**
+     * Fills the database with ingredients and measures both approaches
+     *
+     * @throws IOException
+     *             never, since the output is discarded
+     */
+    @Test
+    public void compareFindAllAndStream () throws IOException {
+        try ( ConfigurableApplicationContext context = new SpringApplicationBuilder( CoffeeMakerApplication.class )
+                .web( WebApplicationType.NONE ).properties( "spring.jpa.show-sql=false" ).run() ) {
+            final IngredientService service = context.getBean( IngredientService.class );
+            final ObjectMapper mapper = context.getBean( ObjectMapper.class );
+            final JdbcTemplate jdbc = context.getBean( JdbcTemplate.class );
+
+            jdbc.update( "DELETE FROM ingredient WHERE name LIKE ?", PREFIX + "%" );
+            final List<Ingredient> batch = new ArrayList<Ingredient>();
+            for ( int i = 0; i < ROWS; i++ ) {
+                batch.add( new Ingredient( PREFIX + i, i ) );
+                if ( batch.size() == 1000 || i == ROWS - 1 ) {
+                    service.saveAll( batch );
+                    batch.clear();
+                }
+            }
+
+            try {
+                // Once each to warm up, then measure
+                measure( null, out -> mapper.writeValue( out, service.findAll() ) );
+                measure( null, out -> JsonStreams.writeArray( mapper, service.stream( 500 ), out ) );
+                final long listed = measure( "findAll", out -> mapper.writeValue( out, service.findAll() ) );
+                final long streamed = measure( "stream ",
+                        out -> JsonStreams.writeArray( mapper, service.stream( 500 ), out ) );
+                Assertions.assertEquals( listed, streamed, "Both should write the same JSON" );
+            }
+            finally {
+                jdbc.update( "DELETE FROM ingredient WHERE name LIKE ?", PREFIX + "%" );
+            }
+        }
+    }
+
+    /**
+     * Runs one approach and prints what it cost
+     *
+     * @param label
+     *            name to print, null to not print anything
+     * @param writer
+     *            writes the ingredients to the stream it's given
+     * @return number of bytes written
+     * @throws IOException
+     *             never, since the output is discarded
+     */
+    private long measure ( final String label, final Writer writer ) throws IOException {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        System.gc();
+        final long baseline = memory.getHeapMemoryUsage().getUsed();
+
+        final AtomicLong peak = new AtomicLong( baseline );
+        final AtomicBoolean running = new AtomicBoolean( true );
+        final Thread sampler = new Thread( () -> {
+            while ( running.get() ) {
+                peak.accumulateAndGet( memory.getHeapMemoryUsage().getUsed(), Math::max );
+                LockSupport.parkNanos( 200000 );
+            }
+        } );
+        sampler.setDaemon( true );
+        sampler.start();
+
+        final DiscardingStream out = new DiscardingStream();
+        final long allocatedBefore = threads.getThreadAllocatedBytes( Thread.currentThread().getId() );
+        final long start = System.nanoTime();
+        writer.write( out );
+        final long end = System.nanoTime();
+        final long allocated = threads.getThreadAllocatedBytes( Thread.currentThread().getId() ) - allocatedBefore;
+        running.set( false );
+
+        if ( null != label ) {
+            System.out.printf(
+                    "%s: first byte after %.1f ms, done in %.1f ms, %d bytes, %.1f MB allocated, peak heap +%.1f MB%n",
+                    label, ( out.firstWrite - start ) / 1e6, ( end - start ) / 1e6, out.count, allocated / 1048576.0,
+                    ( peak.get() - baseline ) / 1048576.0 );
+        }
+        return out.count;
+    }
+
+    /**
+     * Writes the ingredients somewhere
+     */
+    @FunctionalInterface
+    private interface Writer {
+
+        /**
+         * Writes the ingredients
+         *
+         * @param out
+         *            where to write them
+         * @throws IOException
+         *             if they can't be written
+         */
+        void write ( OutputStream out ) throws IOException;
+    }
+
+    /**
+     * Counts the bytes written to it, notes when the first one arrived, and
+     * throws them away
+     */
+    private static final class DiscardingStream extends OutputStream {
+
+        /** Bytes written so far */
+        private long count;
+
+        /** System.nanoTime() of the first write */
+        private long firstWrite;
+
+        @Override
+        public void write ( final int b ) {
+            write( new byte[] { (byte) b }, 0, 1 );
+        }
+
+        @Override
+        public void write ( final byte[] b, final int off, final int len ) {
+            if ( 0 == count && len > 0 ) {
+                firstWrite = System.nanoTime();
+            }
+            count += len;
+        }
+    }
+
+}
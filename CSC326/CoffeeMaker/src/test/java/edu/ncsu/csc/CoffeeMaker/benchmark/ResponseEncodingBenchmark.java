@@ -0,0 +1,190 @@
+package edu.ncsu.csc.CoffeeMaker.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.gson.Gson;
+
+import edu.ncsu.csc.CoffeeMaker.controllers.APIController;
+import edu.ncsu.csc.CoffeeMaker.controllers.EncodedResponse;
+
+/**
+ * Measures the bytes allocated to write one status message response, the way
+ * the controllers used to (encoded to a String by Gson, then written by
+ * Spring's String converter) and the way they do now (pre-encoded bytes for
+ * fixed messages, Spring's Jackson converter for the rest). Each way is run
+ * `benchmark.iterations` times (1000000 by default) after a warm up, and the
+ * average allocation and time per response are printed.
+ *
+ * This is not picked up by the normal test run. Run it with
+ * `mvn test -Dtest=ResponseEncodingBenchmark`.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+public class ResponseEncodingBenchmark {
+
+    /** Number of responses written for each way */
+    private static final int ITERATIONS = Integer.getInteger( "benchmark.iterations", 1000000 );
+
+    /**
+     * Measures each way of writing a fixed and a dynamic message
+     *
+     * @throws IOException
+     *             never, since the output is discarded
+     */
+    @Test
+    public void compareEncodings () throws IOException {
+        final Gson gson = new Gson();
+        final StringHttpMessageConverter strings = new StringHttpMessageConverter();
+        final MappingJackson2HttpMessageConverter jackson = new MappingJackson2HttpMessageConverter();
+        final EncodedResponse.Converter encoded = new EncodedResponse.Converter();
+        final Messages messages = new Messages();
+        ReflectionTestUtils.setField( messages, "mapper", Jackson2ObjectMapperBuilder.json().build() );
+        final EncodedResponse notEnough = messages.fixed( "Not enough inventory" );
+
+        measure( "fixed,   before",
+                out -> strings.write( gson.toJson( new Message( "failed", "Not enough inventory" ) ),
+                        MediaType.APPLICATION_JSON, out ) );
+        measure( "fixed,   after ", out -> encoded.write( notEnough, MediaType.APPLICATION_JSON, out ) );
+        measure( "dynamic, before", out -> strings.write( gson.toJson( new Message( "success", "17" ) ),
+                MediaType.APPLICATION_JSON, out ) );
+        measure( "dynamic, after ",
+                out -> jackson.write( Messages.dynamic( "17" ), MediaType.APPLICATION_JSON, out ) );
+    }
+
+    /**
+     * Warms up one way of writing a response, then measures it
+     *
+     * @param label
+     *            name to print
+     * @param writer
+     *            writes one response
+     * @throws IOException
+     *             never, since the output is discarded
+     */
+    private void measure ( final String label, final Writer writer ) throws IOException {
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        final DiscardingMessage out = new DiscardingMessage();
+        for ( int i = 0; i < ITERATIONS / 10; i++ ) {
+            out.getHeaders().clear();
+            writer.write( out );
+        }
+
+        final long allocatedBefore = threads.getThreadAllocatedBytes( Thread.currentThread().getId() );
+        final long start = System.nanoTime();
+        for ( int i = 0; i < ITERATIONS; i++ ) {
+            out.getHeaders().clear();
+            writer.write( out );
+        }
+        final long end = System.nanoTime();
+        final long allocated = threads.getThreadAllocatedBytes( Thread.currentThread().getId() ) - allocatedBefore;
+        System.out.printf( "%s: %.0f bytes allocated and %.0f ns per response%n", label,
+                (double) allocated / ITERATIONS, (double) ( end - start ) / ITERATIONS );
+    }
+
+    /**
+     * Writes one response
+     */
+    @FunctionalInterface
+    private interface Writer {
+
+        /**
+         * Writes one response
+         *
+         * @param out
+         *            the response to write to
+         * @throws IOException
+         *             if it can't be written
+         */
+        void write ( HttpOutputMessage out ) throws IOException;
+    }
+
+    /**
+     * The message as the controllers used to build it for Gson
+     */
+    @SuppressWarnings ( "unused" )
+    private static final class Message {
+
+        /** success or failed */
+        private final String status;
+
+        /** The message */
+        private final String message;
+
+        /**
+         * Creates a message
+         *
+         * @param status
+         *            success or failed
+         * @param message
+         *            the message
+         */
+        private Message ( final String status, final String message ) {
+            this.status = status;
+            this.message = message;
+        }
+    }
+
+    /**
+     * Gets at the controllers' message helpers
+     */
+    private static final class Messages extends APIController {
+
+        /**
+         * Pre-encodes an error message as the controllers do
+         *
+         * @param message
+         *            the message
+         * @return the encoded message
+         */
+        private EncodedResponse fixed ( final String message ) {
+            return encodedError( message );
+        }
+
+        /**
+         * Builds a success message as the controllers do
+         *
+         * @param message
+         *            the message
+         * @return the message body
+         */
+        private static Object dynamic ( final String message ) {
+            return successResponse( message );
+        }
+    }
+
+    /**
+     * A response whose body is thrown away
+     */
+    private static final class DiscardingMessage implements HttpOutputMessage {
+
+        /** Headers of the response */
+        private final HttpHeaders  headers = new HttpHeaders();
+
+        /** Body of the response */
+        private final OutputStream body    = OutputStream.nullOutputStream();
+
+        @Override
+        public HttpHeaders getHeaders () {
+            return headers;
+        }
+
+        @Override
+        public OutputStream getBody () {
+            return body;
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+package edu.ncsu.csc.CoffeeMaker.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import edu.ncsu.csc.CoffeeMaker.CoffeeMakerApplication;
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.RecipeService;
+
+/**
+ * Measures how fast `RecipeService.saveAll` writes `benchmark.recipes`
+ * recipes (10000 by default) with 5 ingredients each, first with JDBC
+ * batching turned off (a batch size of 1, so one statement per row as
+ * before) and then with the configured batch size (`benchmark.batch-size`,
+ * 50 by default). The recipes are saved `benchmark.chunk` at a time (1000 by
+ * default), and the recipes and rows written per second are printed. Each
+ * recipe is 11 rows: itself, its ingredients and its join rows.
+ *
+ * This is not picked up by the normal test run. Run it with
+ * `mvn test -Dtest=SaveAllBenchmark`.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+public class SaveAllBenchmark {
+
+    /** Number of recipes to write */
+    private static final int    RECIPES     = Integer.getInteger( "benchmark.recipes", 10000 );
+
+    /** Recipes saved in each call to saveAll */
+    private static final int    CHUNK       = Integer.getInteger( "benchmark.chunk", 1000 );
+
+    /** Batch size to compare against no batching */
+    private static final int    BATCH_SIZE  = Integer.getInteger( "benchmark.batch-size", 50 );
+
+    /** Ingredients in each recipe */
+    private static final int    INGREDIENTS = 5;
+
+    /** Names of the recipes and ingredients created start with this */
+    private static final String PREFIX      = "Benchmark-";
+
+    /**
+     * Writes the recipes without batching and then with it
+     */
+    @Test
+    public void compareBatchSizes () {
+        measure( "batch size 1 ", 1 );
+        measure( "batch size " + BATCH_SIZE, BATCH_SIZE );
+    }
+
+    /**
+     * Starts the application with a batch size for recipes, writes the
+     * recipes, prints how fast it went and removes them again
+     *
+     * @param label
+     *            name to print
+     * @param batchSize
+     *            statements per JDBC batch
+     */
+    private void measure ( final String label, final int batchSize ) {
+        try ( ConfigurableApplicationContext context = new SpringApplicationBuilder( CoffeeMakerApplication.class )
+                .web( WebApplicationType.NONE )
+                .properties( "spring.jpa.show-sql=false", "coffeemaker.batch-size.recipe=" + batchSize,
+                        "spring.jpa.properties.hibernate.order_inserts=true",
+                        "spring.jpa.properties.hibernate.order_updates=true" )
+                .run() ) {
+            final RecipeService service = context.getBean( RecipeService.class );
+            final JdbcTemplate jdbc = context.getBean( JdbcTemplate.class );
+            delete( jdbc );
+            try {
+                // Warm up with one chunk, then measure the rest from scratch
+                service.saveAll( recipes( "warmup-", Math.min( CHUNK, RECIPES ) ) );
+                delete( jdbc );
+
+                final long start = System.nanoTime();
+                for ( int from = 0; from < RECIPES; from += CHUNK ) {
+                    service.saveAll( recipes( from + "-", Math.min( CHUNK, RECIPES - from ) ) );
+                }
+                final double seconds = ( System.nanoTime() - start ) / 1e9;
+                final long rows = (long) RECIPES * ( 1 + 2 * INGREDIENTS );
+                System.out.printf( "%s: %d recipes in %.2f s, %.0f recipes/s, %.0f rows/s%n", label, RECIPES, seconds,
+                        RECIPES / seconds, rows / seconds );
+            }
+            finally {
+                delete( jdbc );
+            }
+        }
+    }
+
+    /**
+     * Builds recipes to save
+     *
+     * @param prefix
+     *            start of the recipe names after PREFIX, to keep them unique
+     * @param count
+     *            number of recipes
+     * @return the recipes
+     */
+    private List<Recipe> recipes ( final String prefix, final int count ) {
+        final List<Recipe> recipes = new ArrayList<Recipe>( count );
+        for ( int i = 0; i < count; i++ ) {
+            final Recipe recipe = new Recipe();
+            recipe.setName( PREFIX + prefix + i );
+            recipe.setPrice( 1 );
+            for ( int j = 0; j < INGREDIENTS; j++ ) {
+                recipe.addIngredient( new Ingredient( PREFIX + j, j + 1 ) );
+            }
+            recipes.add( recipe );
+        }
+        return recipes;
+    }
+
+    /**
+     * Removes every recipe and ingredient the benchmark created
+     *
+     * @param jdbc
+     *            used to run the deletes
+     */
+    private void delete ( final JdbcTemplate jdbc ) {
+        jdbc.update( "DELETE ri FROM recipe_ingredients ri JOIN recipe r ON r.id = ri.recipe_id WHERE r.name LIKE ?",
+                PREFIX + "%" );
+        jdbc.update( "DELETE FROM recipe WHERE name LIKE ?", PREFIX + "%" );
+        jdbc.update( "DELETE FROM ingredient WHERE name LIKE ?", PREFIX + "%" );
+    }
+
+}
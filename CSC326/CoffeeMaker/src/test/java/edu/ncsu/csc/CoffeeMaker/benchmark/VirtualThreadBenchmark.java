@@ -0,0 +1,199 @@
+package edu.ncsu.csc.CoffeeMaker.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import edu.ncsu.csc.CoffeeMaker.CoffeeMakerApplication;
+import edu.ncsu.csc.CoffeeMaker.config.VirtualThreads;
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.ConflictRetry;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryService;
+import edu.ncsu.csc.CoffeeMaker.services.RecipeService;
+
+/**
+ * Compares the throughput of the application with Tomcat's platform thread
+ * pool against running every request on a virtual thread. The application is
+ * started once in each mode on a random port, and hit by `benchmark.clients`
+ * concurrent clients (1000 by default) making `benchmark.requests` requests
+ * between them, alternating between reading an ingredient from the Inventory
+ * and making coffee. A purchase that keeps conflicting is given up on with a
+ * 409 by design, so those are allowed as long as ConflictRetry counted each
+ * of them; what is checked is that every other request succeeds and exactly
+ * one coffee was taken for each cup made.
+ *
+ * This is not picked up by the normal test run. Run it with
+ * `mvn -Pjava21 test -Dtest=VirtualThreadBenchmark`; on an older JDK only the
+ * platform thread run happens.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+public class VirtualThreadBenchmark {
+
+    /** Number of requests in flight at once */
+    private static final int CLIENTS  = Integer.getInteger( "benchmark.clients", 1000 );
+
+    /** Number of requests measured in each mode */
+    private static final int REQUESTS = Integer.getInteger( "benchmark.requests", 20000 );
+
+    /**
+     * Runs the application in each mode and prints the throughput of each
+     *
+     * @throws Exception
+     *             if the application or the clients fail
+     */
+    @Test
+    public void compareExecutors () throws Exception {
+        final double platform = run( false );
+        System.out.printf( "platform threads: %.0f requests/s with %d clients%n", platform, CLIENTS );
+
+        Assumptions.assumeTrue( VirtualThreads.isSupported(), "Virtual threads need Java 21" );
+        final double virtual = run( true );
+        System.out.printf( "virtual threads:  %.0f requests/s with %d clients (%.2fx)%n", virtual, CLIENTS,
+                virtual / platform );
+    }
+
+    /**
+     * Starts the application, sets up a recipe and enough inventory for every
+     * request, and measures it
+     *
+     * @param virtual
+     *            whether requests run on virtual threads
+     * @return requests per second
+     * @throws Exception
+     *             if the application or the clients fail
+     */
+    private double run ( final boolean virtual ) throws Exception {
+        try ( ConfigurableApplicationContext context = new SpringApplicationBuilder( CoffeeMakerApplication.class )
+                .properties( "server.port=0", "spring.jpa.show-sql=false",
+                        "coffeemaker.virtual-threads.enabled=" + virtual )
+                .run() ) {
+            final RecipeService recipes = context.getBean( RecipeService.class );
+            final InventoryService inventory = context.getBean( InventoryService.class );
+            final ConflictRetry retry = context.getBean( ConflictRetry.class );
+            recipes.deleteAll();
+            inventory.deleteAll();
+
+            final Inventory stock = inventory.getInventory();
+            stock.addIngredients( 2 * REQUESTS, 0, 0, 0 );
+            inventory.save( stock );
+
+            final Recipe recipe = new Recipe();
+            recipe.setName( "Benchmark" );
+            recipe.setPrice( 1 );
+            recipe.addIngredient( new Ingredient( "Coffee", 1 ) );
+            recipes.save( recipe );
+
+            final int port = ( (WebServerApplicationContext) context ).getWebServer().getPort();
+            final HttpClient client = HttpClient.newBuilder().version( HttpClient.Version.HTTP_1_1 ).build();
+
+            // Warm up, then measure
+            final Tally warmUp = load( client, port, REQUESTS / 10 );
+            final long giveUps = retry.getGiveUps();
+            final long start = System.nanoTime();
+            final Tally measured = load( client, port, REQUESTS );
+            final double seconds = ( System.nanoTime() - start ) / 1e9;
+            final int left = inventory.getAmount( "Coffee" );
+
+            recipes.deleteAll();
+            inventory.deleteAll();
+            Assertions.assertEquals( 0, warmUp.failures.get() + measured.failures.get(),
+                    "Every request but conflicts given up on should succeed" );
+            Assertions.assertEquals( retry.getGiveUps() - giveUps, measured.conflicts.get(),
+                    "Every 409 is a purchase ConflictRetry gave up on" );
+            Assertions.assertEquals( 2 * REQUESTS - warmUp.made.get() - measured.made.get(), left,
+                    "One coffee was taken for each cup made" );
+            return REQUESTS / seconds;
+        }
+    }
+
+    /**
+     * Sends requests with at most CLIENTS in flight at once, and waits for all
+     * of them to finish
+     *
+     * @param client
+     *            HTTP client to send with
+     * @param port
+     *            port the application is listening on
+     * @param count
+     *            number of requests to send
+     * @return how the requests went
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    private Tally load ( final HttpClient client, final int port, final int count ) throws InterruptedException {
+        final Semaphore inFlight = new Semaphore( CLIENTS );
+        final Tally tally = new Tally();
+        for ( int i = 0; i < count; i++ ) {
+            inFlight.acquire();
+            final boolean purchase = i % 2 == 1;
+            client.sendAsync( request( port, i ), HttpResponse.BodyHandlers.discarding() )
+                    .whenComplete( ( response, error ) -> {
+                        if ( null == error && response.statusCode() == 200 ) {
+                            if ( purchase ) {
+                                tally.made.incrementAndGet();
+                            }
+                        }
+                        else if ( null == error && purchase && response.statusCode() == 409 ) {
+                            tally.conflicts.incrementAndGet();
+                        }
+                        else {
+                            tally.failures.incrementAndGet();
+                        }
+                        inFlight.release();
+                    } );
+        }
+        inFlight.acquire( CLIENTS );
+        return tally;
+    }
+
+    /**
+     * Builds the i-th request: even requests read the amount of coffee, odd
+     * ones make a coffee
+     *
+     * @param port
+     *            port the application is listening on
+     * @param i
+     *            number of the request
+     * @return the request
+     */
+    private HttpRequest request ( final int port, final int i ) {
+        final String base = "http://localhost:" + port + "/api/v1/";
+        if ( i % 2 == 0 ) {
+            return HttpRequest.newBuilder( URI.create( base + "inventory/Coffee" ) ).GET().build();
+        }
+        return HttpRequest.newBuilder( URI.create( base + "makecoffee/Benchmark" ) )
+                .header( "Content-Type", "application/json" ).POST( HttpRequest.BodyPublishers.ofString( "1" ) )
+                .build();
+    }
+
+    /**
+     * Counts of how a run of requests went
+     */
+    private static final class Tally {
+
+        /** Cups of coffee made */
+        private final AtomicInteger made      = new AtomicInteger();
+
+        /** Purchases given up on after conflicting */
+        private final AtomicInteger conflicts = new AtomicInteger();
+
+        /** Any other request that did not succeed */
+        private final AtomicInteger failures  = new AtomicInteger();
+
+    }
+
+}
@@ -0,0 +1,85 @@
+package edu.ncsu.csc.CoffeeMaker.unit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import edu.ncsu.csc.CoffeeMaker.services.ConflictRetry;
+
+/**
+ * Tests retrying work that conflicts with other updates
+ *
+ * @author Shailesh Paudel
+ *
+ */
+public class ConflictRetryTest {
+
+    /** Retry under test */
+    private ConflictRetry retry;
+
+    /**
+     * Sets up a retry allowing 3 attempts with a 1ms backoff
+     */
+    @BeforeEach
+    public void setup () {
+        retry = new ConflictRetry();
+        ReflectionTestUtils.setField( retry, "maxAttempts", 3 );
+        ReflectionTestUtils.setField( retry, "baseDelay", 1L );
+        ReflectionTestUtils.setField( retry, "maxDelay", 2L );
+    }
+
+    /**
+     * Tests that work succeeding after conflicts is retried until it does
+     */
+    @Test
+    public void testRetryUntilSuccess () {
+        final AtomicInteger attempts = new AtomicInteger();
+        final boolean result = retry.run( () -> {
+            if ( attempts.incrementAndGet() < 3 ) {
+                throw new ConcurrencyFailureException( "conflict" );
+            }
+            return true;
+        } );
+
+        Assertions.assertTrue( result );
+        Assertions.assertEquals( 3, attempts.get() );
+        Assertions.assertEquals( 2, retry.getRetries() );
+        Assertions.assertEquals( 0, retry.getGiveUps() );
+    }
+
+    /**
+     * Tests that work that always conflicts is given up on
+     */
+    @Test
+    public void testGiveUp () {
+        final AtomicInteger attempts = new AtomicInteger();
+        Assertions.assertThrows( ConcurrencyFailureException.class, () -> retry.run( () -> {
+            attempts.incrementAndGet();
+            throw new ConcurrencyFailureException( "conflict" );
+        } ) );
+
+        Assertions.assertEquals( 3, attempts.get() );
+        Assertions.assertEquals( 2, retry.getRetries() );
+        Assertions.assertEquals( 1, retry.getGiveUps() );
+    }
+
+    /**
+     * Tests that other failures are not retried
+     */
+    @Test
+    public void testOtherFailure () {
+        final AtomicInteger attempts = new AtomicInteger();
+        Assertions.assertThrows( IllegalStateException.class, () -> retry.run( () -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException( "broken" );
+        } ) );
+
+        Assertions.assertEquals( 1, attempts.get() );
+        Assertions.assertEquals( 0, retry.getRetries() );
+    }
+
+}
@@ -0,0 +1,128 @@
+package edu.ncsu.csc.CoffeeMaker.unit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.IngredientCatalog;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryCounters;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryCounters.Reservation;
+import edu.ncsu.csc.CoffeeMaker.services.RecipePlans;
+
+/**
+ * Tests the in-memory InventoryCounters used when making coffee
+ *
+ * @author Shailesh Paudel
+ *
+ */
+public class InventoryCountersTest {
+
+    /** Counters under test */
+    private InventoryCounters counters;
+
+    /** Recipe using coffee and milk */
+    private Recipe            latte;
+
+    /**
+     * Loads the counters with 30 coffee and 20 milk
+     */
+    @BeforeEach
+    public void setup () {
+        final IngredientCatalog catalog = new IngredientCatalog();
+        final RecipePlans plans = new RecipePlans();
+        ReflectionTestUtils.setField( plans, "catalog", catalog );
+        counters = new InventoryCounters();
+        ReflectionTestUtils.setField( counters, "catalog", catalog );
+        ReflectionTestUtils.setField( counters, "plans", plans );
+
+        final Map<String, Integer> stock = new HashMap<String, Integer>();
+        stock.put( "Coffee", 30 );
+        stock.put( "Milk", 20 );
+        counters.load( stock );
+
+        latte = new Recipe();
+        latte.setName( "Latte" );
+        latte.setPrice( 5 );
+        latte.addIngredient( new Ingredient( "Coffee", 3 ) );
+        latte.addIngredient( new Ingredient( "Milk", 2 ) );
+        latte.addIngredient( new Ingredient( "Sugar", 0 ) );
+    }
+
+    /**
+     * Tests reserving and cancelling a recipe
+     */
+    @Test
+    public void testReserveAndCancel () {
+        final Reservation reservation = counters.reserve( latte );
+        Assertions.assertNotNull( reservation );
+        Assertions.assertEquals( 27, counters.getAmount( "Coffee" ) );
+        Assertions.assertEquals( 18, counters.getAmount( "Milk" ) );
+
+        reservation.cancel();
+        Assertions.assertEquals( 30, counters.getAmount( "Coffee" ) );
+        Assertions.assertEquals( 20, counters.getAmount( "Milk" ) );
+    }
+
+    /**
+     * Tests that a recipe that can't be made takes nothing out of the counters
+     */
+    @Test
+    public void testNotEnoughInventory () {
+        latte.addIngredient( new Ingredient( "Chocolate", 1 ) );
+        Assertions.assertNull( counters.reserve( latte ), "Chocolate is not stocked" );
+        Assertions.assertEquals( 30, counters.getAmount( "Coffee" ) );
+        Assertions.assertEquals( 20, counters.getAmount( "Milk" ) );
+
+        counters.clear();
+        Assertions.assertFalse( counters.isLoaded() );
+        Assertions.assertNull( counters.reserve( latte ) );
+    }
+
+    /**
+     * Tests that concurrent purchases never take more than is in stock
+     *
+     * @throws Exception
+     *             if a purchasing thread fails
+     */
+    @Test
+    public void testConcurrentReservations () throws Exception {
+        final ExecutorService pool = Executors.newFixedThreadPool( 8 );
+        final List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        for ( int t = 0; t < 8; t++ ) {
+            results.add( pool.submit( () -> {
+                int made = 0;
+                for ( int i = 0; i < 100; i++ ) {
+                    if ( null != counters.reserve( latte ) ) {
+                        made++;
+                    }
+                }
+                return made;
+            } ) );
+        }
+
+        int made = 0;
+        for ( final Future<Integer> result : results ) {
+            made += result.get();
+        }
+        pool.shutdown();
+        pool.awaitTermination( 10, TimeUnit.SECONDS );
+
+        // 30 coffee / 3 = 10 lattes, and milk allows exactly 10 too
+        Assertions.assertEquals( 10, made );
+        Assertions.assertEquals( 0, counters.getAmount( "Coffee" ) );
+        Assertions.assertEquals( 0, counters.getAmount( "Milk" ) );
+    }
+
+}
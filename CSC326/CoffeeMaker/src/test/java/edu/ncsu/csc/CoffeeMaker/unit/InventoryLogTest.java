@@ -0,0 +1,263 @@
+package edu.ncsu.csc.CoffeeMaker.unit;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import edu.ncsu.csc.CoffeeMaker.TestConfig;
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.models.RecipePlan;
+import edu.ncsu.csc.CoffeeMaker.repositories.InventoryRepository;
+import edu.ncsu.csc.CoffeeMaker.services.IngredientCatalog;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryCounters;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryLog;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryService;
+
+/**
+ * Tests the InventoryLog's recovery, checkpoints and handling of damaged
+ * records. The application itself runs without the log, and each test opens
+ * logs of its own on a temporary file, so that opening a second one on the same
+ * file stands in for a restart.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+@ExtendWith ( SpringExtension.class )
+@EnableAutoConfiguration
+@SpringBootTest ( classes = TestConfig.class )
+public class InventoryLogTest {
+
+    /** Used to set up and read the Inventory in the database */
+    @Autowired
+    private InventoryService           inventoryService;
+
+    /** Used by the logs to read and checkpoint the Inventory */
+    @Autowired
+    private InventoryRepository        inventoryRepository;
+
+    /** Used by the logs to run their transactions */
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /** Directory the log file is kept in */
+    @TempDir
+    Path                               directory;
+
+    /** Logs opened by the test, closed after it */
+    private final List<InventoryLog>   opened = new ArrayList<InventoryLog>();
+
+    /** Uses 3 coffee and 2 milk */
+    private RecipePlan                 latte;
+
+    /**
+     * Starts with 10 coffee and 10 milk in the database and no log file
+     */
+    @BeforeEach
+    public void setup () {
+        inventoryService.deleteAll();
+        inventoryService.save( new Inventory( 10, 10, 0, 0 ) );
+
+        final Recipe recipe = new Recipe();
+        recipe.setName( "Logged Latte" );
+        recipe.addIngredient( new Ingredient( "Coffee", 3 ) );
+        recipe.addIngredient( new Ingredient( "Milk", 2 ) );
+        latte = RecipePlan.compile( recipe, new IngredientCatalog()::slotOf );
+    }
+
+    /**
+     * Closes the logs and removes the Inventory
+     *
+     * @throws Exception
+     *             if a log can't be closed
+     */
+    @AfterEach
+    public void tearDown () throws Exception {
+        for ( final InventoryLog log : opened ) {
+            log.stop();
+        }
+        inventoryService.deleteAll();
+    }
+
+    /**
+     * Opens a log on the test's file, as the application would at startup
+     *
+     * @return the log; it recovers when first used
+     */
+    private InventoryLog open () {
+        final InventoryCounters counters = new InventoryCounters();
+        ReflectionTestUtils.setField( counters, "catalog", new IngredientCatalog() );
+
+        final InventoryLog log = new InventoryLog();
+        ReflectionTestUtils.setField( log, "enabled", true );
+        ReflectionTestUtils.setField( log, "path", directory.resolve( "inventory.wal" ).toString() );
+        ReflectionTestUtils.setField( log, "fsync", true );
+        ReflectionTestUtils.setField( log, "inventoryRepository", inventoryRepository );
+        ReflectionTestUtils.setField( log, "counters", counters );
+        ReflectionTestUtils.setField( log, "transactionManager", transactionManager );
+        opened.add( log );
+        return log;
+    }
+
+    /**
+     * Reads the lines of the log file
+     *
+     * @return the lines
+     * @throws IOException
+     *             if the file can't be read
+     */
+    private List<String> lines () throws IOException {
+        return Files.readAllLines( directory.resolve( "inventory.wal" ), StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * Tests that purchases not yet checkpointed are replayed on top of the
+     * database after a restart
+     */
+    @Test
+    public void testReplay () {
+        final InventoryLog log = open();
+        Assertions.assertTrue( log.purchase( latte ) );
+        Assertions.assertTrue( log.purchase( latte ) );
+        Assertions.assertEquals( 4, log.getAmount( "Coffee" ) );
+
+        final InventoryLog restarted = open();
+        Assertions.assertEquals( 4, restarted.getAmount( "Coffee" ) );
+        Assertions.assertEquals( 6, restarted.getAmount( "Milk" ) );
+        Assertions.assertEquals( 10, inventoryService.getAmount( "Coffee" ), "Nothing was checkpointed" );
+    }
+
+    /**
+     * Tests that a record torn by a crash is ignored, and dropped so that the
+     * records after it are read again
+     *
+     * @throws IOException
+     *             if the file can't be written
+     */
+    @Test
+    public void testTornRecord () throws IOException {
+        final InventoryLog log = open();
+        Assertions.assertTrue( log.purchase( latte ) );
+        Files.write( directory.resolve( "inventory.wal" ), "2 D Coffee=3 Mil".getBytes( StandardCharsets.UTF_8 ),
+                StandardOpenOption.APPEND );
+
+        final InventoryLog restarted = open();
+        Assertions.assertEquals( 7, restarted.getAmount( "Coffee" ) );
+        Assertions.assertEquals( 1, lines().size(), "The torn record was dropped" );
+
+        Assertions.assertTrue( restarted.purchase( latte ) );
+        Assertions.assertEquals( 4, open().getAmount( "Coffee" ) );
+    }
+
+    /**
+     * Tests that a checkpoint writes the amounts to the database and truncates
+     * the log, and that only later records are replayed after a restart
+     *
+     * @throws IOException
+     *             if the file can't be read
+     */
+    @Test
+    public void testCheckpoint () throws IOException {
+        final InventoryLog log = open();
+        Assertions.assertTrue( log.purchase( latte ) );
+        Assertions.assertTrue( log.purchase( latte ) );
+        Assertions.assertEquals( 2, lines().size() );
+
+        log.checkpoint();
+        Assertions.assertEquals( 4, inventoryService.getAmount( "Coffee" ) );
+        Assertions.assertEquals( 2, inventoryService.getInventory().getWalSequence() );
+        Assertions.assertEquals( 0, lines().size() );
+
+        Assertions.assertTrue( log.purchase( latte ) );
+        final InventoryLog restarted = open();
+        Assertions.assertEquals( 1, restarted.getAmount( "Coffee" ) );
+        Assertions.assertFalse( restarted.purchase( latte ) );
+    }
+
+    /**
+     * Tests that a restock worked out from amounts read before a purchase is
+     * turned away rather than overwriting it
+     */
+    @Test
+    public void testStaleRestock () {
+        final InventoryLog log = open();
+        final Map<String, Integer> amounts = new HashMap<String, Integer>();
+        final long readAt = log.snapshot( amounts );
+        Assertions.assertTrue( log.purchase( latte ) );
+
+        amounts.put( "Sugar", 5 );
+        Assertions.assertThrows( OptimisticLockingFailureException.class, () -> log.restock( amounts, readAt ) );
+        Assertions.assertEquals( 7, log.getAmount( "Coffee" ), "The purchase stands" );
+
+        amounts.clear();
+        final long now = log.snapshot( amounts );
+        amounts.put( "Sugar", 5 );
+        Assertions.assertEquals( now + 1, log.restock( amounts, now ) );
+        Assertions.assertEquals( 7, open().getAmount( "Coffee" ) );
+        Assertions.assertEquals( 5, open().getAmount( "Sugar" ) );
+    }
+
+    /**
+     * Tests that purchases made at the same time, which share their forces to
+     * disk, are all recovered
+     *
+     * @throws Exception
+     *             if a purchase fails
+     */
+    @Test
+    public void testConcurrentPurchases () throws Exception {
+        final InventoryLog log = open();
+        final Map<String, Integer> amounts = new HashMap<String, Integer>();
+        amounts.put( "Coffee", 300 );
+        amounts.put( "Milk", 300 );
+        log.restock( amounts, -1 );
+
+        final ExecutorService threads = Executors.newFixedThreadPool( 8 );
+        final List<Future<?>> results = new ArrayList<Future<?>>();
+        try {
+            for ( int t = 0; t < 8; t++ ) {
+                results.add( threads.submit( () -> {
+                    for ( int n = 0; n < 10; n++ ) {
+                        Assertions.assertTrue( log.purchase( latte ) );
+                    }
+                } ) );
+            }
+            for ( final Future<?> result : results ) {
+                result.get();
+            }
+        }
+        finally {
+            threads.shutdownNow();
+        }
+
+        Assertions.assertEquals( 81, lines().size() );
+        final InventoryLog restarted = open();
+        Assertions.assertEquals( 60, restarted.getAmount( "Coffee" ) );
+        Assertions.assertEquals( 140, restarted.getAmount( "Milk" ) );
+    }
+
+}
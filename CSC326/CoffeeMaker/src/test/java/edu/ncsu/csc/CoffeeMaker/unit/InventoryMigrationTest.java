@@ -0,0 +1,153 @@
+package edu.ncsu.csc.CoffeeMaker.unit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.flywaydb.core.api.configuration.Configuration;
+import org.flywaydb.core.api.migration.Context;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import edu.ncsu.csc.CoffeeMaker.services.InventoryMigration;
+
+/**
+ * Tests moving serialized ingredient maps into the inventory_ingredient table,
+ * on an embedded database laid out as V2 leaves it
+ *
+ * @author Shailesh Paudel
+ *
+ */
+public class InventoryMigrationTest {
+
+    /** Database being migrated */
+    private EmbeddedDatabase database;
+
+    /** Runs statements on the database */
+    private JdbcTemplate     jdbc;
+
+    /**
+     * Creates the inventory tables with the old column still in place
+     */
+    @BeforeEach
+    public void setup () {
+        database = new EmbeddedDatabaseBuilder().setType( EmbeddedDatabaseType.H2 ).generateUniqueName( true )
+                .build();
+        jdbc = new JdbcTemplate( database );
+        jdbc.execute( "CREATE TABLE inventory ( id BIGINT NOT NULL, ingredient_map BLOB, "
+                + "version BIGINT NOT NULL DEFAULT 0, wal_sequence BIGINT NOT NULL DEFAULT 0, PRIMARY KEY (id) )" );
+        jdbc.execute( "CREATE TABLE inventory_ingredient ( inventory_id BIGINT NOT NULL, "
+                + "ingredient VARCHAR(255) NOT NULL, amount INTEGER, PRIMARY KEY (inventory_id, ingredient) )" );
+    }
+
+    /**
+     * Shuts the database down
+     */
+    @AfterEach
+    public void tearDown () {
+        database.shutdown();
+    }
+
+    /**
+     * Serializes an object the way Hibernate stored the ingredient map
+     *
+     * @param object
+     *            the object
+     * @return its serialized form
+     * @throws IOException
+     *             if it can't be serialized
+     */
+    private static byte[] serialize ( final Object object ) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try ( ObjectOutputStream out = new ObjectOutputStream( bytes ) ) {
+            out.writeObject( object );
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Runs the migration on a connection to the database, as Flyway would
+     *
+     * @throws SQLException
+     *             if the database can't be reached
+     */
+    private void migrate () throws SQLException {
+        try ( Connection connection = database.getConnection() ) {
+            new InventoryMigration().migrate( new Context() {
+                @Override
+                public Configuration getConfiguration () {
+                    return null;
+                }
+
+                @Override
+                public Connection getConnection () {
+                    return connection;
+                }
+            } );
+        }
+    }
+
+    /**
+     * Tests that a real serialized HashMap<String, Integer> is copied into
+     * rows, and the old column dropped
+     *
+     * @throws Exception
+     *             if the migration fails
+     */
+    @Test
+    public void testMigrate () throws Exception {
+        final HashMap<String, Integer> ingredients = new HashMap<String, Integer>();
+        ingredients.put( "Coffee", 15 );
+        ingredients.put( "Milk", 10 );
+        ingredients.put( "Sugar", 0 );
+        ingredients.put( "Chocolate", 1000 );
+        jdbc.update( "INSERT INTO inventory ( id, ingredient_map ) VALUES ( 1, ? )", serialize( ingredients ) );
+        jdbc.update( "INSERT INTO inventory ( id, ingredient_map ) VALUES ( 2, NULL )" );
+
+        migrate();
+
+        final Map<String, Integer> moved = new HashMap<String, Integer>();
+        jdbc.query( "SELECT ingredient, amount FROM inventory_ingredient WHERE inventory_id = 1", rs -> {
+            moved.put( rs.getString( 1 ), rs.getInt( 2 ) );
+        } );
+        Assertions.assertEquals( ingredients, moved );
+        Assertions.assertEquals( 4, (int) jdbc.queryForObject( "SELECT COUNT(*) FROM inventory_ingredient",
+                Integer.class ) );
+
+        final List<Map<String, Object>> columns = jdbc.queryForList(
+                "SELECT column_name FROM information_schema.columns WHERE table_name = 'INVENTORY' "
+                        + "AND column_name = 'INGREDIENT_MAP'" );
+        Assertions.assertTrue( columns.isEmpty(), "The old column was dropped" );
+    }
+
+    /**
+     * Tests that a blob holding anything other than an ingredient map is
+     * refused rather than deserialized
+     *
+     * @throws Exception
+     *             if the blob can't be set up
+     */
+    @Test
+    public void testRejectsOtherClasses () throws Exception {
+        final HashMap<String, Object> ingredients = new HashMap<String, Object>();
+        ingredients.put( "Coffee", new Date() );
+        jdbc.update( "INSERT INTO inventory ( id, ingredient_map ) VALUES ( 1, ? )", serialize( ingredients ) );
+
+        Assertions.assertThrows( IllegalStateException.class, this::migrate );
+        Assertions.assertEquals( 0, (int) jdbc.queryForObject( "SELECT COUNT(*) FROM inventory_ingredient",
+                Integer.class ) );
+    }
+
+}
@@ -1,5 +1,15 @@
 package edu.ncsu.csc.CoffeeMaker.unit;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -7,13 +17,19 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import edu.ncsu.csc.CoffeeMaker.TestConfig;
 import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
 import edu.ncsu.csc.CoffeeMaker.models.Inventory;
 import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.ConflictRetry;
 import edu.ncsu.csc.CoffeeMaker.services.InventoryService;
 
 /**
@@ -32,19 +48,38 @@ public class InventoryTest {
      * Inventory used for testing
      */
     @Autowired
-    private InventoryService inventoryService;
+    private InventoryService           inventoryService;
+
+    /**
+     * Retries purchases that conflict, as the controllers do
+     */
+    @Autowired
+    private ConflictRetry              retry;
+
+    /**
+     * Used to run several calls in one transaction
+     */
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Used to change the Inventory behind the service's back, as another
+     * instance would
+     */
+    @Autowired
+    private JdbcTemplate               jdbcTemplate;
 
     /** coffee ingredient */
-    final Ingredient         coffee    = new Ingredient( "Coffee", 1 );
+    final Ingredient                   coffee    = new Ingredient( "Coffee", 1 );
 
     /** milk ingredient */
-    final Ingredient         milk      = new Ingredient( "Milk", 20 );
+    final Ingredient                   milk      = new Ingredient( "Milk", 20 );
 
     /** sugar ingredient */
-    final Ingredient         sugar     = new Ingredient( "Sugar", 5 );
+    final Ingredient                   sugar     = new Ingredient( "Sugar", 5 );
 
     /** chocolate ingredient */
-    final Ingredient         chocolate = new Ingredient( "Chocolate", 10 );
+    final Ingredient                   chocolate = new Ingredient( "Chocolate", 10 );
 
     /**
      * Sets up the Inventory before each test Each ingredient is set to 500
@@ -498,4 +533,210 @@ public class InventoryTest {
 
     }
 
+    /**
+     * Tests that purchases made at the same time from many threads never take
+     * more than is in stock and never lose each other's deductions: the
+     * amounts left in the database are exactly what was there less what the
+     * purchases that succeeded used
+     *
+     * @throws Exception
+     *             if a purchase fails
+     */
+    @Test
+    public void testConcurrentPurchases () throws Exception {
+        final Inventory ivt = inventoryService.getInventory();
+        ivt.putIngredient( "Coffee", 30 );
+        ivt.putIngredient( "Milk", 21 );
+        ivt.putIngredient( "Sugar", 7 );
+        inventoryService.save( ivt );
+
+        final Recipe latte = new Recipe();
+        latte.setName( "Concurrent Latte" );
+        latte.addIngredient( new Ingredient( "Coffee", 3 ) );
+        latte.addIngredient( new Ingredient( "Milk", 2 ) );
+        latte.setPrice( 5 );
+
+        final ExecutorService threads = Executors.newFixedThreadPool( 8 );
+        final List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        try {
+            for ( int t = 0; t < 8; t++ ) {
+                results.add( threads.submit( (Callable<Integer>) () -> {
+                    int made = 0;
+                    for ( int n = 0; n < 5; n++ ) {
+                        if ( retry.run( () -> inventoryService.purchase( latte ) ) ) {
+                            made++;
+                        }
+                    }
+                    return made;
+                } ) );
+            }
+            int made = 0;
+            for ( final Future<Integer> result : results ) {
+                made += result.get();
+            }
+            Assertions.assertEquals( 10, made, "Exactly as many lattes as there was coffee and milk for" );
+        }
+        finally {
+            threads.shutdownNow();
+        }
+
+        Assertions.assertEquals( 0, inventoryService.getAmount( "Coffee" ) );
+        Assertions.assertEquals( 1, inventoryService.getAmount( "Milk" ) );
+        Assertions.assertEquals( 7, inventoryService.getAmount( "Sugar" ), "Ingredients not used are untouched" );
+    }
+
+    /**
+     * Makes a recipe of coffee and milk that is not saved
+     *
+     * @param coffee
+     *            coffee it needs
+     * @param milk
+     *            milk it needs
+     * @return the recipe
+     */
+    private Recipe latte ( final int coffee, final int milk ) {
+        final Recipe recipe = new Recipe();
+        recipe.setName( "Guarded Latte " + coffee + "/" + milk );
+        recipe.addIngredient( new Ingredient( "Coffee", coffee ) );
+        recipe.addIngredient( new Ingredient( "Milk", milk ) );
+        recipe.setPrice( 5 );
+        return recipe;
+    }
+
+    /**
+     * Stocks exactly 10 coffee and 10 milk
+     */
+    private void stockTen () {
+        final Inventory ivt = inventoryService.getInventory();
+        ivt.putIngredient( "Coffee", 10 );
+        ivt.putIngredient( "Milk", 10 );
+        inventoryService.save( ivt );
+    }
+
+    /**
+     * Tests that the guarded UPDATE takes every ingredient when there is
+     * enough of each
+     */
+    @Test
+    public void testUseIngredientsInDatabase () {
+        stockTen();
+        Assertions.assertTrue( inventoryService.useIngredients( latte( 3, 2 ) ) );
+        Assertions.assertEquals( 7, inventoryService.getAmount( "Coffee" ) );
+        Assertions.assertEquals( 8, inventoryService.getAmount( "Milk" ) );
+    }
+
+    /**
+     * Tests that when one ingredient falls short, none are taken, and that the
+     * transaction the shortfall happened in can still go on and commit
+     */
+    @Test
+    public void testUseIngredientsShortfall () {
+        stockTen();
+        new TransactionTemplate( transactionManager ).execute( status -> {
+            Assertions.assertFalse( inventoryService.useIngredients( latte( 3, 11 ) ), "Not enough milk" );
+            Assertions.assertEquals( 10, inventoryService.getAmount( "Coffee" ), "Coffee was not taken either" );
+            Assertions.assertFalse( status.isRollbackOnly() );
+            Assertions.assertTrue( inventoryService.useIngredients( latte( 1, 1 ) ) );
+            return null;
+        } );
+        Assertions.assertEquals( 9, inventoryService.getAmount( "Coffee" ) );
+        Assertions.assertEquals( 9, inventoryService.getAmount( "Milk" ) );
+    }
+
+    /**
+     * Tests that an ingredient the Inventory doesn't have counts as a
+     * shortfall, and nothing else is taken
+     */
+    @Test
+    public void testUseIngredientsMissing () {
+        stockTen();
+        final Recipe recipe = latte( 1, 1 );
+        recipe.setName( "Cardamom Latte" );
+        recipe.addIngredient( new Ingredient( "Cardamom", 1 ) );
+        Assertions.assertFalse( inventoryService.useIngredients( recipe ) );
+        Assertions.assertEquals( 10, inventoryService.getAmount( "Coffee" ) );
+        Assertions.assertEquals( 10, inventoryService.getAmount( "Milk" ) );
+    }
+
+    /**
+     * Tests that a recipe that needs nothing can always be made and takes
+     * nothing
+     */
+    @Test
+    public void testUseIngredientsNone () {
+        stockTen();
+        Assertions.assertTrue( inventoryService.useIngredients( latte( 0, 0 ) ) );
+        Assertions.assertEquals( 10, inventoryService.getAmount( "Coffee" ) );
+        Assertions.assertEquals( 10, inventoryService.getAmount( "Milk" ) );
+    }
+
+    /**
+     * Tests that a batch of purchases takes each recipe that there is enough
+     * for, in order, straight from the database, and leaves the counters
+     * agreeing with it
+     */
+    @Test
+    public void testPurchaseAll () {
+        stockTen();
+        final boolean[] made = inventoryService
+                .purchaseAll( Arrays.asList( latte( 3, 2 ), null, latte( 8, 1 ), latte( 3, 2 ) ) );
+        Assertions.assertArrayEquals( new boolean[] { true, false, false, true }, made );
+        Assertions.assertEquals( 4, inventoryService.getAmount( "Coffee" ) );
+        Assertions.assertEquals( 6, inventoryService.getAmount( "Milk" ) );
+
+        Assertions.assertTrue( inventoryService.purchase( latte( 4, 6 ) ), "The counters followed the batch" );
+        Assertions.assertFalse( inventoryService.purchase( latte( 1, 0 ) ) );
+    }
+
+    /**
+     * Tests that when another instance takes stock that the counters still
+     * think is there, the batch's single UPDATE changes nothing and each
+     * order is then made on its own against what is really left
+     */
+    @Test
+    public void testPurchaseAllConflict () {
+        stockTen();
+        final InventoryService target = AopTestUtils.getTargetObject( inventoryService );
+        final AtomicLong nextRecheck = (AtomicLong) ReflectionTestUtils.getField( target, "nextRecheck" );
+        nextRecheck.set( System.nanoTime() + TimeUnit.MINUTES.toNanos( 1 ) );
+        try {
+            jdbcTemplate.update( "UPDATE inventory_ingredient SET amount = 2 WHERE ingredient = 'Coffee'" );
+            final boolean[] made = inventoryService.purchaseAll( Arrays.asList( latte( 3, 2 ), latte( 1, 1 ) ) );
+            Assertions.assertArrayEquals( new boolean[] { false, true }, made );
+            Assertions.assertEquals( 1, inventoryService.getAmount( "Coffee" ) );
+            Assertions.assertEquals( 9, inventoryService.getAmount( "Milk" ) );
+        }
+        finally {
+            nextRecheck.set( System.nanoTime() );
+        }
+    }
+
+    /**
+     * Tests that once a purchase falls short, a restock made by another
+     * instance is only looked for in the database again after the recheck
+     * delay, so orders for something out of stock are answered from the
+     * counters
+     */
+    @Test
+    public void testShortfallRecheck () {
+        stockTen();
+        final InventoryService target = AopTestUtils.getTargetObject( inventoryService );
+        final AtomicLong nextRecheck = (AtomicLong) ReflectionTestUtils.getField( target, "nextRecheck" );
+        ReflectionTestUtils.setField( target, "recheckDelay", 60000L );
+        try {
+            nextRecheck.set( System.nanoTime() );
+            Assertions.assertFalse( inventoryService.purchase( latte( 11, 0 ) ), "Checked, and still short" );
+
+            jdbcTemplate.update( "UPDATE inventory_ingredient SET amount = 20 WHERE ingredient = 'Coffee'" );
+            Assertions.assertFalse( inventoryService.purchase( latte( 11, 0 ) ), "Answered from the counters" );
+
+            nextRecheck.set( System.nanoTime() );
+            Assertions.assertTrue( inventoryService.purchase( latte( 11, 0 ) ), "Saw the restock" );
+            Assertions.assertEquals( 9, inventoryService.getAmount( "Coffee" ) );
+        }
+        finally {
+            ReflectionTestUtils.setField( target, "recheckDelay", 1000L );
+        }
+    }
+
 }
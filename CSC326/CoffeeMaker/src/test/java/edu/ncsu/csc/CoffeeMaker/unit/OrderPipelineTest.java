@@ -0,0 +1,190 @@
+package edu.ncsu.csc.CoffeeMaker.unit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.ConflictRetry;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryService;
+import edu.ncsu.csc.CoffeeMaker.services.OrderPipeline;
+
+/**
+ * Tests that the OrderPipeline makes orders in groups on its writer thread
+ *
+ * @author Shailesh Paudel
+ *
+ */
+public class OrderPipelineTest {
+
+    /** Pipeline under test */
+    private OrderPipeline        pipeline;
+
+    /** Size of each group the writer made */
+    private final List<Integer>  groups  = new CopyOnWriteArrayList<Integer>();
+
+    /** Name of every recipe the writer made */
+    private final List<String>   names   = new CopyOnWriteArrayList<String>();
+
+    /** Counted down when the writer starts on a recipe named Slow */
+    private final CountDownLatch started = new CountDownLatch( 1 );
+
+    /** Waited on by the writer before it makes a recipe named Slow */
+    private final CountDownLatch gate    = new CountDownLatch( 1 );
+
+    /**
+     * Starts a pipeline whose InventoryService makes every other order. A
+     * recipe named Slow holds up the writer until the gate is opened, and one
+     * named Broken kills it.
+     */
+    @BeforeEach
+    public void setup () {
+        final InventoryService inventoryService = new InventoryService() {
+            @Override
+            public boolean[] purchaseAll ( final List<Recipe> recipes ) {
+                groups.add( recipes.size() );
+                final boolean[] made = new boolean[recipes.size()];
+                for ( int i = 0; i < made.length; i++ ) {
+                    final String name = recipes.get( i ).getName();
+                    if ( "Slow".equals( name ) ) {
+                        started.countDown();
+                        try {
+                            gate.await();
+                        }
+                        catch ( final InterruptedException e ) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    if ( "Broken".equals( name ) ) {
+                        throw new Error( "Writer killed" );
+                    }
+                    names.add( name );
+                    made[i] = recipes.get( i ).getPrice() % 2 == 0;
+                }
+                return made;
+            }
+        };
+
+        pipeline = new OrderPipeline();
+        ReflectionTestUtils.setField( pipeline, "enabled", true );
+        ReflectionTestUtils.setField( pipeline, "capacity", 256 );
+        ReflectionTestUtils.setField( pipeline, "batchSize", 16 );
+        ReflectionTestUtils.setField( pipeline, "maxDelay", 20L );
+        ReflectionTestUtils.setField( pipeline, "timeout", 5000L );
+        ReflectionTestUtils.setField( pipeline, "inventoryService", inventoryService );
+        ReflectionTestUtils.setField( pipeline, "retry", new ConflictRetry() );
+        pipeline.start();
+    }
+
+    /**
+     * Stops the pipeline
+     *
+     * @throws InterruptedException
+     *             if interrupted while stopping
+     */
+    @AfterEach
+    public void tearDown () throws InterruptedException {
+        gate.countDown();
+        pipeline.stop();
+    }
+
+    /**
+     * Creates a recipe with the provided name and price
+     *
+     * @param name
+     *            recipe name
+     * @param price
+     *            recipe price; the recipe is made if this is even
+     * @return the recipe
+     */
+    private Recipe recipe ( final String name, final int price ) {
+        final Recipe recipe = new Recipe();
+        recipe.setName( name );
+        recipe.setPrice( price );
+        return recipe;
+    }
+
+    /**
+     * Tests that queued orders are made in groups and each gets its own result
+     *
+     * @throws Exception
+     *             if an order fails
+     */
+    @Test
+    public void testGroupCommit () throws Exception {
+        final List<CompletableFuture<Boolean>> results = new ArrayList<CompletableFuture<Boolean>>();
+        for ( int i = 0; i < 100; i++ ) {
+            final Recipe recipe = new Recipe();
+            recipe.setName( "Coffee" + i );
+            recipe.setPrice( i );
+            results.add( pipeline.submit( recipe ) );
+        }
+
+        for ( int i = 0; i < results.size(); i++ ) {
+            Assertions.assertEquals( i % 2 == 0, results.get( i ).get( 5, TimeUnit.SECONDS ) );
+        }
+
+        int made = 0;
+        for ( final int size : groups ) {
+            Assertions.assertTrue( size <= 16 );
+            made += size;
+        }
+        Assertions.assertEquals( 100, made );
+        Assertions.assertTrue( groups.size() < 100, "Orders should be committed in groups" );
+    }
+
+    /**
+     * Tests that a purchase the writer doesn't get to in time is turned away
+     * and never made
+     *
+     * @throws Exception
+     *             if an order fails
+     */
+    @Test
+    public void testTimeout () throws Exception {
+        final CompletableFuture<Boolean> slow = pipeline.submit( recipe( "Slow", 2 ) );
+        Assertions.assertTrue( started.await( 5, TimeUnit.SECONDS ) );
+
+        ReflectionTestUtils.setField( pipeline, "timeout", 50L );
+        Assertions.assertThrows( RejectedExecutionException.class, () -> pipeline.purchase( recipe( "Late", 2 ) ) );
+        ReflectionTestUtils.setField( pipeline, "timeout", 5000L );
+
+        gate.countDown();
+        Assertions.assertTrue( slow.get( 5, TimeUnit.SECONDS ) );
+        Assertions.assertTrue( pipeline.purchase( recipe( "Next", 2 ) ) );
+        Assertions.assertEquals( List.of( "Slow", "Next" ), names, "The late order was dropped" );
+    }
+
+    /**
+     * Tests that if the writer dies, the orders it had are failed and the
+     * pipeline turns itself off rather than leaving purchases waiting
+     *
+     * @throws Exception
+     *             if interrupted while waiting
+     */
+    @Test
+    public void testWriterDies () throws Exception {
+        final CompletableFuture<Boolean> broken = pipeline.submit( recipe( "Broken", 2 ) );
+        final ExecutionException e = Assertions.assertThrows( ExecutionException.class,
+                () -> broken.get( 5, TimeUnit.SECONDS ) );
+        Assertions.assertEquals( "Writer killed", e.getCause().getMessage() );
+
+        for ( int i = 0; i < 500 && pipeline.isEnabled(); i++ ) {
+            Thread.sleep( 10 );
+        }
+        Assertions.assertFalse( pipeline.isEnabled() );
+        Assertions.assertThrows( RejectedExecutionException.class, () -> pipeline.purchase( recipe( "After", 2 ) ) );
+    }
+
+}
@@ -0,0 +1,209 @@
+package edu.ncsu.csc.CoffeeMaker.unit;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import edu.ncsu.csc.CoffeeMaker.TestConfig;
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryService;
+import edu.ncsu.csc.CoffeeMaker.services.RecipeAvailability;
+import edu.ncsu.csc.CoffeeMaker.services.RecipeService;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions;
+
+/**
+ * Tests that the available recipes and their servings follow the stock as it
+ * is restocked and used, and are read from memory once built
+ *
+ * @author Shailesh Paudel
+ *
+ */
+@ExtendWith ( SpringExtension.class )
+@EnableAutoConfiguration
+@SpringBootTest ( classes = TestConfig.class )
+public class RecipeAvailabilityTest {
+
+    /** View under test */
+    @Autowired
+    private RecipeAvailability   availability;
+
+    /** Used to save the recipes */
+    @Autowired
+    private RecipeService        recipeService;
+
+    /** Used to change the stock */
+    @Autowired
+    private InventoryService     inventoryService;
+
+    /** Used to count statements */
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    /** Versions of the recipes, which the view checks */
+    @Autowired
+    private ResourceVersions     versions;
+
+    /**
+     * Starts with no recipes and no Inventory
+     */
+    @BeforeEach
+    public void setup () {
+        recipeService.deleteAll();
+        inventoryService.deleteAll();
+    }
+
+    /**
+     * Leaves no recipes or Inventory behind
+     */
+    @AfterEach
+    public void tearDown () {
+        recipeService.deleteAll();
+        inventoryService.deleteAll();
+    }
+
+    /**
+     * Saves a recipe of coffee and milk
+     *
+     * @param name
+     *            name of the recipe
+     * @param coffee
+     *            coffee it needs
+     * @param milk
+     *            milk it needs, none if 0
+     */
+    private void save ( final String name, final int coffee, final int milk ) {
+        final Recipe recipe = new Recipe();
+        recipe.setName( name );
+        recipe.setPrice( 1 );
+        recipe.addIngredient( new Ingredient( "Coffee", coffee ) );
+        if ( milk > 0 ) {
+            recipe.addIngredient( new Ingredient( "Milk", milk ) );
+        }
+        recipeService.save( recipe );
+    }
+
+    /**
+     * Tests that restocking and purchasing add and remove recipes
+     */
+    @Test
+    public void testFollowsStock () {
+        save( "Black", 1, 0 );
+        save( "Latte", 2, 3 );
+        inventoryService.save( new Inventory( 1, 0, 0, 0 ) );
+        Assertions.assertEquals( List.of( "Black" ), availability.getAvailable() );
+
+        final Inventory inventory = inventoryService.getInventory();
+        inventory.addIngredients( 1, 3, 0, 0 );
+        inventoryService.save( inventory );
+        Assertions.assertEquals( List.of( "Black", "Latte" ), availability.getAvailable() );
+
+        Assertions.assertTrue( inventoryService.purchase( recipeService.findByName( "Latte" ) ) );
+        Assertions.assertEquals( List.of(), availability.getAvailable(), "All the coffee was used" );
+
+        save( "Steamer", 0, 0 );
+        Assertions.assertEquals( List.of( "Steamer" ), availability.getAvailable(),
+                "A new recipe is seen without any change to the stock" );
+    }
+
+    /**
+     * Tests that servings are the least over the ingredients of stock divided
+     * by need, both as the limiting ingredient goes up and as others go down
+     */
+    @Test
+    public void testServings () {
+        save( "Black", 1, 0 );
+        save( "Latte", 2, 3 );
+        save( "Steamer", 0, 0 );
+        inventoryService.save( new Inventory( 10, 6, 0, 0 ) );
+        Assertions.assertEquals( Map.of( "Black", 10, "Latte", 2, "Steamer", -1 ), availability.getServings() );
+
+        final Inventory inventory = inventoryService.getInventory();
+        inventory.addIngredients( 0, 30, 0, 0 );
+        inventoryService.save( inventory );
+        Assertions.assertEquals( Map.of( "Black", 10, "Latte", 5, "Steamer", -1 ), availability.getServings(),
+                "Coffee limits the latte once there is plenty of milk" );
+
+        Assertions.assertTrue( inventoryService.purchase( recipeService.findByName( "Latte" ) ) );
+        Assertions.assertEquals( Map.of( "Black", 8, "Latte", 4, "Steamer", -1 ), availability.getServings() );
+    }
+
+    /**
+     * Tests that asking again without any change does not read the recipes or
+     * the Inventory through JPA, nor the recipes' version: the versions are
+     * left without a DataSource, so any query they ran would fail
+     */
+    @Test
+    public void testPollIsInMemory () {
+        save( "Black", 1, 0 );
+        inventoryService.save( new Inventory( 5, 0, 0, 0 ) );
+        Assertions.assertEquals( List.of( "Black" ), availability.getAvailable() );
+
+        final Statistics statistics = entityManagerFactory.unwrap( SessionFactory.class ).getStatistics();
+        final Object jdbcTemplate = ReflectionTestUtils.getField( versions, "jdbcTemplate" );
+        ReflectionTestUtils.setField( versions, "jdbcTemplate", new JdbcTemplate() );
+        statistics.setStatisticsEnabled( true );
+        try {
+            statistics.clear();
+            for ( int i = 0; i < 10; i++ ) {
+                Assertions.assertEquals( List.of( "Black" ), availability.getAvailable() );
+                Assertions.assertEquals( Map.of( "Black", 5 ), availability.getServings() );
+            }
+            Assertions.assertEquals( 0, statistics.getPrepareStatementCount() );
+        }
+        finally {
+            statistics.setStatisticsEnabled( false );
+            ReflectionTestUtils.setField( versions, "jdbcTemplate", jdbcTemplate );
+        }
+    }
+
+    /**
+     * Tests that a purchase doesn't wait for the view's lock, and that the
+     * change it made is folded in on the next read
+     *
+     * @throws Exception
+     *             if the purchase fails or doesn't finish
+     */
+    @Test
+    public void testPurchaseDoesNotLock () throws Exception {
+        save( "Black", 1, 0 );
+        inventoryService.save( new Inventory( 5, 0, 0, 0 ) );
+        Assertions.assertEquals( Map.of( "Black", 5 ), availability.getServings() );
+
+        final Recipe black = recipeService.findByName( "Black" );
+        final ReentrantLock lock = (ReentrantLock) ReflectionTestUtils.getField( availability, "lock" );
+        final ExecutorService thread = Executors.newSingleThreadExecutor();
+        lock.lock();
+        try {
+            final boolean made = thread.submit( () -> inventoryService.purchase( black ) ).get( 10,
+                    TimeUnit.SECONDS );
+            Assertions.assertTrue( made, "The purchase finished while the lock was held" );
+        }
+        finally {
+            lock.unlock();
+            thread.shutdownNow();
+        }
+        Assertions.assertEquals( Map.of( "Black", 4 ), availability.getServings() );
+    }
+
+}
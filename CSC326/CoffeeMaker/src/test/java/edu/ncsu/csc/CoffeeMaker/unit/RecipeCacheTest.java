@@ -0,0 +1,124 @@
+package edu.ncsu.csc.CoffeeMaker.unit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.RecipeCache;
+
+/**
+ * Tests the RecipeCache used by RecipeService
+ *
+ * @author Shailesh Paudel
+ *
+ */
+public class RecipeCacheTest {
+
+    /** Cache under test */
+    private RecipeCache cache;
+
+    /**
+     * Creates a cache holding at most two recipes
+     */
+    @BeforeEach
+    public void setup () {
+        cache = new RecipeCache();
+        ReflectionTestUtils.setField( cache, "maxSize", 2 );
+        ReflectionTestUtils.setField( cache, "ttl", 60L );
+    }
+
+    /**
+     * Creates a recipe with the provided name
+     *
+     * @param name
+     *            recipe name
+     * @return the recipe
+     */
+    private Recipe recipe ( final String name ) {
+        final Recipe recipe = new Recipe();
+        recipe.setName( name );
+        return recipe;
+    }
+
+    /**
+     * Tests hits, misses and least recently used eviction
+     */
+    @Test
+    public void testEviction () {
+        Assertions.assertNull( cache.get( "Coffee" ) );
+        cache.put( recipe( "Coffee" ), cache.generation() );
+        cache.put( recipe( "Latte" ), cache.generation() );
+        Assertions.assertEquals( "Coffee", cache.get( "Coffee" ).getName() );
+
+        // Latte is now the least recently used
+        cache.put( recipe( "Mocha" ), cache.generation() );
+        Assertions.assertNull( cache.get( "Latte" ) );
+        Assertions.assertNotNull( cache.get( "Coffee" ) );
+        Assertions.assertNotNull( cache.get( "Mocha" ) );
+
+        Assertions.assertEquals( 3, (long) cache.getStats().get( "hits" ) );
+        Assertions.assertEquals( 2, (long) cache.getStats().get( "misses" ) );
+        Assertions.assertEquals( 1, (long) cache.getStats().get( "evictions" ) );
+        Assertions.assertEquals( 2, (long) cache.getStats().get( "size" ) );
+    }
+
+    /**
+     * Tests that entries expire
+     */
+    @Test
+    public void testExpiry () {
+        ReflectionTestUtils.setField( cache, "ttl", 0L );
+        cache.put( recipe( "Coffee" ), cache.generation() );
+        Assertions.assertNull( cache.get( "Coffee" ) );
+        Assertions.assertEquals( 1, (long) cache.getStats().get( "evictions" ) );
+    }
+
+    /**
+     * Tests that invalidation drops entries, and that a load which overlapped
+     * a change is not cached
+     */
+    @Test
+    public void testInvalidate () {
+        cache.put( recipe( "Coffee" ), cache.generation() );
+        cache.invalidate( "Coffee" );
+        Assertions.assertNull( cache.get( "Coffee" ) );
+
+        final long loadedAt = cache.generation();
+        cache.invalidate( "Latte" );
+        cache.put( recipe( "Coffee" ), loadedAt );
+        Assertions.assertNull( cache.get( "Coffee" ), "Load overlapped a change" );
+
+        cache.put( recipe( "Coffee" ), cache.generation() );
+        cache.invalidateAll();
+        Assertions.assertNull( cache.get( "Coffee" ) );
+    }
+
+    /**
+     * Tests that callers each get their own copy of a cached recipe, so that
+     * changing one changes neither the cache nor anyone else's
+     */
+    @Test
+    public void testCopies () {
+        final Recipe loaded = recipe( "Latte" );
+        loaded.setPrice( 3 );
+        loaded.addIngredient( new Ingredient( "Milk", 2 ) );
+        cache.put( loaded, cache.generation() );
+        loaded.setPrice( 99 );
+
+        final Recipe first = cache.get( "Latte" );
+        final Recipe second = cache.get( "Latte" );
+        Assertions.assertNotSame( first, second );
+        Assertions.assertEquals( 3, (int) first.getPrice(), "Changes after the load aren't cached" );
+
+        first.setPrice( 7 );
+        first.getNames().get( 0 ).setAmount( 9 );
+        first.addIngredient( new Ingredient( "Coffee", 1 ) );
+        Assertions.assertEquals( 3, (int) second.getPrice() );
+        Assertions.assertEquals( 1, second.getNames().size() );
+        Assertions.assertEquals( 2, (int) cache.get( "Latte" ).getNames().get( 0 ).getAmount() );
+    }
+
+}
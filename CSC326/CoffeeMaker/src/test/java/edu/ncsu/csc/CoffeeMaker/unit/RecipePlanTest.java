@@ -0,0 +1,168 @@
+package edu.ncsu.csc.CoffeeMaker.unit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import edu.ncsu.csc.CoffeeMaker.TestConfig;
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.models.RecipePlan;
+import edu.ncsu.csc.CoffeeMaker.services.IngredientCatalog;
+import edu.ncsu.csc.CoffeeMaker.services.IngredientService;
+import edu.ncsu.csc.CoffeeMaker.services.RecipePlans;
+import edu.ncsu.csc.CoffeeMaker.services.RecipeService;
+
+/**
+ * Tests compiling Recipes into RecipePlans, and that compiled plans are thrown
+ * away when what they were compiled from changes
+ *
+ * @author Shailesh Paudel
+ *
+ */
+@ExtendWith ( SpringExtension.class )
+@EnableAutoConfiguration
+@SpringBootTest ( classes = TestConfig.class )
+public class RecipePlanTest {
+
+    /** Compiled plans under test */
+    @Autowired
+    private RecipePlans       plans;
+
+    /** Used to save recipes */
+    @Autowired
+    private RecipeService     recipeService;
+
+    /** Used to save ingredients */
+    @Autowired
+    private IngredientService ingredientService;
+
+    /**
+     * Starts with no recipes
+     */
+    @BeforeEach
+    public void setup () {
+        recipeService.deleteAll();
+    }
+
+    /**
+     * Leaves no recipes behind
+     */
+    @AfterEach
+    public void tearDown () {
+        recipeService.deleteAll();
+    }
+
+    /**
+     * Makes a recipe of coffee and milk that is not saved
+     *
+     * @return the recipe
+     */
+    private Recipe latte () {
+        final Recipe recipe = new Recipe();
+        recipe.setName( "Plan Latte" );
+        recipe.setPrice( 5 );
+        recipe.addIngredient( new Ingredient( "Coffee", 3 ) );
+        recipe.addIngredient( new Ingredient( "Milk", 2 ) );
+        return recipe;
+    }
+
+    /**
+     * Tests that compiling leaves out ingredients with no amount, combines
+     * repeated ones and takes the slots from the catalog
+     */
+    @Test
+    public void testCompile () {
+        final IngredientCatalog catalog = new IngredientCatalog();
+        final Recipe recipe = latte();
+        recipe.addIngredient( new Ingredient( "Sugar", 0 ) );
+        recipe.addIngredient( new Ingredient( "Coffee", 1 ) );
+
+        final RecipePlan plan = RecipePlan.compile( recipe, catalog::slotOf );
+        Assertions.assertEquals( 2, plan.size() );
+        Assertions.assertEquals( "Coffee", plan.getName( 0 ) );
+        Assertions.assertEquals( 4, plan.getAmount( 0 ) );
+        Assertions.assertEquals( 0, plan.getSlot( 0 ) );
+        Assertions.assertEquals( "Milk", plan.getName( 1 ) );
+        Assertions.assertEquals( 2, plan.getAmount( 1 ) );
+        Assertions.assertEquals( 1, plan.getSlot( 1 ) );
+        Assertions.assertEquals( 2, catalog.size(), "Sugar was never given a slot" );
+    }
+
+    /**
+     * Tests that each catalog hands out its own slots, and keeps them
+     */
+    @Test
+    public void testCatalog () {
+        final IngredientCatalog first = new IngredientCatalog();
+        final IngredientCatalog second = new IngredientCatalog();
+        Assertions.assertEquals( 0, first.slotOf( "Milk" ) );
+        Assertions.assertEquals( 1, first.slotOf( "Coffee" ) );
+        Assertions.assertEquals( 0, second.slotOf( "Coffee" ) );
+        Assertions.assertEquals( 0, first.slotOf( "Milk" ) );
+        Assertions.assertEquals( 2, first.size() );
+        Assertions.assertEquals( 1, second.size() );
+    }
+
+    /**
+     * Tests that saving a recipe throws its plan away
+     */
+    @Test
+    public void testInvalidatedByRecipe () {
+        final Recipe recipe = latte();
+        recipeService.save( recipe );
+        final RecipePlan before = plans.get( recipe );
+        Assertions.assertSame( before, plans.get( recipe ), "The plan is only compiled once" );
+
+        recipe.addIngredient( new Ingredient( "Chocolate", 1 ) );
+        recipeService.save( recipe );
+        final RecipePlan after = plans.get( recipe );
+        Assertions.assertNotSame( before, after );
+        Assertions.assertEquals( 3, after.size() );
+    }
+
+    /**
+     * Tests that saving an ingredient throws every plan away
+     */
+    @Test
+    public void testInvalidatedByIngredient () {
+        final Recipe recipe = latte();
+        recipeService.save( recipe );
+        final RecipePlan before = plans.get( recipe );
+
+        final Ingredient cinnamon = new Ingredient( "Plan Cinnamon", 1 );
+        ingredientService.save( cinnamon );
+        Assertions.assertNotSame( before, plans.get( recipe ) );
+        ingredientService.delete( cinnamon );
+    }
+
+    /**
+     * Tests that an Inventory checks and uses both a plan from RecipePlans and
+     * a Recipe it compiles itself, keeping its amounts and the ones it saves
+     * in step, and sees amounts changed by name
+     */
+    @Test
+    public void testInventory () {
+        final Inventory inventory = new Inventory( 10, 10, 0, 0 );
+        final Recipe recipe = latte();
+        final RecipePlan plan = plans.get( recipe );
+
+        Assertions.assertTrue( inventory.useIngredients( plan ) );
+        Assertions.assertTrue( inventory.useIngredients( recipe ) );
+        Assertions.assertEquals( 4, (int) inventory.getAmount( "Coffee" ) );
+        Assertions.assertEquals( 6, (int) inventory.getIngredientMap().get( "Milk" ) );
+
+        inventory.putIngredient( "Coffee", 2 );
+        Assertions.assertFalse( inventory.enoughIngredients( plan ) );
+        Assertions.assertFalse( inventory.useIngredients( recipe ) );
+        Assertions.assertEquals( 6, (int) inventory.getAmount( "Milk" ), "Nothing was used" );
+    }
+
+}
@@ -0,0 +1,214 @@
+package edu.ncsu.csc.CoffeeMaker.unit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.annotation.Transactional;
+
+import edu.ncsu.csc.CoffeeMaker.TestConfig;
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.IngredientService;
+import edu.ncsu.csc.CoffeeMaker.services.RecipeService;
+
+/**
+ * Tests that reading lists of recipes, and deleting all of them, takes the
+ * same number of SQL statements however many recipes there are, rather than
+ * one more per recipe
+ *
+ * @author Shailesh Paudel
+ *
+ */
+@ExtendWith ( SpringExtension.class )
+@EnableAutoConfiguration
+@SpringBootTest ( classes = TestConfig.class )
+public class RecipeQueryTest {
+
+    /** Service under test */
+    @Autowired
+    private RecipeService        service;
+
+    /** Used to check which ingredients are left */
+    @Autowired
+    private IngredientService    ingredientService;
+
+    /** Used to flush and clear the persistence context between steps */
+    @Autowired
+    private EntityManager        entityManager;
+
+    /** Used to count statements */
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    /** Hibernate's statistics, enabled for each test */
+    private Statistics           statistics;
+
+    /**
+     * Deletes all recipes and turns statistics on
+     */
+    @BeforeEach
+    public void setup () {
+        service.deleteAll();
+        statistics = entityManagerFactory.unwrap( SessionFactory.class ).getStatistics();
+        statistics.setStatisticsEnabled( true );
+    }
+
+    /**
+     * Turns statistics back off
+     */
+    @AfterEach
+    public void tearDown () {
+        statistics.setStatisticsEnabled( false );
+    }
+
+    /**
+     * Saves recipes named `prefix0`, `prefix1` and so on, each with two
+     * ingredients
+     *
+     * @param prefix
+     *            start of the names
+     * @param count
+     *            number of recipes
+     * @return the names
+     */
+    private List<String> save ( final String prefix, final int count ) {
+        final List<String> names = new ArrayList<String>();
+        for ( int i = 0; i < count; i++ ) {
+            final Recipe recipe = new Recipe();
+            recipe.setName( prefix + i );
+            recipe.setPrice( 1 );
+            recipe.addIngredient( new Ingredient( "Coffee", 1 ) );
+            recipe.addIngredient( new Ingredient( "Milk", 1 ) );
+            service.save( recipe );
+            names.add( recipe.getName() );
+        }
+        return names;
+    }
+
+    /**
+     * Runs a query against an empty persistence context and counts the
+     * statements it took
+     *
+     * @param query
+     *            the query, returning the recipes it found
+     * @param expected
+     *            number of recipes the query should find
+     * @return number of statements prepared
+     */
+    private long statements ( final Supplier<Integer> query, final int expected ) {
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+        Assertions.assertEquals( expected, (int) query.get() );
+        return statistics.getPrepareStatementCount();
+    }
+
+    /**
+     * Tests that findAll takes one statement for 2 recipes and for 10
+     */
+    @Test
+    @Transactional
+    public void testFindAll () {
+        save( "Few", 2 );
+        final long few = statements( () -> service.findAll().size(), 2 );
+        save( "Many", 8 );
+        final long many = statements( () -> service.findAll().size(), 10 );
+
+        Assertions.assertEquals( 1, few );
+        Assertions.assertEquals( few, many );
+
+        entityManager.clear();
+        for ( final Recipe recipe : service.findAll() ) {
+            Assertions.assertEquals( 2, recipe.getNames().size(), "Each recipe has both its ingredients once" );
+        }
+    }
+
+    /**
+     * Tests that finding recipes by name takes one statement for 2 recipes and
+     * for 10
+     */
+    @Test
+    @Transactional
+    public void testFindByNames () {
+        final List<String> names = save( "Few", 2 );
+        final long few = statements( () -> service.findByNames( names ).size(), 2 );
+        names.addAll( save( "Many", 8 ) );
+        final long many = statements( () -> service.findByNames( names ).size(), 10 );
+
+        Assertions.assertEquals( 1, few );
+        Assertions.assertEquals( few, many );
+    }
+
+    /**
+     * Tests that recipes found in the cache, by `findByName` or `findByNames`,
+     * begin no transaction and take no connection
+     */
+    @Test
+    public void testCacheHitTakesNoConnection () {
+        save( "Cached", 1 );
+        Assertions.assertNotNull( service.findByName( "Cached0" ), "Loaded and cached" );
+
+        statistics.clear();
+        Assertions.assertNotNull( service.findByName( "Cached0" ) );
+        Assertions.assertEquals( 1, service.findByNames( List.of( "Cached0" ) ).size() );
+        Assertions.assertEquals( 0, statistics.getConnectCount() );
+        Assertions.assertEquals( 0, statistics.getTransactionCount() );
+    }
+
+    /**
+     * Tests that streaming recipes outside of a transaction reads each page in
+     * a transaction of its own, rather than with none
+     */
+    @Test
+    public void testStreamPagesInTransactions () {
+        save( "Streamed", 5 );
+
+        statistics.clear();
+        Assertions.assertEquals( 5, service.stream( 2 ).count() );
+        Assertions.assertEquals( 3, statistics.getTransactionCount(), "One for each page of 2, 2 and 1" );
+    }
+
+    /**
+     * Tests that deleting all recipes removes their ingredients too, but not
+     * ingredients that don't belong to a recipe, in the same number of
+     * statements for 2 recipes and for 10
+     */
+    @Test
+    @Transactional
+    public void testDeleteAll () {
+        ingredientService.save( new Ingredient( "Sugar", 3 ) );
+        save( "Few", 2 );
+        final long few = statements( () -> {
+            service.deleteAll();
+            return 0;
+        }, 0 );
+        Assertions.assertEquals( 0, service.count() );
+        Assertions.assertEquals( 1, ingredientService.count(), "Only the ingredient not in a recipe is left" );
+
+        save( "Many", 10 );
+        final long many = statements( () -> {
+            service.deleteAll();
+            return 0;
+        }, 0 );
+        Assertions.assertEquals( 0, service.count() );
+        Assertions.assertEquals( 1, ingredientService.count() );
+
+        Assertions.assertEquals( few, many );
+    }
+
+}
@@ -0,0 +1,190 @@
+package edu.ncsu.csc.CoffeeMaker.unit;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import edu.ncsu.csc.CoffeeMaker.config.ReplicaRoutingDataSource;
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+
+/**
+ * Tests sending read-only transactions to a replica the way the application
+ * runs them: through Hibernate and a JpaTransactionManager, which begin the
+ * transaction before its read-only flag is published. Uses two embedded
+ * databases that each know which one they are, with the CoffeeMaker entities
+ * mapped on both.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+public class ReplicaRoutingJpaTest {
+
+    /** Stands in for the primary */
+    private EmbeddedDatabase         primary;
+
+    /** Stands in for the replica */
+    private EmbeddedDatabase         replica;
+
+    /** DataSource under test */
+    private ReplicaRoutingDataSource routing;
+
+    /** Entity manager factory over the routed connections */
+    private EntityManagerFactory     factory;
+
+    /** Shared entity manager, as the services have injected */
+    private EntityManager            entityManager;
+
+    /** Runs transactions through the entity manager */
+    private JpaTransactionManager    transactions;
+
+    /**
+     * Sets up both databases, with the schema on each, and a replica that is
+     * usable
+     */
+    @BeforeEach
+    public void setup () {
+        primary = database( "primary" );
+        replica = database( "replica" );
+        // Creates the schema on the replica; the real factory creates it on
+        // the primary, where connections outside a transaction go
+        factory( replica ).close();
+
+        routing = new ReplicaRoutingDataSource( primary, replica, null, 5 );
+        routing.checkReplica();
+
+        factory = factory( new LazyConnectionDataSourceProxy( routing ) );
+        entityManager = SharedEntityManagerCreator.createSharedEntityManager( factory );
+        transactions = new JpaTransactionManager( factory );
+        transactions.afterPropertiesSet();
+    }
+
+    /**
+     * Closes the factory, the DataSource and both databases
+     *
+     * @throws IOException
+     *             if the DataSource can't be closed
+     */
+    @AfterEach
+    public void tearDown () throws IOException {
+        factory.close();
+        routing.close();
+        primary.shutdown();
+        replica.shutdown();
+    }
+
+    /**
+     * Creates an embedded database holding its own name
+     *
+     * @param name
+     *            name of the database
+     * @return the database
+     */
+    private EmbeddedDatabase database ( final String name ) {
+        final EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType( EmbeddedDatabaseType.H2 )
+                .generateUniqueName( true ).build();
+        new JdbcTemplate( database ).execute( "CREATE TABLE whereami ( name VARCHAR(20) )" );
+        new JdbcTemplate( database ).update( "INSERT INTO whereami VALUES ( ? )", name );
+        return database;
+    }
+
+    /**
+     * Creates a Hibernate entity manager factory for the CoffeeMaker entities,
+     * creating their tables
+     *
+     * @param dataSource
+     *            where its connections come from
+     * @return the factory
+     */
+    private EntityManagerFactory factory ( final DataSource dataSource ) {
+        final LocalContainerEntityManagerFactoryBean bean = new LocalContainerEntityManagerFactoryBean();
+        bean.setDataSource( dataSource );
+        bean.setPackagesToScan( "edu.ncsu.csc.CoffeeMaker.models" );
+        bean.setJpaVendorAdapter( new HibernateJpaVendorAdapter() );
+        bean.setJpaPropertyMap( Map.of( "hibernate.hbm2ddl.auto", "create" ) );
+        bean.afterPropertiesSet();
+        return bean.getObject();
+    }
+
+    /**
+     * Finds which database a transaction runs on
+     *
+     * @param readOnly
+     *            whether the transaction is read-only
+     * @return name of the database
+     */
+    private String whereami ( final boolean readOnly ) {
+        final TransactionTemplate template = new TransactionTemplate( transactions );
+        template.setReadOnly( readOnly );
+        return template.execute(
+                status -> (String) entityManager.createNativeQuery( "SELECT name FROM whereami" ).getSingleResult() );
+    }
+
+    /**
+     * Finds a recipe by name in a transaction
+     *
+     * @param readOnly
+     *            whether the transaction is read-only
+     * @param name
+     *            name of the recipe
+     * @return whether it was found
+     */
+    private boolean found ( final boolean readOnly, final String name ) {
+        final TransactionTemplate template = new TransactionTemplate( transactions );
+        template.setReadOnly( readOnly );
+        return template.execute( status -> !entityManager
+                .createQuery( "SELECT r FROM Recipe r WHERE r.name = :name", Recipe.class )
+                .setParameter( "name", name ).getResultList().isEmpty() );
+    }
+
+    /**
+     * Tests that read-only JPA transactions go to the replica and the rest,
+     * including reads joined to a read-write transaction, to the primary
+     */
+    @Test
+    public void testRouting () {
+        Assertions.assertEquals( "replica", whereami( true ) );
+        Assertions.assertEquals( "primary", whereami( false ) );
+        Assertions.assertEquals( "primary",
+                new TransactionTemplate( transactions ).execute( status -> whereami( true ) ) );
+    }
+
+    /**
+     * Tests that a recipe written to the primary, which the replica has not
+     * caught up with, is only seen by the read-write transactions that
+     * RecipeService refills its caches with
+     */
+    @Test
+    public void testRefillSeesLatest () {
+        new TransactionTemplate( transactions ).execute( status -> {
+            final Recipe recipe = new Recipe();
+            recipe.setName( "Latte" );
+            recipe.setPrice( 3 );
+            recipe.addIngredient( new Ingredient( "Coffee", 1 ) );
+            entityManager.persist( recipe );
+            return null;
+        } );
+
+        Assertions.assertFalse( found( true, "Latte" ), "The replica hasn't caught up" );
+        Assertions.assertTrue( found( false, "Latte" ) );
+    }
+
+}
@@ -0,0 +1,173 @@
+package edu.ncsu.csc.CoffeeMaker.unit;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import edu.ncsu.csc.CoffeeMaker.config.ReplicaRoutingDataSource;
+
+/**
+ * Tests sending read-only transactions to a replica, using two embedded
+ * databases that each know which one they are
+ *
+ * @author Shailesh Paudel
+ *
+ */
+public class ReplicaRoutingTest {
+
+    /** Stands in for the primary */
+    private EmbeddedDatabase             primary;
+
+    /** Stands in for the replica */
+    private EmbeddedDatabase             replica;
+
+    /** Whether the replica refuses connections */
+    private volatile boolean             down;
+
+    /** DataSource under test */
+    private ReplicaRoutingDataSource     routing;
+
+    /** Runs statements on the routed connections */
+    private JdbcTemplate                 jdbc;
+
+    /** Runs transactions through the routed connections */
+    private DataSourceTransactionManager transactions;
+
+    /**
+     * Sets up both databases and a replica that is usable and 1 s behind
+     */
+    @BeforeEach
+    public void setup () {
+        primary = database( "primary" );
+        replica = database( "replica" );
+        new JdbcTemplate( replica ).execute( "CREATE TABLE replica_lag ( seconds INT )" );
+        new JdbcTemplate( replica ).execute( "INSERT INTO replica_lag VALUES ( 1 )" );
+
+        down = false;
+        routing = new ReplicaRoutingDataSource( primary, new DelegatingDataSource( replica ) {
+            @Override
+            public Connection getConnection () throws SQLException {
+                if ( down ) {
+                    throw new SQLException( "replica is down" );
+                }
+                return super.getConnection();
+            }
+        }, "SELECT seconds FROM replica_lag", 5 );
+        routing.checkReplica();
+
+        final LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy( routing );
+        jdbc = new JdbcTemplate( proxy );
+        transactions = new DataSourceTransactionManager( proxy );
+    }
+
+    /**
+     * Closes the DataSource and both databases
+     *
+     * @throws IOException
+     *             if the DataSource can't be closed
+     */
+    @AfterEach
+    public void tearDown () throws IOException {
+        routing.close();
+        primary.shutdown();
+        replica.shutdown();
+    }
+
+    /**
+     * Creates an embedded database holding its own name
+     *
+     * @param name
+     *            name of the database
+     * @return the database
+     */
+    private EmbeddedDatabase database ( final String name ) {
+        final EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType( EmbeddedDatabaseType.H2 )
+                .generateUniqueName( true ).build();
+        new JdbcTemplate( database ).execute( "CREATE TABLE whereami ( name VARCHAR(20) )" );
+        new JdbcTemplate( database ).update( "INSERT INTO whereami VALUES ( ? )", name );
+        return database;
+    }
+
+    /**
+     * Finds which database a transaction runs on
+     *
+     * @param readOnly
+     *            whether the transaction is read-only
+     * @return name of the database
+     */
+    private String whereami ( final boolean readOnly ) {
+        final TransactionTemplate template = new TransactionTemplate( transactions );
+        template.setReadOnly( readOnly );
+        return template.execute( status -> jdbc.queryForObject( "SELECT name FROM whereami", String.class ) );
+    }
+
+    /**
+     * Tests that read-only transactions go to the replica and the rest to the
+     * primary
+     */
+    @Test
+    public void testRouting () {
+        Assertions.assertTrue( routing.isReplicaUsable() );
+        Assertions.assertEquals( "replica", whereami( true ) );
+        Assertions.assertEquals( "primary", whereami( false ) );
+        Assertions.assertEquals( "primary", jdbc.queryForObject( "SELECT name FROM whereami", String.class ) );
+    }
+
+    /**
+     * Tests that reads inside a read-write transaction stay on the primary
+     */
+    @Test
+    public void testNestedRead () {
+        final String name = new TransactionTemplate( transactions ).execute( status -> whereami( true ) );
+        Assertions.assertEquals( "primary", name );
+    }
+
+    /**
+     * Tests that a replica too far behind is not used until it catches up
+     */
+    @Test
+    public void testLagging () {
+        new JdbcTemplate( replica ).update( "UPDATE replica_lag SET seconds = 30" );
+        routing.checkReplica();
+        Assertions.assertFalse( routing.isReplicaUsable() );
+        Assertions.assertEquals( "primary", whereami( true ) );
+
+        new JdbcTemplate( replica ).update( "UPDATE replica_lag SET seconds = 0" );
+        routing.checkReplica();
+        Assertions.assertTrue( routing.isReplicaUsable() );
+        Assertions.assertEquals( "replica", whereami( true ) );
+    }
+
+    /**
+     * Tests that reads go to the primary when the replica goes down, both
+     * before and after a check has noticed
+     */
+    @Test
+    public void testReplicaDown () {
+        down = true;
+        Assertions.assertEquals( "primary", whereami( true ) );
+        Assertions.assertFalse( routing.isReplicaUsable() );
+
+        routing.checkReplica();
+        Assertions.assertFalse( routing.isReplicaUsable() );
+        Assertions.assertEquals( "primary", whereami( true ) );
+
+        down = false;
+        routing.checkReplica();
+        Assertions.assertEquals( "replica", whereami( true ) );
+    }
+
+}
@@ -0,0 +1,148 @@
+package edu.ncsu.csc.CoffeeMaker.unit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import edu.ncsu.csc.CoffeeMaker.TestConfig;
+import edu.ncsu.csc.CoffeeMaker.models.Ingredient;
+import edu.ncsu.csc.CoffeeMaker.models.Inventory;
+import edu.ncsu.csc.CoffeeMaker.models.Recipe;
+import edu.ncsu.csc.CoffeeMaker.services.InventoryService;
+import edu.ncsu.csc.CoffeeMaker.services.RecipeService;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions;
+import edu.ncsu.csc.CoffeeMaker.services.ResourceVersions.Resource;
+
+/**
+ * Tests that the versions behind the ETags are read from memory, move forward
+ * when a change commits, and catch up with changes made elsewhere when
+ * refreshed. The timed refreshes are put off so that the tests decide when
+ * they happen.
+ *
+ * @author Shailesh Paudel
+ *
+ */
+@ExtendWith ( SpringExtension.class )
+@EnableAutoConfiguration
+@SpringBootTest ( classes = TestConfig.class, properties = "coffeemaker.versions.refresh-ms=3600000" )
+public class ResourceVersionsTest {
+
+    /** Versions under test */
+    @Autowired
+    private ResourceVersions           versions;
+
+    /** Used to save the recipes */
+    @Autowired
+    private RecipeService              recipeService;
+
+    /** Used to change the Inventory */
+    @Autowired
+    private InventoryService           inventoryService;
+
+    /** Used to change the versions behind the application's back */
+    @Autowired
+    private JdbcTemplate               jdbcTemplate;
+
+    /** Used to run changes that are rolled back */
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Starts with no recipes and no Inventory
+     */
+    @BeforeEach
+    public void setup () {
+        recipeService.deleteAll();
+        inventoryService.deleteAll();
+    }
+
+    /**
+     * Leaves no recipes or Inventory behind
+     */
+    @AfterEach
+    public void tearDown () {
+        recipeService.deleteAll();
+        inventoryService.deleteAll();
+    }
+
+    /**
+     * Creates a recipe of coffee
+     *
+     * @param name
+     *            name of the recipe
+     * @return the recipe
+     */
+    private Recipe recipe ( final String name ) {
+        final Recipe recipe = new Recipe();
+        recipe.setName( name );
+        recipe.setPrice( 1 );
+        recipe.addIngredient( new Ingredient( "Coffee", 1 ) );
+        return recipe;
+    }
+
+    /**
+     * Tests that a change made by another instance of the application, which
+     * only touches the database, is seen once the versions are refreshed and
+     * not before
+     */
+    @Test
+    public void testReadFromMemory () {
+        final String etag = versions.etag( Resource.RECIPES );
+        jdbcTemplate.update( "UPDATE resource_version SET version = version + 1 WHERE name = 'RECIPES'" );
+        Assertions.assertEquals( etag, versions.etag( Resource.RECIPES ) );
+
+        ReflectionTestUtils.invokeMethod( versions, "refresh" );
+        Assertions.assertNotEquals( etag, versions.etag( Resource.RECIPES ) );
+    }
+
+    /**
+     * Tests that a change is seen by its own transaction straight away, by
+     * everyone once it commits, and by no-one if it rolls back
+     */
+    @Test
+    public void testBumpAfterCommit () {
+        final long before = versions.get( Resource.RECIPES );
+
+        final TransactionTemplate template = new TransactionTemplate( transactionManager );
+        template.execute( status -> {
+            recipeService.save( recipe( "Rolled Back" ) );
+            Assertions.assertTrue( versions.get( Resource.RECIPES ) > before );
+            status.setRollbackOnly();
+            return null;
+        } );
+        Assertions.assertEquals( before, versions.get( Resource.RECIPES ) );
+
+        recipeService.save( recipe( "Committed" ) );
+        Assertions.assertTrue( versions.get( Resource.RECIPES ) > before );
+        Assertions.assertTrue( versions.get( Resource.INGREDIENTS ) > 0 );
+    }
+
+    /**
+     * Tests that the Inventory's ETag is kept until the Inventory changes
+     */
+    @Test
+    public void testInventoryChanged () {
+        Assertions.assertEquals( "\"inventory-none\"", versions.etag( Resource.INVENTORY ) );
+
+        inventoryService.save( new Inventory( 5, 5, 5, 5 ) );
+        final String etag = versions.etag( Resource.INVENTORY );
+        Assertions.assertNotEquals( "\"inventory-none\"", etag );
+        Assertions.assertEquals( etag, versions.etag( Resource.INVENTORY ) );
+
+        final Inventory inventory = inventoryService.getInventory();
+        inventory.addIngredients( 1, 1, 1, 1 );
+        inventoryService.save( inventory );
+        Assertions.assertNotEquals( etag, versions.etag( Resource.INVENTORY ) );
+    }
+
+}